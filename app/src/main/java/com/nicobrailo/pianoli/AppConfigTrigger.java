@@ -3,7 +3,6 @@ package com.nicobrailo.pianoli;
 import android.util.Log;
 import androidx.annotation.NonNull;
 
-import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Random;
 import java.util.Set;
@@ -22,6 +21,10 @@ import java.util.Set;
  * lack the fine motor skills to achieve it (at least without accidentally triggering a reset by accidentally
  * brushing another key), but they <em>would</em> be able to trigger a serial sequence by playing "follow the gear".
  * </p>
+ * <p>
+ * We're notified of every key event, so tracking progress must not allocate: all state lives in small,
+ * preallocated arrays.
+ * </p>
  */
 class AppConfigTrigger implements PianoListener {
     /** How many of the geared keys must be held before config opens */
@@ -32,10 +35,10 @@ class AppConfigTrigger implements PianoListener {
      *
      * <p>Currently a hardcoded set of the first </p>
      */
-    private static final Set<Integer> BLACK_KEYS = new HashSet<>(Arrays.asList(1, 3, 7, 9, 11, 15));
+    private static final int[] BLACK_KEYS = {1, 3, 7, 9, 11, 15};
 
     /**
-     * Current progress in the unlock sequence: all already-held config-keys.
+     * Current progress in the unlock sequence: all already-held config-keys, in the order they were pressed.
      *
      * <p>
      * We need to track which keys are held, not just their amount, to<ol>
@@ -43,8 +46,15 @@ class AppConfigTrigger implements PianoListener {
      *     <li>draw icons on them.</li>
      * </ol>
      * </p>
+     *
+     * @see #pressedConfigKeyCount
      */
-    private final Set<Integer> pressedConfigKeys = new HashSet<>();
+    private final int[] pressedConfigKeys = new int[CONFIG_TRIGGER_COUNT];
+    private int pressedConfigKeyCount;
+
+    /** Scratch space for {@link #calculateNextExpectedKey()} */
+    private final int[] candidates = new int[BLACK_KEYS.length];
+    private final Random random = new Random();
 
     /**
      * User frustration tracker: how badly are they failing to open the config?
@@ -59,6 +69,13 @@ class AppConfigTrigger implements PianoListener {
      */
     private int nextExpectedKey;
 
+    /**
+     * Counts changes to {@link #pressedConfigKeys} and {@link #nextExpectedKey}.
+     *
+     * @see #getRevision()
+     */
+    private int revision;
+
     /**
      * Our "upstream", who knows enough about global app context to actually <em>do</em> stuff.
      *
@@ -86,10 +103,35 @@ class AppConfigTrigger implements PianoListener {
     }
 
     /**
-     * @return set of currently-held config keys (defensively copied).
+     * @return set of currently-held config keys (defensively copied, so this allocates; hot paths use
+     *          {@link #copyPressedConfigKeys(int[])}).
      */
     public Set<Integer> getPressedConfigKeys() {
-        return new HashSet<>(pressedConfigKeys);
+        Set<Integer> result = new HashSet<>();
+        for (int i = 0; i < pressedConfigKeyCount; i++) {
+            result.add(pressedConfigKeys[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Copies the currently-held config keys, in the order they were pressed, without allocating.
+     *
+     * @param into at least {@link #CONFIG_TRIGGER_COUNT} long.
+     * @return the number of keys copied.
+     */
+    public int copyPressedConfigKeys(int[] into) {
+        System.arraycopy(pressedConfigKeys, 0, into, 0, pressedConfigKeyCount);
+        return pressedConfigKeyCount;
+    }
+
+    private boolean isPressedConfigKey(int keyIdx) {
+        for (int i = 0; i < pressedConfigKeyCount; i++) {
+            if (pressedConfigKeys[i] == keyIdx) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -100,6 +142,16 @@ class AppConfigTrigger implements PianoListener {
         return nextExpectedKey;
     }
 
+    /**
+     * Cheap change detection, for renderers that would otherwise have to copy {@link #getPressedConfigKeys()} on every
+     * key event.
+     *
+     * @return a number that changes whenever the pressed config keys or the next expected key may have changed.
+     */
+    public int getRevision() {
+        return revision;
+    }
+
     /**
      * Chooses the next key that must be held to make progress in the sequence.
      *
@@ -108,27 +160,18 @@ class AppConfigTrigger implements PianoListener {
      * </p>
      */
     private int calculateNextExpectedKey() {
-        Set<Integer> candidates = new HashSet<>(BLACK_KEYS);
-        candidates.removeAll(pressedConfigKeys);
+        int candidateCount = 0;
+        for (int key : BLACK_KEYS) {
+            if (!isPressedConfigKey(key)) {
+                candidates[candidateCount++] = key;
+            }
+        }
 
-        if (candidates.isEmpty()) {
+        if (candidateCount == 0) {
             Log.e("PianOliError", "No next config key possible");
             return -1;
         }
-
-        // Since we cannot easily pick a random selection from a set directly,
-        // (at least not at the low API-level we want to support)
-        // iterate the set to a random depth and select that one.
-        int i = (new Random()).nextInt(candidates.size());
-        for (Integer nextKey : candidates) {
-            i--;
-            if (i <= 0) { return nextKey; }
-        }
-
-        // Unreachable due to way candidates.size is upper bound for loop count,
-        // but that's too complicated for the compiler to figure out.
-        // (it can't see through the Random.nextInt() ).
-        return -1;
+        return candidates[random.nextInt(candidateCount)];
     }
 
     /**
@@ -145,22 +188,24 @@ class AppConfigTrigger implements PianoListener {
     void reset() {
         // Only change expected keys if there was some progress to reset, otherwise this would select a
         // new NextExpectedKey and move the icon around whenever the user presses a key.
-        if (!pressedConfigKeys.isEmpty()) {
+        if (pressedConfigKeyCount > 0) {
+            revision++;
             // Calculate next expectation *before* clearing pressedConfigKeys, to keep current touches
             // out of the candidate list. Otherwise, we could accidentally make an already-held key into a 'magic'
             // key, thereby granting the user unlock-progress without them doing anything to deserve it.
             nextExpectedKey = calculateNextExpectedKey();
         }
 
-        pressedConfigKeys.clear();
+        pressedConfigKeyCount = 0;
     }
 
     @Override
     public void onKeyDown(int keyIdx) {
         if (keyIdx == nextExpectedKey) {
+            revision++;
             // track user's progress in the unlock-sequence
-            pressedConfigKeys.add(keyIdx);
-            if (pressedConfigKeys.size() == CONFIG_TRIGGER_COUNT) {
+            pressedConfigKeys[pressedConfigKeyCount++] = keyIdx;
+            if (pressedConfigKeyCount == CONFIG_TRIGGER_COUNT) {
                 // Sequence complete!
                 reset(); // clear it so it's no longer counted as in-progress.
                 // Open Sesame!
@@ -190,7 +235,7 @@ class AppConfigTrigger implements PianoListener {
      */
     @Override
     public void onKeyUp(int keyIdx) {
-        if (pressedConfigKeys.contains(keyIdx)) {
+        if (isPressedConfigKey(keyIdx)) {
             // The released key was part of an in-progress unlock-sequence
             // (completed sequence would have invoked reset, thus clearing this set, before we get here)
             tooltipReminder.registerFailedAttempt();
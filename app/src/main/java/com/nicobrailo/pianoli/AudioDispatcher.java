@@ -0,0 +1,243 @@
+package com.nicobrailo.pianoli;
+
+import android.os.Process;
+import androidx.annotation.NonNull;
+
+import java.util.Objects;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Notifies sound makers of key events on a dedicated audio thread, so nothing on the UI thread can delay a note.
+ *
+ * <p>
+ * Subscribed to the {@link Piano} as its only {@link Priority#AUDIO AUDIO} listener, we publish each key event into a
+ * {@link KeyEventRing}, and return right away. Our audio thread drains the ring, and notifies our own listeners of
+ * every event, in the same order as the piano did. Between bursts, it sleeps, parked, until the next event arrives.
+ * </p>
+ * <p>
+ * The piano's other listeners, like the {@link AppConfigTrigger} and the canvas, are still notified synchronously,
+ * on the UI thread, in their usual order. The config trigger's view of pressed keys therefore never lags behind the
+ * piano's; only sound is asynchronous, and a slow redraw, garbage collection, or logging can't delay it anymore.
+ * </p>
+ * <p>
+ * The reverse holds too: the UI thread never waits for the audio thread. Should the audio thread ever fall almost a
+ * whole ring behind, new key-downs are dropped, and counted (see {@link #getDroppedEvents()}): a missed note is better
+ * than touch handling that stalls. Key-ups are never dropped, unless their key-down was: the last slots of the ring
+ * are reserved for them, one per key, so every note that was played also gets released.
+ * </p>
+ */
+class AudioDispatcher implements PianoListener, KeyEventRing.Handler, Runnable {
+
+    /** Most events in flight: far more than ten fingers can produce while the audio thread is busy */
+    static final int CAPACITY = 1024;
+
+    private final Piano piano;
+    private final KeyEventRing ring = new KeyEventRing(CAPACITY);
+
+    /** Our listeners, in notification order; replaced, never modified, so the audio thread can iterate it safely */
+    private volatile PianoListener[] listeners = new PianoListener[0];
+
+    private Thread thread;
+    private volatile boolean running;
+    /** Whether the audio thread is (about to be) parked, and needs waking up for new events */
+    private volatile boolean waiting;
+    /** Events that didn't fit in the ring; only touched on the UI thread */
+    private int droppedEvents;
+    /** Slots only key-ups may use: one per key, as no key has more than one key-down awaiting its key-up */
+    private final int reservedForUps;
+    /** Per key, whether its last key-down was dropped, so its key-up has to be too; only touched on the UI thread */
+    private final boolean[] downDropped;
+
+    /** Time of the event being dispatched; only touched on the audio thread */
+    private long eventTime = Piano.UNKNOWN_TIME;
+
+    AudioDispatcher(Piano piano) {
+        this.piano = piano;
+        this.reservedForUps = piano.get_keys_count();
+        this.downDropped = new boolean[piano.get_keys_count()];
+        if (reservedForUps >= CAPACITY) {
+            throw new IllegalArgumentException("Too many keys to reserve room for their releases: " + reservedForUps);
+        }
+    }
+
+    /**
+     * Starts the audio thread. Until then, events queue up.
+     */
+    synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "PianOli::Audio");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the audio thread after the event it's dispatching, if any. Events still queued aren't dispatched.
+     */
+    synchronized void quit() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Subscribe a listener to the key events, on the audio thread. Ordered by priority, like
+     * {@link Piano#addListener(PianoListener)}.
+     *
+     * @return <code>false</code> if it was already subscribed.
+     */
+    synchronized boolean addListener(@NonNull PianoListener l) {
+        Objects.requireNonNull(l, "Listeners must not be null to avoid NullPointerExceptions on notify");
+
+        final PianoListener[] old = listeners;
+        for (PianoListener existing : old) {
+            if (existing == l) {
+                return false;
+            }
+        }
+
+        final Priority priority = l.getPriority();
+        int insertAt = old.length;
+        while (insertAt > 0 && old[insertAt - 1].getPriority().compareTo(priority) > 0) {
+            insertAt--;
+        }
+        final PianoListener[] updated = new PianoListener[old.length + 1];
+        System.arraycopy(old, 0, updated, 0, insertAt);
+        updated[insertAt] = l;
+        System.arraycopy(old, insertAt, updated, insertAt + 1, old.length - insertAt);
+        listeners = updated;
+        return true;
+    }
+
+    /**
+     * Unsubscribe a listener. An event that's being dispatched right now may still reach it.
+     *
+     * @return <code>false</code> if it wasn't subscribed.
+     */
+    synchronized boolean removeListener(PianoListener l) {
+        final PianoListener[] old = listeners;
+        for (int i = 0; i < old.length; i++) {
+            if (old[i] == l) {
+                final PianoListener[] updated = new PianoListener[old.length - 1];
+                System.arraycopy(old, 0, updated, 0, i);
+                System.arraycopy(old, i + 1, updated, i, old.length - i - 1);
+                listeners = updated;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void onKeyDown(int keyIdx) {
+        publish(true, keyIdx);
+    }
+
+    @Override
+    public void onKeyUp(int keyIdx) {
+        publish(false, keyIdx);
+    }
+
+    /**
+     * UI thread: queues an event for the audio thread, and wakes it up if it's sleeping. Never blocks.
+     */
+    private void publish(boolean down, int keyIdx) {
+        final boolean published;
+        if (down) {
+            // The ring only gets this full if the audio thread is stuck, or not running. Waiting for it would stall
+            // touch handling: drop the key-down, while there's still room to release the notes already queued.
+            published = ring.size() < CAPACITY - reservedForUps && ring.offer(true, keyIdx, piano.getEventTime());
+            downDropped[keyIdx] = !published;
+        } else if (downDropped[keyIdx]) {
+            // Nobody heard the key-down, so there's nothing to release.
+            downDropped[keyIdx] = false;
+            published = false;
+        } else {
+            // Always fits: at most one key-up per key can be waiting in the reserved slots.
+            published = ring.offer(false, keyIdx, piano.getEventTime());
+        }
+        if (!published) {
+            droppedEvents++;
+            return;
+        }
+
+        // Checked after publishing; the audio thread checks for events after announcing it waits. Both are volatile,
+        // so at least one of us sees the other, and no event is left waiting for a thread that sleeps.
+        if (waiting) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Audio thread: dispatches events as they come in, sleeping in between.
+     */
+    @Override
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        while (running) {
+            if (ring.drain(this) == 0) {
+                waiting = true;
+                if (running && ring.isEmpty()) {
+                    LockSupport.park(this);
+                }
+                waiting = false;
+            }
+        }
+    }
+
+    /**
+     * @return how many key events were dropped so far, because the audio thread fell too far behind. UI thread only.
+     */
+    int getDroppedEvents() {
+        return droppedEvents;
+    }
+
+    /**
+     * Test seam: dispatches the queued events on the calling thread, for tests that don't {@link #start()}.
+     *
+     * @return the number of events dispatched.
+     */
+    int drain() {
+        return ring.drain(this);
+    }
+
+    @Override
+    public void onKeyEvent(boolean down, int keyIdx, long eventTime) {
+        this.eventTime = eventTime;
+        final PianoListener[] current = listeners;
+        PianoLog.beginSection("PianOli::AudioDispatch");
+        try {
+            for (PianoListener l : current) {
+                if (down) {
+                    l.onKeyDown(keyIdx);
+                } else {
+                    l.onKeyUp(keyIdx);
+                }
+            }
+        } finally {
+            PianoLog.endSection();
+        }
+        if (down && LatencyTracer.isEnabled()) {
+            LatencyTracer.get().stampEvent(LatencyTracer.Stage.PLAY_NOTE, eventTime);
+        }
+    }
+
+    /**
+     * Like {@link Piano#getEventTime()}, for the event our listeners are being notified of. Only valid on the audio
+     * thread, while notifying.
+     */
+    long getEventTime() {
+        return eventTime;
+    }
+
+    /**
+     * We're the piano's sound maker, as far as it's concerned.
+     */
+    @Override
+    public Priority getPriority() {
+        return Priority.AUDIO;
+    }
+}
@@ -0,0 +1,122 @@
+package com.nicobrailo.pianoli;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+
+/**
+ * Timings of the most recent frames drawn by {@link PianoCanvas}, to see which devices can't keep up.
+ *
+ * <p>
+ * Every frame is split in three phases: waiting for the surface's canvas (lock), drawing the keys (draw), and handing
+ * the frame to the compositor (post). The last {@value #CAPACITY} frames are kept in a ring buffer of primitive
+ * arrays; frames that took longer than the display's frame interval are counted since the last {@link #reset()}, which
+ * {@link PianoCanvas} does whenever the app pauses.
+ * </p>
+ * <p>
+ * Recording doesn't allocate, and only takes an uncontended lock, so this can stay on in release builds.
+ * {@link #toString()} summarises the frames in the buffer, on demand.
+ * </p>
+ */
+class FrameStats {
+    /** Number of frames kept for the summary */
+    static final int CAPACITY = 128;
+
+    /** Frame interval of 60Hz displays, the most common ones */
+    static final long DEFAULT_BUDGET_NANOS = 1_000_000_000L / 60;
+
+    private final long budgetNanos;
+
+    /* One slot per frame, in a ring; next is where the next frame goes */
+    private final long[] lockNanos = new long[CAPACITY];
+    private final long[] drawNanos = new long[CAPACITY];
+    private final long[] postNanos = new long[CAPACITY];
+    private int next;
+
+    /** All frames recorded since the last reset, including those that dropped out of the ring */
+    private long frameCount;
+    /** All frames since the last reset that took longer than {@link #budgetNanos} */
+    private long overBudgetCount;
+
+    /**
+     * @param budgetNanos how long a frame may take, i.e. the display's frame interval.
+     */
+    FrameStats(long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+    }
+
+    /**
+     * @return the budget for a display refreshing <code>refreshRate</code> times per second, or
+     * {@link #DEFAULT_BUDGET_NANOS} if that's not a sensible rate.
+     */
+    static long budgetForRefreshRate(float refreshRate) {
+        // Some devices report nonsense, e.g. 0 for virtual displays.
+        if (!(refreshRate >= 10 && refreshRate <= 1000)) {
+            return DEFAULT_BUDGET_NANOS;
+        }
+        return (long) (1e9 / refreshRate);
+    }
+
+    /**
+     * Records one frame's phases, all in nanoseconds.
+     */
+    synchronized void record(long lock, long draw, long post) {
+        lockNanos[next] = lock;
+        drawNanos[next] = draw;
+        postNanos[next] = post;
+        next = (next + 1) % CAPACITY;
+
+        frameCount++;
+        if (lock + draw + post > budgetNanos) {
+            overBudgetCount++;
+        }
+    }
+
+    synchronized long getFrameCount() {
+        return frameCount;
+    }
+
+    synchronized long getOverBudgetCount() {
+        return overBudgetCount;
+    }
+
+    /**
+     * Forgets all frames.
+     */
+    synchronized void reset() {
+        next = 0;
+        frameCount = 0;
+        overBudgetCount = 0;
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        final int frames = (int) Math.min(frameCount, CAPACITY);
+        StringBuilder sb = new StringBuilder(String.format(Locale.ROOT,
+                "Frames: %d, %d over the %.1fms budget", frameCount, overBudgetCount, budgetNanos / 1e6));
+        if (frames > 0) {
+            sb.append(String.format(Locale.ROOT, "; last %d: ", frames));
+            appendPhase(sb, "lock", lockNanos, frames);
+            sb.append(", ");
+            appendPhase(sb, "draw", drawNanos, frames);
+            sb.append(", ");
+            appendPhase(sb, "post", postNanos, frames);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Appends the mean and max of the first <code>frames</code> entries of a phase. Which entries those are doesn't
+     * matter: either the ring hasn't wrapped yet, or all of it is in use.
+     */
+    private static void appendPhase(StringBuilder sb, String name, long[] nanos, int frames) {
+        long sum = 0;
+        long max = 0;
+        for (int i = 0; i < frames; i++) {
+            sum += nanos[i];
+            max = Math.max(max, nanos[i]);
+        }
+        sb.append(String.format(Locale.ROOT, "%s mean %.2fms max %.2fms", name, sum / 1e6 / frames, max / 1e6));
+    }
+}
@@ -0,0 +1,95 @@
+package com.nicobrailo.pianoli;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Feeds a recorded {@link KeyEventJournal} back into a {@link Piano}, for reproducing problems, and as benchmark input.
+ *
+ * <p>
+ * Replays either at the original speed, keeping the recorded gaps between events, or as fast as possible.
+ * Either way, events are stamped with the replay's own clock as their event time, so latency measurements (see
+ * {@link LatencyTracer}) see them as fresh touches.
+ * </p>
+ * <p>
+ * The piano isn't thread-safe: replay on the thread that owns it, which is where touches are dispatched too (the UI
+ * thread, in the app). Replaying from any other thread races with those.
+ * </p>
+ */
+public class JournalReplayer {
+    private final long[] times;
+    private final int[] events;
+
+    /**
+     * @param times  timestamp of each event, nanoseconds, ascending.
+     * @param events each event, as encoded by {@link KeyEventJournal#encode(int, boolean)}.
+     */
+    JournalReplayer(@NonNull long[] times, @NonNull int[] events) {
+        if (times.length != events.length) {
+            throw new IllegalArgumentException(times.length + " timestamps for " + events.length + " events");
+        }
+        this.times = times;
+        this.events = events;
+    }
+
+    /**
+     * @return number of events to replay.
+     */
+    public int size() {
+        return times.length;
+    }
+
+    /**
+     * @return the recorded time span, from the first event to the last, in nanoseconds.
+     */
+    public long getDurationNanos() {
+        return times.length == 0 ? 0 : times[times.length - 1] - times[0];
+    }
+
+    /**
+     * Dispatches all events to <code>piano</code>, in order, on the calling thread: call on the thread that owns
+     * <code>piano</code>.
+     *
+     * @param originalSpeed <code>true</code> to wait out the recorded gaps between events, <code>false</code> to
+     *                      dispatch them back-to-back.
+     * @throws InterruptedException if interrupted while waiting; the rest of the journal isn't replayed.
+     */
+    public void replay(@NonNull Piano piano, boolean originalSpeed) throws InterruptedException {
+        final long start = getNow();
+        for (int i = 0; i < times.length; i++) {
+            if (originalSpeed) {
+                // Relative to the start, not the previous event, so waiting errors don't add up.
+                sleepUntil(start + (times[i] - times[0]));
+            }
+
+            final int event = events[i];
+            final int keyIdx = KeyEventJournal.decodeKey(event);
+            final long eventTime = getNow() / 1_000_000;
+            if (KeyEventJournal.decodeDown(event)) {
+                piano.doKeyDown(keyIdx, eventTime);
+            } else {
+                piano.doKeyUp(keyIdx, eventTime);
+            }
+        }
+    }
+
+    /**
+     * Test seam: override to control the clock.
+     *
+     * @return the current time, in nanoseconds.
+     */
+    long getNow() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Test seam: override to replay without actually waiting.
+     *
+     * @param deadline in the {@link #getNow()} time base.
+     */
+    void sleepUntil(long deadline) throws InterruptedException {
+        long remaining;
+        while ((remaining = deadline - getNow()) > 0) {
+            Thread.sleep(remaining / 1_000_000, (int) (remaining % 1_000_000));
+        }
+    }
+}
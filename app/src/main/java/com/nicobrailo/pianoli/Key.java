@@ -6,6 +6,9 @@ package com.nicobrailo.pianoli;
  * <p>
  * for both X and Y, <code>i <= f</code> (you can have keys with zero width/height, e.g. for the non-existing flats.
  * </p>
+ * <p>
+ * Immutable, so {@link Piano} can hand out the same instances for every lookup.
+ * </p>
  */
 class Key {
     /** null-object for keys: zero-area, so cannot be touched. (It's Hammer Time!) */
@@ -16,7 +19,7 @@ class Key {
     /** Width of a flat key in relation to a regular key. */
     public static final double FLAT_WIDTH_RATIO = 0.6;
 
-    int x_i, x_f, y_i, y_f;
+    final int x_i, x_f, y_i, y_f;
 
     Key(int x_i, int x_f, int y_i, int y_f) {
         this.x_i = x_i;
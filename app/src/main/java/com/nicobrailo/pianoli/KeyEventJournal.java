@@ -0,0 +1,160 @@
+package com.nicobrailo.pianoli;
+
+import androidx.annotation.NonNull;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Flight recorder of the most recent key events, so a session in which something went wrong can be replayed.
+ *
+ * <p>
+ * Records every key-down and key-up the {@link Piano} dispatches, with a monotonic timestamp, into a preallocated ring
+ * of primitive arrays: recording never allocates, and once the ring is full, the oldest events make room. The ring can
+ * be exported in a compact binary format ({@link #writeTo(OutputStream)}), and fed back into a piano by a
+ * {@link JournalReplayer}, e.g. to reproduce a rendering or audio problem, or as benchmark input.
+ * </p>
+ * <p>
+ * Timestamps are nanoseconds, in the {@link System#nanoTime()} time base. Events that came with a touch time
+ * ({@link Piano#getEventTime()}) are stamped with that, so the journal keeps their original rhythm, independent of
+ * dispatch delays; others are stamped when they're dispatched.
+ * </p>
+ * <p>
+ * Not thread-safe: record, and export, on the UI thread, where the piano dispatches.
+ * </p>
+ * <p>
+ * The format is big-endian ({@link DataOutputStream}): the int {@link #MAGIC}, the short {@link #VERSION}, the int
+ * number of events, and then per event, oldest first, its long timestamp and an int
+ * <code>keyIdx &lt;&lt; 1 | (down ? 1 : 0)</code>. That's 12 bytes per event.
+ * </p>
+ */
+public class KeyEventJournal implements PianoListener {
+    /** "PJNL", marks a journal file */
+    static final int MAGIC = 0x504A4E4C;
+    static final short VERSION = 1;
+    /** Default number of events kept: a few minutes of enthusiastic mashing, in about 48KiB */
+    static final int DEFAULT_CAPACITY = 4096;
+    /** Most events we read: more than any real session, but not enough to run out of memory on a corrupt file */
+    static final int MAX_READ_EVENTS = 1 << 24;
+
+    private final Piano piano;
+
+    private final long[] times;
+    private final int[] events;
+    /** Where the next event goes */
+    private int next;
+    /** Number of events in the ring, up to its capacity */
+    private int size;
+
+    KeyEventJournal(Piano piano, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity out of range: " + capacity);
+        }
+        this.piano = piano;
+        this.times = new long[capacity];
+        this.events = new int[capacity];
+    }
+
+    @Override
+    public void onKeyDown(int keyIdx) {
+        record(keyIdx, true);
+    }
+
+    @Override
+    public void onKeyUp(int keyIdx) {
+        record(keyIdx, false);
+    }
+
+    private void record(int keyIdx, boolean down) {
+        final long eventTime = piano.getEventTime();
+        times[next] = eventTime == Piano.UNKNOWN_TIME ? getNow() : eventTime * 1_000_000;
+        events[next] = encode(keyIdx, down);
+        next = (next + 1) % times.length;
+        size = Math.min(size + 1, times.length);
+    }
+
+    static int encode(int keyIdx, boolean down) {
+        return keyIdx << 1 | (down ? 1 : 0);
+    }
+
+    static int decodeKey(int event) {
+        return event >> 1; // arithmetic shift: negative keys survive too
+    }
+
+    static boolean decodeDown(int event) {
+        return (event & 1) != 0;
+    }
+
+    /**
+     * @return number of events in the journal.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Forgets all events.
+     */
+    void clear() {
+        next = 0;
+        size = 0;
+    }
+
+    /**
+     * Writes the journal, oldest event first. Doesn't close <code>out</code>.
+     */
+    public void writeTo(@NonNull OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        data.writeInt(size);
+        final int oldest = (next - size + times.length) % times.length;
+        for (int i = 0; i < size; i++) {
+            final int slot = (oldest + i) % times.length;
+            data.writeLong(times[slot]);
+            data.writeInt(events[slot]);
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads a journal written by {@link #writeTo(OutputStream)}, for replay. Doesn't close <code>in</code>.
+     *
+     * @throws IOException if <code>in</code> doesn't hold a journal we understand, or is truncated.
+     */
+    @NonNull
+    public static JournalReplayer read(@NonNull InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a key event journal");
+        }
+        final short version = data.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported journal version " + version);
+        }
+        final int count = data.readInt();
+        if (count < 0 || count > MAX_READ_EVENTS) {
+            throw new IOException("Corrupt journal: " + count + " events");
+        }
+
+        final long[] times = new long[count];
+        final int[] events = new int[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = data.readLong();
+            events[i] = data.readInt();
+        }
+        return new JournalReplayer(times, events);
+    }
+
+    /**
+     * Test seam: override to control the clock.
+     *
+     * @return the current time, in nanoseconds.
+     */
+    long getNow() {
+        return System.nanoTime();
+    }
+}
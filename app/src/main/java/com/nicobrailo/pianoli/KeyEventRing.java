@@ -0,0 +1,107 @@
+package com.nicobrailo.pianoli;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free queue of key events, from exactly one producer thread to exactly one consumer thread.
+ *
+ * <p>
+ * A fixed-size ring of primitive arrays: publishing and draining never allocate, block, or take a lock. The producer
+ * only ever writes {@link #tail}, the consumer only ever writes {@link #head}; each reads the other's index to see how
+ * far it may go. Writing an index is a volatile write, which publishes the slots written before it.
+ * </p>
+ * <p>
+ * With more than one producer, or more than one consumer, events get lost or duplicated: don't share either side.
+ * </p>
+ */
+class KeyEventRing {
+    /**
+     * Receives drained events, on the consumer thread.
+     */
+    interface Handler {
+        void onKeyEvent(boolean down, int keyIdx, long eventTime);
+    }
+
+    private final int mask;
+    private final boolean[] downs;
+    private final int[] keys;
+    private final long[] times;
+
+    /** Sequence number of the next event to drain; only written by the consumer */
+    private final AtomicLong head = new AtomicLong();
+    /** Sequence number of the next event to publish; only written by the producer */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity most events the ring holds at once; rounded up to a power of two, so slots are a cheap mask.
+     */
+    KeyEventRing(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity out of range: " + capacity);
+        }
+        final int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        mask = size - 1;
+        downs = new boolean[size];
+        keys = new int[size];
+        times = new long[size];
+    }
+
+    /**
+     * Producer: publishes an event.
+     *
+     * @return <code>false</code> if the ring is full; nothing was published.
+     */
+    boolean offer(boolean down, int keyIdx, long eventTime) {
+        final long t = tail.get();
+        if (t - head.get() > mask) {
+            return false;
+        }
+
+        final int slot = (int) t & mask;
+        downs[slot] = down;
+        keys[slot] = keyIdx;
+        times[slot] = eventTime;
+        tail.set(t + 1);
+        return true;
+    }
+
+    /**
+     * @return number of events published, and not drained yet. On the producer side, it may be outdated, but then
+     *          it's too high, never too low.
+     */
+    int size() {
+        final long t = tail.get();
+        return (int) (t - head.get());
+    }
+
+    /**
+     * Consumer: hands all published events to <code>handler</code>, oldest first, including any published meanwhile.
+     *
+     * @return the number of events drained.
+     */
+    int drain(Handler handler) {
+        long h = head.get();
+        int drained = 0;
+        while (h != tail.get()) {
+            final int slot = (int) h & mask;
+            handler.onKeyEvent(downs[slot], keys[slot], times[slot]);
+            head.set(++h); // the slot may be reused now
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * @return whether there's nothing to drain. Safe to call from either side, but may be outdated right away.
+     */
+    boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    /**
+     * @return most events the ring holds at once.
+     */
+    int getCapacity() {
+        return mask + 1;
+    }
+}
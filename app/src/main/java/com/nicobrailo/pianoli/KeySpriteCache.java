@@ -0,0 +1,177 @@
+package com.nicobrailo.pianoli;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.util.Log;
+
+/**
+ * Pre-rendered appearance of every key, so {@link PianoCanvas} can redraw by just copying bitmaps.
+ *
+ * <p>
+ * All big keys have the same size, as do all flats, and a key's colours only depend on its {@link Theme} palette
+ * entry: its colour slot and whether it's pressed. So a handful of sprites covers the whole keyboard, one per palette
+ * entry. They're painted once, by {@link #paintKey}, when the cache is built; build a new cache when the theme or
+ * geometry changes.
+ * </p>
+ * <p>
+ * Above its bottom bevel, every row of a key is the same. So sprites are only painted as high as the bottom bevel,
+ * plus one row, which {@link #drawKey} stretches over the rest of the key's height. That keeps the cache at a few
+ * dozen KiB, instead of a full-screen-height bitmap per palette entry: megabytes, on the low-end devices we target.
+ * </p>
+ */
+class KeySpriteCache {
+    private final Theme theme;
+    private final Bitmap[] sprites;
+
+    /* Scratch rectangles for drawKey(), which only runs on the render thread */
+    private final Rect src = new Rect();
+    private final Rect dst = new Rect();
+
+    /**
+     * Paints all sprites, which can take a while on big screens; do this at (re-)initialisation, not per key press.
+     *
+     * @param bevelWidth width of the 3D-effect edges, see {@link #paintKey}
+     */
+    KeySpriteCache(Piano piano, Theme theme, float bevelWidth) {
+        this.theme = theme;
+        this.sprites = new Bitmap[theme.getPaletteSize()];
+
+        Key bigKey = piano.getAreaForKey(0);
+        Key flatKey = piano.getAreaForKey(1);
+        // The bottom bevel, plus the one row that gets stretched.
+        final int stretchedHeight = (int) Math.ceil(bevelWidth) + 1;
+        Paint paint = new Paint();
+        for (int sprite = 0; sprite < sprites.length; sprite++) {
+            Key shape = Theme.isFlatEntry(sprite) ? flatKey : bigKey;
+            // Bitmaps can't be empty, but keys can be, on tiny screens.
+            int width = Math.max(1, shape.x_f - shape.x_i);
+            int height = Math.max(1, Math.min(shape.y_f - shape.y_i, stretchedHeight));
+
+            sprites[sprite] = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            paintKey(new Canvas(sprites[sprite]), width, height, theme, sprite, bevelWidth, paint);
+        }
+        Log.d("PianOli::KeySpriteCache", sprites.length + " key sprites for " + theme + ", "
+                + getByteCount() / 1024 + "KiB");
+    }
+
+    /**
+     * Draws key <code>keyIdx</code>, in its current state, at its place on the keyboard.
+     */
+    void drawKey(Canvas canvas, Key area, int keyIdx, boolean isPressed) {
+        if (area.x_f <= area.x_i || area.y_f <= area.y_i) {
+            return; // sprites are at least a pixel, but an empty key draws nothing.
+        }
+        final Bitmap sprite = sprites[theme.getPaletteEntry(keyIdx, isPressed)];
+        final int width = sprite.getWidth();
+        final int height = sprite.getHeight();
+        if (area.y_f - area.y_i <= height) {
+            canvas.drawBitmap(sprite, area.x_i, area.y_i, null); // short key, painted full-size
+            return;
+        }
+
+        // Stretch the top row down to where the bottom bevel starts, then copy the bevel as-is. No paint means no
+        // filtering, so the stretch just repeats the row, and never blends in the bevel.
+        final int bevelTop = area.y_f - (height - 1);
+        src.set(0, 0, width, 1);
+        dst.set(area.x_i, area.y_i, area.x_i + width, bevelTop);
+        canvas.drawBitmap(sprite, src, dst, null);
+        src.set(0, 1, width, height);
+        dst.set(area.x_i, bevelTop, area.x_i + width, area.y_f);
+        canvas.drawBitmap(sprite, src, dst, null);
+    }
+
+    /**
+     * Paints a single key, with its top-left corner at the origin of <code>canvas</code>.
+     *
+     * <p>
+     * Keys are a solid colour, with bevels along the left, bottom, and right edges for a 3D-effect.
+     * The top of the key doesn't have a bevel.
+     * </p>
+     */
+    static void paintKey(Canvas canvas, int width, int height, Theme theme, int paletteEntry, float bevelWidth, Paint p) {
+        p.setColor(theme.getShade(paletteEntry, Theme.SHADE_FILL));
+
+        // Draw the main (solid) background of the key.
+        canvas.drawRect(0, 0, width, height, p);
+
+        // Now draw the bevels around the edge of each key, in their brighter or darker shades of the fill.
+
+        // Left bevel
+        // +---+
+        // |   |
+        // |   |
+        // |   |
+        // |   |
+        // |   *
+        // | *
+        // *
+
+        Path left = new Path();
+        left.moveTo(0, 0);
+        left.lineTo(0, height);
+        left.lineTo(bevelWidth, height - bevelWidth);
+        left.lineTo(bevelWidth, 0);
+        left.lineTo(0, 0);
+
+        p.setColor(theme.getShade(paletteEntry, Theme.SHADE_LEFT_BEVEL));
+        canvas.drawPath(left, p);
+
+        // Right bevel
+        // +---+
+        // |   |
+        // |   |
+        // |   |
+        // |   |
+        // *   |
+        //   * |
+        //     *
+
+        Path right = new Path();
+        right.moveTo(width, 0);
+        right.lineTo(width, height);
+        right.lineTo(width - bevelWidth, height - bevelWidth);
+        right.lineTo(width - bevelWidth, 0);
+        right.lineTo(width, 0);
+
+        p.setColor(theme.getShade(paletteEntry, Theme.SHADE_RIGHT_BEVEL));
+        canvas.drawPath(right, p);
+
+        //         Bottom bevel
+        //          *---------*
+        //       *                *
+        //    *----------------------+
+
+        Path bottom = new Path();
+        bottom.moveTo(0, height);
+        bottom.lineTo(width, height);
+        bottom.lineTo(width - bevelWidth, height - bevelWidth);
+        bottom.lineTo(bevelWidth, height - bevelWidth);
+        bottom.lineTo(0, height);
+
+        p.setColor(theme.getShade(paletteEntry, Theme.SHADE_BOTTOM_BEVEL));
+        canvas.drawPath(bottom, p);
+    }
+
+    /**
+     * @return memory held by the sprites.
+     */
+    long getByteCount() {
+        long bytes = 0;
+        for (Bitmap sprite : sprites) {
+            bytes += sprite.getByteCount();
+        }
+        return bytes;
+    }
+
+    /**
+     * Frees the sprites' pixel memory right away, instead of waiting for the garbage collector. Don't draw afterwards.
+     */
+    void recycle() {
+        for (Bitmap sprite : sprites) {
+            sprite.recycle();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.nicobrailo.pianoli;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size histogram of durations, which any thread can record into without locking or allocating.
+ *
+ * <p>
+ * Durations are kept in microseconds, in log-linear buckets: exact below {@value #EXACT_LIMIT}&micro;s, and above that
+ * {@value #SUB_BUCKETS} buckets per power of two, so every bucket is within 12.5% of the values it holds. That's
+ * plenty to tell a 2ms touch-to-sound delay from a 20ms one, in a couple of kilobytes, from microseconds up to minutes.
+ * </p>
+ * <p>
+ * Reading (e.g. {@link #getPercentileMicros(double)}) while other threads record is safe, but may be off by the
+ * samples recorded meanwhile.
+ * </p>
+ */
+class LatencyHistogram {
+    /** Values below this each have their own bucket */
+    static final int EXACT_LIMIT = 16;
+    /** Buckets per power of two, above {@link #EXACT_LIMIT} */
+    static final int SUB_BUCKETS = 8;
+    /** log2({@link #SUB_BUCKETS}) */
+    private static final int SUB_BUCKET_BITS = 3;
+    /** log2({@link #EXACT_LIMIT}) */
+    private static final int EXACT_BITS = 4;
+    /** Values from 2^this microseconds (about 18 minutes) on all land in the last bucket */
+    private static final int MAX_BITS = 30;
+
+    static final int BUCKET_COUNT = EXACT_LIMIT + (MAX_BITS - EXACT_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * Counts one sample. Negative durations (clock skew between where they were stamped) count as zero.
+     */
+    void record(long micros) {
+        counts.incrementAndGet(bucketOf(micros));
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < EXACT_LIMIT) {
+            return micros < 0 ? 0 : (int) micros;
+        }
+        final int exp = 63 - Long.numberOfLeadingZeros(micros);
+        if (exp >= MAX_BITS) {
+            return BUCKET_COUNT - 1;
+        }
+        final int sub = (int) (micros >> (exp - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return EXACT_LIMIT + (exp - EXACT_BITS) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return the value reported for samples in <code>bucket</code>: the middle of its range.
+     */
+    static long valueOf(int bucket) {
+        if (bucket < EXACT_LIMIT) {
+            return bucket;
+        }
+        final int exp = EXACT_BITS + (bucket - EXACT_LIMIT) / SUB_BUCKETS;
+        final int sub = (bucket - EXACT_LIMIT) % SUB_BUCKETS;
+        final long width = 1L << (exp - SUB_BUCKET_BITS);
+        return (SUB_BUCKETS + sub) * width + width / 2;
+    }
+
+    /**
+     * @return the number of samples recorded.
+     */
+    long getCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * @param percentile e.g. <code>95</code> for the duration 95% of the samples don't exceed.
+     * @return that duration, in microseconds, or <code>0</code> if nothing was recorded.
+     */
+    long getPercentileMicros(double percentile) {
+        final long total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return valueOf(i);
+            }
+        }
+        return valueOf(BUCKET_COUNT - 1); // samples recorded while we were counting
+    }
+
+    /**
+     * Forgets all samples.
+     */
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+    }
+}
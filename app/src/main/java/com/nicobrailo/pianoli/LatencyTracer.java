@@ -0,0 +1,261 @@
+package com.nicobrailo.pianoli;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Traces how long each stage of a key-press takes to be reached, counted from the touch that caused it.
+ *
+ * <p>
+ * A key-down is stamped with the time the hardware sampled its touch ({@link Piano#getEventTime()}), and then again at
+ * each {@link Stage} it passes, on its way to being heard and drawn. The delays are collected per stage in a
+ * {@link LatencyHistogram}, and {@link #dump()} logs their percentiles, when asked to from the settings screen.
+ * Measurements are labelled with what they were taken under, such as the input mode (see {@link #setLabel(String)}),
+ * so those can be compared.
+ * </p>
+ * <p>
+ * Off until switched on in the settings (see {@link #setEnabled(boolean)}), in any build. Every call site is guarded
+ * by <code>if (LatencyTracer.isEnabled())</code>, so while off, a key press costs no more than reading a flag a few
+ * times. When on, stamping is lock-free and doesn't allocate, so it doesn't disturb what it measures.
+ * </p>
+ * <p>
+ * Event times are {@link android.os.SystemClock#uptimeMillis()}, and we stamp with {@link System#nanoTime()}; on
+ * android, both read the same monotonic clock.
+ * </p>
+ */
+public class LatencyTracer {
+    private static final String TAG = "PianOli::Latency";
+
+    /** Whether we're tracing at all; see {@link #isEnabled()} */
+    private static volatile boolean enabled;
+
+    /** Marker for "no traced key-down (in flight)" */
+    static final long NONE = Long.MIN_VALUE;
+
+    private static final LatencyTracer INSTANCE = new LatencyTracer();
+
+    /**
+     * The points a key-down passes. Sound is made on its own thread, so {@link #PLAY_NOTE} may come before or after
+     * {@link #DISPATCHED}.
+     */
+    public enum Stage {
+        /** {@link Piano#doKeyDown(int, long)} is called: touch handling is done */
+        KEY_DOWN,
+        /** All of the {@link Piano}'s listeners have been notified, on the UI thread */
+        DISPATCHED,
+        /**
+         * The {@link AudioDispatcher} has had all sound makers play it (<code>SoundSet.playNote</code> returned):
+         * the note is on its way to the speaker
+         */
+        PLAY_NOTE,
+        /** The first frame showing the key-down has been posted */
+        FRAME_END,
+    }
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+
+    /**
+     * Touch time of the key-down being dispatched, in {@link System#nanoTime()} time base, or {@link #NONE}.
+     * Key-downs are dispatched one at a time, so there is only ever one in flight.
+     */
+    private volatile long inputNanos = NONE;
+
+    /** Touch time of the oldest key-down that hasn't been drawn yet, or {@link #NONE} */
+    private final AtomicLong undrawnInputNanos = new AtomicLong(NONE);
+
+    /** What the current measurements were taken under, see {@link #setLabel(String)} */
+    private volatile String label = "";
+
+    LatencyTracer() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * @return the process-wide tracer.
+     */
+    public static LatencyTracer get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return whether to trace; guard every call to the {@link #get() tracer} with this.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts or stops tracing. What was measured so far is kept, until the next {@link #dump()}.
+     */
+    public static void setEnabled(boolean enable) {
+        if (enable && !enabled) {
+            // Whatever was in flight when we stopped has long been heard and drawn.
+            INSTANCE.forgetInFlight();
+        }
+        enabled = enable;
+    }
+
+    /**
+     * Forgets the key-downs in flight, so they don't count for the next stamps.
+     */
+    void forgetInFlight() {
+        inputNanos = NONE;
+        undrawnInputNanos.set(NONE);
+    }
+
+    /**
+     * A key-down, caused by a touch at <code>eventTimeMillis</code>, is being dispatched: stamps
+     * {@link Stage#KEY_DOWN}, and makes it the key-down the other stages are stamped for.
+     *
+     * @param eventTimeMillis see {@link Piano#getEventTime()}; key-downs of {@link Piano#UNKNOWN_TIME} aren't traced.
+     */
+    public void beginKeyDown(long eventTimeMillis) {
+        if (eventTimeMillis == Piano.UNKNOWN_TIME) {
+            inputNanos = NONE;
+            return;
+        }
+
+        final long input = eventTimeMillis * 1_000_000;
+        inputNanos = input;
+        stamp(Stage.KEY_DOWN);
+    }
+
+    /**
+     * The key-down being dispatched has reached <code>stage</code>.
+     */
+    public void stamp(@NonNull Stage stage) {
+        final long input = inputNanos;
+        if (input != NONE) {
+            histograms[stage.ordinal()].record((getNow() - input) / 1_000);
+        }
+    }
+
+    /**
+     * A key-down, caused by a touch at <code>eventTimeMillis</code>, has reached <code>stage</code>. For stages on
+     * other threads than the UI thread, where the key-down being dispatched is a different one.
+     *
+     * @param eventTimeMillis see {@link Piano#getEventTime()}; key-downs of {@link Piano#UNKNOWN_TIME} aren't traced.
+     */
+    public void stampEvent(@NonNull Stage stage, long eventTimeMillis) {
+        if (eventTimeMillis != Piano.UNKNOWN_TIME) {
+            histograms[stage.ordinal()].record((getNow() - eventTimeMillis * 1_000_000) / 1_000);
+        }
+    }
+
+    /**
+     * The key-down being dispatched has reached all listeners; it's no longer in flight.
+     */
+    public void endKeyDown() {
+        stamp(Stage.DISPATCHED);
+        inputNanos = NONE;
+    }
+
+    /**
+     * The key-down being dispatched has been drawn, i.e. marked for the next frame. Call once that frame's content
+     * is final, so a frame already being drawn can't claim it.
+     */
+    public void keyDrawn() {
+        final long input = inputNanos;
+        if (input != NONE) {
+            undrawnInputNanos.compareAndSet(NONE, input);
+        }
+    }
+
+    /**
+     * A frame is about to be drawn: takes the oldest key-down it shows, which {@link #frameEnd(long)} needs.
+     * Later key-downs shown by the same frame had less of a wait, and don't count.
+     *
+     * @return its touch time, or {@link #NONE} if the frame shows no traced key-down.
+     */
+    public long beginFrame() {
+        return undrawnInputNanos.getAndSet(NONE);
+    }
+
+    /**
+     * The frame has been posted: stamps {@link Stage#FRAME_END}.
+     *
+     * @param shownInputNanos what {@link #beginFrame()} returned for this frame.
+     */
+    public void frameEnd(long shownInputNanos) {
+        if (shownInputNanos != NONE) {
+            histograms[Stage.FRAME_END.ordinal()].record((getNow() - shownInputNanos) / 1_000);
+        }
+    }
+
+    /**
+     * Labels the measurements from now on with what they're taken under, e.g. the input mode. If that changes, what
+     * was measured under the old label is dumped first, so the two don't mix.
+     */
+    public synchronized void setLabel(@NonNull String label) {
+        if (label.equals(this.label)) {
+            return;
+        }
+        if (hasSamples()) {
+            dump();
+        }
+        this.label = label;
+    }
+
+    private boolean hasSamples() {
+        for (LatencyHistogram histogram : histograms) {
+            if (histogram.getCount() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    LatencyHistogram getHistogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    /**
+     * Logs the percentiles of every stage, then starts afresh.
+     */
+    public void dump() {
+        Log.i(TAG, toString());
+        reset();
+    }
+
+    /**
+     * Forgets all samples.
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Touch-to-stage latency");
+        if (!label.isEmpty()) {
+            sb.append(" (").append(label).append(')');
+        }
+        sb.append(':');
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = histograms[stage.ordinal()];
+            sb.append(String.format(Locale.ROOT, "%n  %-10s n=%d p50=%.2fms p95=%.2fms p99=%.2fms",
+                    stage.name().toLowerCase(Locale.ROOT), histogram.getCount(),
+                    histogram.getPercentileMicros(50) / 1000.0,
+                    histogram.getPercentileMicros(95) / 1000.0,
+                    histogram.getPercentileMicros(99) / 1000.0));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Test seam: override to inject fake time for testing.
+     *
+     * @return the current time, in nanoseconds.
+     */
+    long getNow() {
+        return System.nanoTime();
+    }
+}
@@ -14,13 +14,19 @@ import android.widget.Toast;
 import androidx.annotation.RequiresApi;
 import androidx.appcompat.app.AppCompatActivity;
 
+import java.io.File;
+
 public class MainActivity extends AppCompatActivity implements AppConfigTrigger.AppConfigCallback {
 
+    /** Where {@link #onPause()} exports the recent key events, if recording is enabled; see {@link KeyEventJournal} */
+    private static final String JOURNAL_FILE = "key-journal.bin";
+
     private PianoCanvas piano_canvas = null;
 
     @RequiresApi(api = Build.VERSION_CODES.N)
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        StartupTimings.get().begin(StartupTimings.Phase.FIRST_FRAME);
         super.onCreate(savedInstanceState);
 
         // Set a bunch of flags to make it full screen. If any of the features are
@@ -42,11 +48,13 @@ public class MainActivity extends AppCompatActivity implements AppConfigTrigger.
             setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_LANDSCAPE);
         } catch (Exception e) { /* Ignore, the app can survive without fancy UI options */ }
 
+        StartupTimings.get().begin(StartupTimings.Phase.VIEW_INFLATE);
         setContentView(R.layout.activity_main);
+        StartupTimings.get().end(StartupTimings.Phase.VIEW_INFLATE);
 
         piano_canvas = findViewById(R.id.piano_canvas);
         piano_canvas.setConfigRequestCallback(this);
-        piano_canvas.reInitPiano(this, Preferences.selectedSoundSet(this));
+        // No need to apply the preferences (soundset etc.) to the piano here: onResume always follows onCreate.
 
         try {
             View decorView = getWindow().getDecorView();
@@ -67,10 +75,31 @@ public class MainActivity extends AppCompatActivity implements AppConfigTrigger.
     protected void onResume() {
         super.onResume();
 
+        // Cheap if nothing changed, e.g. when returning from the settings screen without changing anything.
         piano_canvas.reInitPiano(this, Preferences.selectedSoundSet(this));
         lock_app();
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+        piano_canvas.logDroppedKeyEvents();
+        piano_canvas.logFrameStats();
+
+        // App-specific external storage: readable with adb, or a file manager, without any permissions.
+        // Only written if recording is enabled, and then in the background.
+        File journalDir = getExternalFilesDir(null);
+        if (journalDir != null) {
+            piano_canvas.exportJournal(new File(journalDir, JOURNAL_FILE));
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        piano_canvas.onTrimMemory(level);
+    }
+
     @Override
     public void requestConfig() {
         Log.i("PianOli::main", "opening config");
@@ -1,6 +1,5 @@
 package com.nicobrailo.pianoli;
 
-import android.util.Log;
 import androidx.annotation.NonNull;
 
 import java.util.ArrayList;
@@ -41,11 +40,27 @@ public class Piano {
     private final int keys_flats_height;
     private final int keys_count;
 
+    /*
+     * Geometry table, by key index: built once, since it only depends on the screen size.
+     * All keys start at the top of the screen (y_i == 0), so that isn't stored.
+     */
+    private final int[] key_x_i;
+    private final int[] key_x_f;
+    private final int[] key_y_f;
+    /** The same geometry as {@link Key}s, so lookups don't allocate */
+    private final Key[] key_areas;
+
     /** state tracker: which keys are <em>currently</em> pressed */
     private final boolean[] key_pressed;
 
     private final List<PianoListener> listeners;
 
+    /** Marks events of unknown time, see {@link #getEventTime()} */
+    public static final long UNKNOWN_TIME = -1;
+
+    /** Time of the event currently being dispatched, see {@link #getEventTime()} */
+    private long eventTime = UNKNOWN_TIME;
+
     /**
      * Construct a partially initialised (geometry only) Piano model.
      *
@@ -68,6 +83,18 @@ public class Piano {
 
         key_pressed = new boolean[keys_count]; // new array defaults to all false;
         listeners = new ArrayList<>();
+
+        key_x_i = new int[keys_count];
+        key_x_f = new int[keys_count];
+        key_y_f = new int[keys_count];
+        key_areas = new Key[keys_count];
+        for (int keyIdx = 0; keyIdx < keys_count; keyIdx++) {
+            Key area = computeAreaForKey(keyIdx);
+            key_x_i[keyIdx] = area.x_i;
+            key_x_f[keyIdx] = area.x_f;
+            key_y_f[keyIdx] = area.y_f;
+            key_areas[keyIdx] = area;
+        }
     }
 
     int get_keys_flat_width() {
@@ -88,29 +115,62 @@ public class Piano {
 
     boolean is_key_pressed(int key_idx) {
         if (isOutOfRange(key_idx)) {
-            Log.d("PianOli::Piano", "This shouldn't happen: isKeyPressed out of range, key" + key_idx);
+            PianoLog.d("PianOli::Piano", "This shouldn't happen: isKeyPressed out of range, key", key_idx);
             return false;
         }
 
         return key_pressed[key_idx];
     }
 
+    /**
+     * Time of the key event that listeners are being notified of, in the {@link android.os.SystemClock#uptimeMillis()}
+     * time base of input events. For touch samples batched into one <code>MotionEvent</code>, this is the time of the
+     * individual sample, so it may lie a little in the past.
+     *
+     * @return the time, or {@link #UNKNOWN_TIME} if the event didn't come with one.
+     */
+    public long getEventTime() {
+        return eventTime;
+    }
+
     /**
      * Switch key <code>keyIdx</code> to DOWN state, notifying all {@link PianoListener}s.
      *
      * @see PianoListener#onKeyDown(int)
      */
     public void doKeyDown(int keyIdx) {
+        doKeyDown(keyIdx, UNKNOWN_TIME);
+    }
+
+    /**
+     * Like {@link #doKeyDown(int)}, for an event that happened at <code>eventTime</code>.
+     *
+     * @see #getEventTime()
+     */
+    public void doKeyDown(int keyIdx, long eventTime) {
         if (isOutOfRange(keyIdx)) {
-            Log.d("PianOli::Piano", "This shouldn't happen: Key-Down out of range, key" + keyIdx);
+            PianoLog.d("PianOli::Piano", "This shouldn't happen: Key-Down out of range, key", keyIdx);
             return;
         }
 
-        Log.d("PianOli::Piano", "Key " + keyIdx + " is now DOWN");
+        PianoLog.v("PianOli::Piano", "Key ", keyIdx, " is now DOWN");
         key_pressed[keyIdx] = true;
+        this.eventTime = eventTime;
+        if (LatencyTracer.isEnabled()) {
+            LatencyTracer.get().beginKeyDown(eventTime);
+        }
 
-        for (PianoListener l : listeners) {
-            l.onKeyDown(keyIdx);
+        PianoLog.beginSection("PianOli::KeyDown");
+        try {
+            // Indexed loop: an iterator would be an allocation per key event.
+            for (int i = 0; i < listeners.size(); i++) {
+                listeners.get(i).onKeyDown(keyIdx);
+            }
+        } finally {
+            PianoLog.endSection();
+        }
+        if (LatencyTracer.isEnabled()) {
+            LatencyTracer.get().endKeyDown();
         }
     }
 
@@ -120,16 +180,31 @@ public class Piano {
      * @see PianoListener#onKeyUp(int)
      */
     public void doKeyUp(int keyIdx) {
+        doKeyUp(keyIdx, UNKNOWN_TIME);
+    }
+
+    /**
+     * Like {@link #doKeyUp(int)}, for an event that happened at <code>eventTime</code>.
+     *
+     * @see #getEventTime()
+     */
+    public void doKeyUp(int keyIdx, long eventTime) {
         if (isOutOfRange(keyIdx)) {
-            Log.d("PianOli::Piano", "This shouldn't happen: Key-Up out of range, key" + keyIdx);
+            PianoLog.d("PianOli::Piano", "This shouldn't happen: Key-Up out of range, key", keyIdx);
             return;
         }
 
-        Log.d("PianOli::Piano", "Key " + keyIdx + " is now UP");
+        PianoLog.v("PianOli::Piano", "Key ", keyIdx, " is now UP");
         key_pressed[keyIdx] = false;
-
-        for (PianoListener l : listeners) {
-            l.onKeyUp(keyIdx);
+        this.eventTime = eventTime;
+
+        PianoLog.beginSection("PianOli::KeyUp");
+        try {
+            for (int i = 0; i < listeners.size(); i++) {
+                listeners.get(i).onKeyUp(keyIdx);
+            }
+        } finally {
+            PianoLog.endSection();
         }
     }
 
@@ -138,6 +213,15 @@ public class Piano {
     }
 
     /**
+     * Subscribe a listener to key events.
+     *
+     * <p>
+     * Listeners are notified grouped by their {@link PianoListener#getPriority()}, regardless of the order in which
+     * they were added: all {@link PianoListener.Priority#AUDIO AUDIO} listeners first, then
+     * {@link PianoListener.Priority#STATE STATE}, then {@link PianoListener.Priority#VISUAL VISUAL}.
+     * Within the same priority, earlier-added listeners are notified first.
+     * </p>
+     *
      * @param l new Listener to be notified
      * @return Per the {@link java.util.Collection#add(Object)} contract, <code>true</code> if the listener list changed as a result of this add,
      *          <code>false</code> if it was already subscribed.
@@ -145,10 +229,19 @@ public class Piano {
     public boolean addListener(@NonNull PianoListener l) {
         Objects.requireNonNull(l, "Listeners must not be null to avoid NullPointerExceptions on notify");
 
-        if (!listeners.contains(l)) { // don't double-add listeners, to avoid double-triggers
-            return listeners.add(l);
+        if (listeners.contains(l)) { // don't double-add listeners, to avoid double-triggers
+            return false;
+        }
+
+        // Keep the list sorted by priority, by inserting after the last listener that should go before us.
+        // Listener lists are tiny, and only change on (re-)initialisation, so a linear scan is fine.
+        final PianoListener.Priority priority = l.getPriority();
+        int insertAt = listeners.size();
+        while (insertAt > 0 && listeners.get(insertAt - 1).getPriority().compareTo(priority) > 0) {
+            insertAt--;
         }
-        return false;
+        listeners.add(insertAt, l);
+        return true;
     }
 
     /**
@@ -160,25 +253,63 @@ public class Piano {
         return listeners.remove(l);
     }
 
+    /**
+     * Hit-test: which key is at a screen position?
+     *
+     * <p>
+     * Constant-time, and allocation-free: the column determines the big key, and only the flats on either side of it
+     * can overlap it. Called for every touch sample, so this matters for <code>ACTION_MOVE</code> storms.
+     * </p>
+     *
+     * @return the key index; may be out of range for positions off the keyboard.
+     */
     int pos_to_key_idx(float pos_x, float pos_y) {
         final int big_key_idx = 2 * ((int) pos_x / keys_width);
         if (pos_y > keys_flats_height) return big_key_idx;
 
         // Check if press is inside rect of flat key
-        Key flat = getAreaForSmallKey(big_key_idx + 1);
-        if (flat.contains(pos_x, pos_y)) return big_key_idx + 1;
+        if (smallKeyContains(big_key_idx + 1, pos_x, pos_y)) return big_key_idx + 1;
 
         if (big_key_idx > 0) {
-            Key prev_flat = getAreaForSmallKey(big_key_idx - 1);
-            if (prev_flat.contains(pos_x, pos_y)) return big_key_idx - 1;
+            if (smallKeyContains(big_key_idx - 1, pos_x, pos_y)) return big_key_idx - 1;
         }
 
         // If not in the current or previous flat, it must be a hit in the big key
         return big_key_idx;
     }
 
+    /**
+     * Allocation-free equivalent of <code>getAreaForKey(keyIdx).contains(pos_x, pos_y)</code>, for flats.
+     */
+    private boolean smallKeyContains(int keyIdx, float pos_x, float pos_y) {
+        if (isOutOfRange(keyIdx)) {
+            // Off the keyboard, so not worth a table entry; same arithmetic as getAreaForSmallKey.
+            final int octaveIdx = (keyIdx / 2) % 7;
+            if (octaveIdx == 2 || octaveIdx == 6) {
+                return false;
+            }
+            final int x_i = (keyIdx / 2) * keys_width + keys_width - (keys_flat_width / 2);
+            return (pos_x > x_i && pos_x < x_i + keys_flat_width) &&
+                    (pos_y > 0 && pos_y < keys_flats_height);
+        }
+
+        return (pos_x > key_x_i[keyIdx] && pos_x < key_x_f[keyIdx]) &&
+                (pos_y > 0 && pos_y < key_y_f[keyIdx]);
+    }
+
+    /**
+     * @return the area of a key; the same (immutable) instance every time, for keys on the keyboard.
+     */
     @NonNull
     Key getAreaForKey(int keyIdx) {
+        if (isOutOfRange(keyIdx)) {
+            return computeAreaForKey(keyIdx);
+        }
+        return key_areas[keyIdx];
+    }
+
+    @NonNull
+    private Key computeAreaForKey(int keyIdx) {
         if ((keyIdx & 1) == 0) { // even positions are the full, big keys
             return getAreaForBigKey(keyIdx);
         } else {
@@ -1,17 +1,19 @@
 package com.nicobrailo.pianoli;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.Path;
 import android.graphics.Point;
 import android.graphics.PorterDuff;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.Display;
+import android.view.InputDevice;
 import android.view.MotionEvent;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
@@ -19,17 +21,22 @@ import android.view.SurfaceView;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.content.ContextCompat;
-import androidx.core.graphics.ColorUtils;
 import com.nicobrailo.pianoli.melodies.Melody;
 import com.nicobrailo.pianoli.melodies.MultipleSongsMelodyPlayer;
 import com.nicobrailo.pianoli.sound.MelodicKeySoundMaker;
-import com.nicobrailo.pianoli.sound.SampledSoundSet;
 import com.nicobrailo.pianoli.sound.SoundSet;
+import com.nicobrailo.pianoli.sound.SoundSetCache;
 import com.nicobrailo.pianoli.sound.StraightKeySoundMaker;
 
-import java.util.HashMap;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Renderer/View for our {@link Piano}.
@@ -42,17 +49,79 @@ class PianoCanvas extends SurfaceView implements SurfaceHolder.Callback, PianoLi
     /** Relative width of the 3D-effect edges of keys */
     public static final float BEVEL_RATIO = 0.1f;
 
+    /** Writes {@link #exportJournal(File) exported} journals, off the UI thread, one at a time */
+    private static final ExecutorService JOURNAL_WRITER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "PianOli-JournalWriter");
+        t.setDaemon(true);
+        return t;
+    });
+
     private final float bevelWidth;
 
-    private Piano piano;
+    private final Piano piano;
     final AppConfigTrigger appConfigTrigger;
 
     private final int screen_size_y, screen_size_x;
     private final Drawable gearIcon;
     private Theme theme;
-
-    private Map<Integer, Integer> touch_pointer_to_keys = new HashMap<>();
+    /**
+     * Pre-rendered keys of {@link #theme}, rebuilt whenever that changes.
+     * Only swapped while holding {@link #frameLock}, so a frame never draws recycled sprites.
+     */
+    private KeySpriteCache keySprites;
+
+    /** Draws our frames, see {@link #drawFrame()} */
+    private final RenderLoop renderLoop;
+    /** Held while drawing a frame */
+    private final Object frameLock = new Object();
+    /** Timings of the frames we drew; always on, as it's cheap */
+    private final FrameStats frameStats;
+    /** Whether there's a surface to draw on; guarded by {@link #frameLock} */
+    private boolean surfaceValid;
+    /**
+     * Guards what's still to be drawn: {@link #damage}, {@link #fullRedraw} and the gear state.
+     * Held only briefly, so key events never wait for a frame to finish.
+     */
+    private final Object damageLock = new Object();
+    /** Screen area that changed since the last frame */
+    private final Rect damage = new Rect();
+    /** Whether the next frame must redraw everything, see {@link #redraw()} */
+    private boolean fullRedraw;
+    /** Config keys that carry a (shrunken) gear icon in the next frame, so we know when they move */
+    private final int[] gearsPressed = new int[AppConfigTrigger.CONFIG_TRIGGER_COUNT];
+    private int gearsPressedCount;
+    /** Config key that carries the big gear icon in the next frame, so we know when it moves */
+    private int gearNext = -1;
+    /** {@link AppConfigTrigger#getRevision()} of the gear state above */
+    private int gearRevision = -1;
+    /** UI thread's scratch space for the config trigger's gear state, see {@link #damageKey(int)} */
+    private final int[] pressedGearsScratch = new int[AppConfigTrigger.CONFIG_TRIGGER_COUNT];
+    /** UI thread's scratch space for icon bounds, see {@link #damageGears(int[], int, int)} */
+    private final Rect damageIconBounds = new Rect();
+    /** Render thread's copy of {@link #damage}, taken at the start of each frame; lockCanvas may grow it */
+    private final Rect frameDirty = new Rect();
+    /** Render thread's copy of {@link #gearsPressed}, taken at the start of each frame */
+    private final int[] framePressedGears = new int[AppConfigTrigger.CONFIG_TRIGGER_COUNT];
+    /** Render thread's scratch space for icon bounds, see {@link #draw_icon_on_black_key} */
+    private final Rect drawIconBounds = new Rect();
+
+    /** Which key each finger is on */
+    private final TouchTracker touchTracker;
+    /** Whether we ask for touches to be delivered unbuffered, see {@link #applyUnbufferedInput()} */
+    private boolean unbufferedInput;
+    /** Notifies {@link #soundMaker} on the audio thread */
+    private final AudioDispatcher audioDispatcher;
+    /** Recent key events, for replaying a session that went wrong; <code>null</code> unless enabled in the settings */
+    private KeyEventJournal journal;
+    /** Owner of all loaded soundsets, including {@link #soundSet} */
+    private final SoundSetCache soundSetCache;
     private SoundSet soundSet;
+    /** Whether {@link #soundSetCache} creates soundsets for our own low-latency mixer, see {@link SoundSet#create} */
+    private boolean lowLatencyAudio;
+    /** The currently subscribed sound-making strategy, see {@link #reInitPiano(Context, String)} */
+    private PianoListener soundMaker;
+    /** Melodies that {@link #soundMaker} plays, or <code>null</code> when it plays keys "straight" */
+    private List<Melody> loadedMelodies;
 
     public PianoCanvas(Context context, AttributeSet as) {
         this(context, as, 0);
@@ -65,9 +134,10 @@ class PianoCanvas extends SurfaceView implements SurfaceHolder.Callback, PianoLi
 
         final Point screen_size = new Point();
         final AppCompatActivity ctx;
+        final Display display;
         try {
             ctx = (AppCompatActivity) context;
-            Display display = ctx.getWindowManager().getDefaultDisplay();
+            display = ctx.getWindowManager().getDefaultDisplay();
             display.getSize(screen_size);
         } catch (ClassCastException ex) {
             Log.e("PianOli::PianoCanvas", "Can't read screen size");
@@ -76,14 +146,35 @@ class PianoCanvas extends SurfaceView implements SurfaceHolder.Callback, PianoLi
 
         screen_size_x = screen_size.x;
         screen_size_y = screen_size.y;
-        final String prefSoundset = Preferences.selectedSoundSet(context);
 
-        // DANGER ZONE: !! delicate ordering dependencies in this block !!
-        appConfigTrigger = new AppConfigTrigger();
-        // gotcha: gets just-created appConfigHandler via field
-        reInitPiano(context, prefSoundset); // danger: impl leaks `this` pointer before ctor finished
-        // gotcha: needs piano field that was just initialised by reInitPiano above
+        // The keyboard model only depends on the screen size, so build it exactly once.
+        // Everything that depends on preferences is (re-)attached in reInitPiano.
+        StartupTimings.get().begin(StartupTimings.Phase.MODEL_BUILD);
+        this.piano = new Piano(screen_size_x, screen_size_y);
+        this.theme = Theme.fromPreference(Preferences.selectedTheme(context));
         this.bevelWidth = piano.get_keys_width() * BEVEL_RATIO;
+        this.keySprites = new KeySpriteCache(piano, theme, bevelWidth);
+        this.renderLoop = new RenderLoop(this::drawFrame);
+        this.frameStats = new FrameStats(FrameStats.budgetForRefreshRate(display.getRefreshRate()));
+
+        touchTracker = new TouchTracker(piano);
+        appConfigTrigger = new AppConfigTrigger();
+        // for config trigger updates
+        piano.addListener(appConfigTrigger);
+        // Sound makers hang off the dispatcher, on the audio thread; it's the piano's only AUDIO listener.
+        audioDispatcher = new AudioDispatcher(piano);
+        piano.addListener(audioDispatcher);
+        audioDispatcher.start();
+
+        // to redraw on key-touches. Our VISUAL priority ensures we're notified after the config handler
+        // (so its state is also drawn), and after the audio dispatcher has passed the event on to the audio thread.
+        piano.addListener(this);
+        StartupTimings.get().end(StartupTimings.Phase.MODEL_BUILD);
+
+        final Context appContext = context.getApplicationContext();
+        final int visibleKeys = piano.get_keys_count();
+        soundSetCache = new SoundSetCache(name -> SoundSet.create(appContext, name, lowLatencyAudio, visibleKeys),
+                this::post);
 
         this.gearIcon = ContextCompat.getDrawable(context, R.drawable.ic_settings);
         if (this.gearIcon == null) {
@@ -95,39 +186,174 @@ class PianoCanvas extends SurfaceView implements SurfaceHolder.Callback, PianoLi
                 ", there are " + piano.get_keys_count() + " keys");
     }
 
+    /**
+     * Applies the current preferences to the piano: theme, soundset and sound-making strategy.
+     *
+     * <p>
+     * Only what actually changed since the last call is rebuilt; in particular, the soundset's samples are only
+     * (re-)loaded when a different soundset is selected. This makes it cheap to call on every
+     * {@link MainActivity#onResume()}.
+     * </p>
+     */
     public void reInitPiano(Context context, String prefSoundset) {
         Log.i("PianOli::PianoCanvas", "re-initialising Piano");
-        this.piano = new Piano(screen_size_x, screen_size_y);
+        Theme prefTheme = Theme.fromPreference(Preferences.selectedTheme(context));
+        if (prefTheme != theme) {
+            this.theme = prefTheme;
+            KeySpriteCache newSprites = new KeySpriteCache(piano, theme, bevelWidth);
+            synchronized (frameLock) {
+                keySprites.recycle();
+                keySprites = newSprites;
+            }
+        }
 
-        String prefTheme = Preferences.selectedTheme(context);
-        this.theme = Theme.fromPreference(prefTheme);
+        // Whatever we were tracking before the (re)start is stale: release all keys. This also redraws, in the new theme.
+        resetPianoState();
 
-        // for config trigger updates
-        piano.addListener(appConfigTrigger);
+        boolean prefUnbufferedInput = Preferences.isUnbufferedInputEnabled(context);
+        if (prefUnbufferedInput != unbufferedInput) {
+            unbufferedInput = prefUnbufferedInput;
+            applyUnbufferedInput();
+        }
 
-        // to redraw on key-touches, must be after config handler to ensure its input is also drawn
-        piano.addListener(this);
+        // Touch-to-sound delay depends on the input mode: keep what was measured in the other one apart.
+        LatencyTracer.get().setLabel(unbufferedInput ? "unbuffered input" : "buffered input");
+        LatencyTracer.setEnabled(Preferences.isLatencyTracingEnabled(context));
+
+        boolean prefRecordKeyJournal = Preferences.isKeyJournalEnabled(context);
+        if (prefRecordKeyJournal != (journal != null)) {
+            if (prefRecordKeyJournal) {
+                journal = new KeyEventJournal(piano, KeyEventJournal.DEFAULT_CAPACITY);
+                piano.addListener(journal);
+            } else {
+                piano.removeListener(journal);
+                journal = null;
+            }
+        }
 
-        if (soundSet != null) {
-            soundSet.close();
+        boolean prefLowLatencyAudio = Preferences.isLowLatencyAudioEnabled(context);
+        if (prefLowLatencyAudio != lowLatencyAudio) {
+            // Cached soundsets play through the other audio engine; nothing can play until we've picked a new one.
+            soundSetCache.clear();
+            lowLatencyAudio = prefLowLatencyAudio;
         }
+
+        StartupTimings.get().begin(StartupTimings.Phase.SAMPLE_LOAD);
+        SoundSet prefSoundSet = soundSetCache.get(prefSoundset); // cache owns it, so no need to close the previous one
+        prefSoundSet.whenReady(() -> StartupTimings.get().end(StartupTimings.Phase.SAMPLE_LOAD));
+        prefSoundSet.setReleaseMillis(Preferences.keyUpReleaseMillis(context));
+        boolean soundSetChanged = prefSoundSet != soundSet;
+        soundSet = prefSoundSet;
+
+        List<Melody> prefMelodies = Preferences.areMelodiesEnabled(context) ? Preferences.selectedMelodies(context) : null;
+        if (!soundSetChanged && soundMaker != null && Objects.equals(prefMelodies, loadedMelodies)) {
+            Log.i("PianOli::PianoCanvas", "re-initialising Piano - nothing changed");
+            return;
+        }
+
         // Respond musically to key-presses: listen with a "soundMaker"
         // Use "strategy pattern" to deal with the two possible key-to-note mappings:
-        soundSet = new SampledSoundSet(context, prefSoundset);
-        PianoListener soundMaker;
-        if (Preferences.areMelodiesEnabled(context)) {
+        if (soundMaker != null) {
+            audioDispatcher.removeListener(soundMaker);
+        }
+        if (prefMelodies != null) {
             // "melodic" strategy: next note is determined by melody
-            List<Melody> selectedMelodies = Preferences.selectedMelodies(context);
-            MultipleSongsMelodyPlayer melodyPlayer = new MultipleSongsMelodyPlayer(selectedMelodies);
+            MultipleSongsMelodyPlayer melodyPlayer = new MultipleSongsMelodyPlayer(prefMelodies);
             soundMaker = new MelodicKeySoundMaker(soundSet, melodyPlayer);
         } else {
             // "straight" strategy:
             soundMaker = new StraightKeySoundMaker(soundSet);
         }
-        piano.addListener(soundMaker);
+        loadedMelodies = prefMelodies;
+        audioDispatcher.addListener(soundMaker);
         Log.i("PianOli::PianoCanvas", "re-initialising Piano - DONE");
     }
 
+    /**
+     * Asks android to deliver touches unbuffered (or buffered again), according to {@link #unbufferedInput}.
+     *
+     * <p>
+     * Normally, android batches touch events and delivers them once per display frame, which adds up to a frame of
+     * latency to every key press. From android 11 (R) on, we can opt our view out of that for all touchscreen input.
+     * Older versions only allow it per gesture, see {@link #onTouchEvent(MotionEvent)}, which still speeds up all
+     * fingers after the first.
+     * </p>
+     */
+    private void applyUnbufferedInput() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            requestUnbufferedDispatch(unbufferedInput ? InputDevice.SOURCE_TOUCHSCREEN : 0);
+        }
+    }
+
+    /**
+     * Logs how many key events the audio thread couldn't keep up with, if any. Call when the user stops playing, e.g.
+     * from {@link MainActivity#onPause()}.
+     */
+    void logDroppedKeyEvents() {
+        final int dropped = audioDispatcher.getDroppedEvents();
+        if (dropped > 0) {
+            Log.w("PianOli::PianoCanvas", dropped + " key events dropped so far, the audio thread fell behind");
+        }
+    }
+
+    /**
+     * Logs the timings of the frames drawn since the last call. Call when the user stops playing, e.g. from
+     * {@link MainActivity#onPause()}.
+     */
+    void logFrameStats() {
+        Log.i("PianOli::PianoCanvas", frameStats.toString());
+        frameStats.reset();
+    }
+
+    /**
+     * Writes the recent key events to <code>file</code> (replacing it), for replay with a {@link JournalReplayer}.
+     * Does nothing if recording is disabled, or there were no events.
+     *
+     * <p>
+     * Only the (small, in-memory) snapshot is taken here, on the UI thread; the file is written in the background.
+     * </p>
+     */
+    void exportJournal(File file) {
+        if (journal == null || journal.size() == 0) {
+            return;
+        }
+        final int events = journal.size();
+        final ByteArrayOutputStream snapshot = new ByteArrayOutputStream(events * 12 + 16);
+        try {
+            journal.writeTo(snapshot);
+        } catch (IOException e) {
+            throw new IllegalStateException("Writing to memory can't fail", e);
+        }
+        JOURNAL_WRITER.execute(() -> {
+            try (OutputStream out = new FileOutputStream(file)) {
+                snapshot.writeTo(out);
+                Log.i("PianOli::PianoCanvas", "Exported " + events + " key events to " + file);
+            } catch (IOException e) {
+                Log.w("PianOli::PianoCanvas", "Can't export key events to " + file, e);
+            }
+        });
+    }
+
+    /**
+     * Releases cached soundsets when the system runs low on memory.
+     *
+     * <p>
+     * While we're visible, only soundsets that aren't in use are released. Once we're in the background, everything is
+     * released; {@link #reInitPiano(Context, String)} reloads the selected soundset when we come back.
+     * </p>
+     *
+     * @see android.content.ComponentCallbacks2#onTrimMemory(int)
+     */
+    void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            Log.i("PianOli::PianoCanvas", "trimming memory: releasing all soundsets, level " + level);
+            soundSetCache.clear();
+        } else {
+            Log.i("PianOli::PianoCanvas", "trimming memory: releasing unused soundsets, level " + level);
+            soundSetCache.trimToCurrent();
+        }
+    }
+
     /**
      * Dependency injection for context-handling stuff: switching to settings activity, and showing toasts.
      *
@@ -146,113 +372,80 @@ class PianoCanvas extends SurfaceView implements SurfaceHolder.Callback, PianoLi
 
     /**
      * Overlays gear icons onto the currently-held and next expected flat keys.
+     *
+     * @param dirty        only icons touching this area are drawn, or all if <code>null</code>.
+     * @param pressedGears config keys already held, which get a shrunken icon; the first <code>pressedCount</code>.
+     * @param nextGear     next expected config key.
      */
-    void drawConfigGears(Canvas androidCanvas) {
+    void drawConfigGears(Canvas androidCanvas, Rect dirty, int[] pressedGears, int pressedCount, int nextGear) {
         // draw already-held keys with shrunken icon
         int pressedSize = (int) (piano.get_keys_flat_width() * CONFIG_ICON_SIZE_TO_FLAT_KEY_RATIO_PRESSED);
-        for (int cfgKey : appConfigTrigger.getPressedConfigKeys()) {
-            draw_icon_on_black_key(androidCanvas, gearIcon, cfgKey, pressedSize, pressedSize);
+        for (int i = 0; i < pressedCount; i++) {
+            draw_icon_on_black_key(androidCanvas, gearIcon, pressedGears[i], pressedSize, pressedSize, dirty);
         }
 
         // draw next expected key with large icon, for more user-attention.
         int normalSize = (int) (piano.get_keys_flat_width() * CONFIG_ICON_SIZE_TO_FLAT_KEY_RATIO);
-        draw_icon_on_black_key(androidCanvas, gearIcon, appConfigTrigger.getNextExpectedKey(), normalSize, normalSize);
+        draw_icon_on_black_key(androidCanvas, gearIcon, nextGear, normalSize, normalSize, dirty);
     }
 
-    void drawKey(final Canvas canvas, final int i) {
+    /**
+     * Draws all keys touching <code>dirty</code>: big keys first, then the flats on top of them.
+     *
+     * @param dirty only keys touching this area are drawn, or all if <code>null</code>.
+     */
+    void drawKeys(final Canvas canvas, final Rect dirty) {
+        // draw main, big keys (even key index)
+        for (int i = 0; i < piano.get_keys_count(); i += 2) {
+            drawKey(canvas, i, dirty);
+        }
+
+        // Small keys drawn after big keys to ensure z-index (odd key index)
+        for (int i = 1; i < piano.get_keys_count(); i += 2) {
+            drawKey(canvas, i, dirty);
+        }
+    }
+
+    void drawKey(final Canvas canvas, final int i, final Rect dirty) {
         Key rect = piano.getAreaForKey(i);
         if (rect == Key.CANT_TOUCH_THIS) {
             return; // don't waste performance drawing the skipped black keys.
         }
+        if (dirty != null && !dirty.intersects(rect.x_i, rect.y_i, rect.x_f, rect.y_f)) {
+            return; // unchanged, and still on screen.
+        }
 
-        Paint p = new Paint();
-        p.setColor(theme.getColorForKey(i, piano.is_key_pressed(i)));
-
-        // Draw the main (solid) background of the key.
-
-        Rect r = new Rect();
-        r.left = rect.x_i;
-        r.right = rect.x_f;
-        r.top = rect.y_i;
-        r.bottom = rect.y_f;
-        canvas.drawRect(r, p);
-
-        // Now draw the bevels around the edge of each key.
-        // Just the left, bottom, and right. The top of the key doesn't have a bevel.
-
-        // Adjust this colour brighter or darker for the bevel.
-        int base = p.getColor();
-
-        // Left bevel
-        // +---+
-        // |   |
-        // |   |
-        // |   |
-        // |   |
-        // |   *
-        // | *
-        // *
-
-        Path left = new Path();
-        left.moveTo(r.left, r.top);
-        left.lineTo(r.left, r.bottom);
-        left.lineTo(r.left + bevelWidth, r.bottom - bevelWidth);
-        left.lineTo(r.left + bevelWidth, r.top);
-        left.lineTo(r.left, r.top);
-
-        p.setColor(ColorUtils.blendARGB(base, Color.BLACK, 0.3f));
-        canvas.drawPath(left, p);
-
-        // Right bevel
-        // +---+
-        // |   |
-        // |   |
-        // |   |
-        // |   |
-        // *   |
-        //   * |
-        //     *
-
-        Path right = new Path();
-        right.moveTo(r.right, r.top);
-        right.lineTo(r.right, r.bottom);
-        right.lineTo(r.right - bevelWidth, r.bottom - bevelWidth);
-        right.lineTo(r.right - bevelWidth, r.top);
-        right.lineTo(r.right, r.top);
-
-        p.setColor(ColorUtils.blendARGB(base, Color.WHITE, 0.2f));
-        canvas.drawPath(right, p);
-
-        //         Bottom bevel
-        //          *---------*
-        //       *                *
-        //    *----------------------+
-
-        Path bottom = new Path();
-        bottom.moveTo(r.left, r.bottom);
-        bottom.lineTo(r.right, r.bottom);
-        bottom.lineTo(r.right - bevelWidth, r.bottom - bevelWidth);
-        bottom.lineTo(r.left + bevelWidth, r.bottom - bevelWidth);
-        bottom.lineTo(r.left, r.bottom);
-
-        p.setColor(ColorUtils.blendARGB(base, Color.BLACK, 0.1f));
-        canvas.drawPath(bottom, p);
+        keySprites.drawKey(canvas, rect, i, piano.is_key_pressed(i));
     }
 
     /**
-     * Draw something on a black key. Undefined if key_idx isn't black.
+     * Computes where {@link #draw_icon_on_black_key} draws an icon, into <code>r</code>.
+     *
+     * @return <code>r</code>, for chaining.
      */
-    void draw_icon_on_black_key(final Canvas canvas, final Drawable icon, int key_idx,
-                                final int icon_width, final int icon_height) {
+    Rect iconBounds(int key_idx, final int icon_width, final int icon_height, Rect r) {
         final Key key = piano.getAreaForKey(key_idx);
         int icon_x = ((key.x_f - key.x_i) / 2) + key.x_i;
         int icon_y = icon_height;
 
-        Rect r = new Rect();
         r.left = icon_x - (icon_width / 2);
         r.right = icon_x + (icon_width / 2);
         r.top = icon_y;
         r.bottom = icon_y + icon_height;
+        return r;
+    }
+
+    /**
+     * Draw something on a black key. Undefined if key_idx isn't black.
+     *
+     * @param dirty the icon is only drawn if it touches this area, or always if <code>null</code>.
+     */
+    void draw_icon_on_black_key(final Canvas canvas, final Drawable icon, int key_idx,
+                                final int icon_width, final int icon_height, final Rect dirty) {
+        Rect r = iconBounds(key_idx, icon_width, icon_height, drawIconBounds);
+        if (dirty != null && !Rect.intersects(r, dirty)) {
+            return;
+        }
 
         icon.setBounds(r);
         icon.setColorFilter(Color.LTGRAY, PorterDuff.Mode.MULTIPLY);
@@ -262,45 +455,192 @@ class PianoCanvas extends SurfaceView implements SurfaceHolder.Callback, PianoLi
     @Override
     public void surfaceCreated(@NonNull SurfaceHolder surfaceHolder) {
         Log.i("PianOli::PianoCanvas", "surfaceCreated");
-        redraw(surfaceHolder);
+        synchronized (frameLock) {
+            surfaceValid = true;
+        }
+        redraw();
     }
 
+    /**
+     * Schedules a redraw of the whole screen. Only needed when everything may have changed; key changes only redraw
+     * what they changed.
+     */
     public void redraw() {
-        redraw(getHolder());
+        synchronized (damageLock) {
+            gearsPressedCount = appConfigTrigger.copyPressedConfigKeys(gearsPressed);
+            gearNext = appConfigTrigger.getNextExpectedKey();
+            gearRevision = appConfigTrigger.getRevision();
+            fullRedraw = true;
+        }
+        renderLoop.requestFrame();
     }
 
-    public void redraw(SurfaceHolder surfaceHolder) {
-        if (surfaceHolder == null) return;
+    /**
+     * Marks the area of key <code>keyIdx</code> as changed, and any gear icons that moved because of it,
+     * and schedules a frame to redraw them.
+     *
+     * <p>
+     * Called on the UI thread, where {@link #appConfigTrigger} lives; the render thread only sees its snapshots.
+     * </p>
+     */
+    private void damageKey(int keyIdx) {
+        Key area = piano.getAreaForKey(keyIdx);
+        // Most key events don't move the gears; only compare them when they might have.
+        int revision = appConfigTrigger.getRevision();
+        boolean gearsMayHaveMoved = revision != gearRevision;
+        int pressedCount = gearsMayHaveMoved ? appConfigTrigger.copyPressedConfigKeys(pressedGearsScratch) : 0;
+        int nextGear = appConfigTrigger.getNextExpectedKey();
+
+        synchronized (damageLock) {
+            damage.union(area.x_i, area.y_i, area.x_f, area.y_f);
+            if (gearsMayHaveMoved && (nextGear != gearNext
+                    || !sameKeys(pressedGearsScratch, pressedCount, gearsPressed, gearsPressedCount))) {
+                // Both where the icons were, and where they are now, need redrawing.
+                damageGears(gearsPressed, gearsPressedCount, gearNext);
+                damageGears(pressedGearsScratch, pressedCount, nextGear);
+                System.arraycopy(pressedGearsScratch, 0, gearsPressed, 0, pressedCount);
+                gearsPressedCount = pressedCount;
+                gearNext = nextGear;
+            }
+            gearRevision = revision;
+            if (LatencyTracer.isEnabled()) {
+                LatencyTracer.get().keyDrawn();
+            }
+        }
+        renderLoop.requestFrame();
+    }
 
-        Canvas canvas = surfaceHolder.lockCanvas();
-        if (canvas == null) return;
+    private void damageGears(int[] pressedGears, int pressedCount, int nextGear) {
+        int pressedSize = (int) (piano.get_keys_flat_width() * CONFIG_ICON_SIZE_TO_FLAT_KEY_RATIO_PRESSED);
+        for (int i = 0; i < pressedCount; i++) {
+            damage.union(iconBounds(pressedGears[i], pressedSize, pressedSize, damageIconBounds));
+        }
+        if (nextGear >= 0) {
+            int normalSize = (int) (piano.get_keys_flat_width() * CONFIG_ICON_SIZE_TO_FLAT_KEY_RATIO);
+            damage.union(iconBounds(nextGear, normalSize, normalSize, damageIconBounds));
+        }
+    }
 
-        resetCanvas(canvas);
+    /**
+     * @return whether the first <code>aCount</code> keys of <code>a</code> are the same as those of <code>b</code>,
+     *          in any order.
+     */
+    private static boolean sameKeys(int[] a, int aCount, int[] b, int bCount) {
+        if (aCount != bCount) {
+            return false;
+        }
+        for (int i = 0; i < aCount; i++) {
+            if (!contains(b, bCount, a[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        // draw main, big keys (even key index)
-        for (int i = 0; i < piano.get_keys_count(); i += 2) {
-            drawKey(canvas, i);
+    private static boolean contains(int[] keys, int count, int key) {
+        for (int i = 0; i < count; i++) {
+            if (keys[i] == key) {
+                return true;
+            }
         }
+        return false;
+    }
 
-        // Small keys drawn after big keys to ensure z-index (odd key index)
-        for (int i = 1; i < piano.get_keys_count(); i += 2) {
-            drawKey(canvas, i);
+    /**
+     * Render thread: draws everything that changed since the last frame, however many key events that were.
+     *
+     * <p>
+     * Usually only the damaged area is locked and redrawn: every key and gear icon touching it, in their usual
+     * z-order. The surface may hand us a bigger area than we asked for (e.g. when it can't copy back the previous
+     * frame); we then redraw whatever it handed us.
+     * </p>
+     */
+    void drawFrame() {
+        final Rect dirty;
+        final int pressedCount;
+        final int nextGear;
+        final long shownInputNanos;
+        synchronized (damageLock) {
+            if (!fullRedraw && damage.isEmpty()) {
+                return;
+            }
+            shownInputNanos = LatencyTracer.isEnabled() ? LatencyTracer.get().beginFrame() : LatencyTracer.NONE;
+            if (fullRedraw) {
+                dirty = null;
+            } else {
+                frameDirty.set(damage);
+                dirty = frameDirty;
+            }
+            System.arraycopy(gearsPressed, 0, framePressedGears, 0, gearsPressedCount);
+            pressedCount = gearsPressedCount;
+            nextGear = gearNext;
+            fullRedraw = false;
+            damage.setEmpty();
+        }
+
+        SurfaceHolder surfaceHolder = getHolder();
+        final boolean posted;
+        PianoLog.beginSection("PianOli::DrawFrame");
+        try {
+            posted = drawDamage(surfaceHolder, dirty, framePressedGears, pressedCount, nextGear);
+        } finally {
+            PianoLog.endSection();
+        }
+        if (!posted) {
+            return;
+        }
+        if (LatencyTracer.isEnabled()) {
+            LatencyTracer.get().frameEnd(shownInputNanos);
         }
+        StartupTimings.get().end(StartupTimings.Phase.FIRST_FRAME);
+    }
+
+    /**
+     * Render thread: locks the surface, draws what changed, and posts the frame.
+     *
+     * @return <code>false</code> if there was no surface to draw on.
+     */
+    private boolean drawDamage(SurfaceHolder surfaceHolder, Rect dirty, int[] pressedGears, int pressedCount,
+                               int nextGear) {
+        synchronized (frameLock) {
+            final long lockStart = System.nanoTime();
+            Canvas canvas = !surfaceValid ? null
+                    : dirty == null ? surfaceHolder.lockCanvas() : surfaceHolder.lockCanvas(dirty);
+            if (canvas == null) {
+                return false; // no surface (anymore); surfaceCreated will draw everything.
+            }
+            final long drawStart = System.nanoTime();
 
-        // Gear icons drawn after small keys, since they go on top of those.
-        drawConfigGears(canvas);
+            resetCanvas(canvas); // only clears the locked area
+            drawKeys(canvas, dirty);
+            // Gear icons drawn after small keys, since they go on top of those.
+            drawConfigGears(canvas, dirty, pressedGears, pressedCount, nextGear);
 
-        surfaceHolder.unlockCanvasAndPost(canvas);
+            final long postStart = System.nanoTime();
+            surfaceHolder.unlockCanvasAndPost(canvas);
+            final long postEnd = System.nanoTime();
+            frameStats.record(drawStart - lockStart, postStart - drawStart, postEnd - postStart);
+        }
+        return true;
     }
 
     @Override
     public void onKeyUp(int keyIdx) {
-        redraw();
+        damageKey(keyIdx);
     }
 
     @Override
     public void onKeyDown(int keyIdx) {
-        redraw();
+        damageKey(keyIdx);
+    }
+
+    /**
+     * We go last, so the damage we mark includes the config handler's new state.
+     * Drawing itself happens later, on the render thread, so it can't delay the sound.
+     */
+    @Override
+    public Priority getPriority() {
+        return Priority.VISUAL;
     }
 
     /**
@@ -309,9 +649,10 @@ class PianoCanvas extends SurfaceView implements SurfaceHolder.Callback, PianoLi
      * Try to reset the state and hope the app survives.
      */
     void resetPianoState() {
-        touch_pointer_to_keys.clear();
+        touchTracker.reset();
         appConfigTrigger.reset();
         piano.resetState();
+        redraw(); // any key may have changed
     }
 
     @Override
@@ -320,69 +661,64 @@ class PianoCanvas extends SurfaceView implements SurfaceHolder.Callback, PianoLi
         // Override this method to make linter happy
     }
 
+    /**
+     * Feeds touches to our {@link TouchTracker}. Allocation-free, as this runs for every touch sample.
+     */
     @Override
     public boolean onTouchEvent(MotionEvent event) {
-        int ptr_id = event.getPointerId(event.getActionIndex());
-        int key_idx = piano.pos_to_key_idx(
-                event.getX(event.getActionIndex()),
-                event.getY(event.getActionIndex()));
+        final int actionIndex = event.getActionIndex();
+        final int ptr_id = event.getPointerId(actionIndex);
 
         switch (event.getActionMasked()) {
             case MotionEvent.ACTION_BUTTON_PRESS:   // fallthrough
                 performClick();
-            case MotionEvent.ACTION_DOWN:           // fallthrough
+            case MotionEvent.ACTION_DOWN:
+                if (unbufferedInput && Build.VERSION.SDK_INT < Build.VERSION_CODES.R) {
+                    // Older androids can only skip batching for the rest of this gesture; newer ones already
+                    // do for all of them, see applyUnbufferedInput().
+                    requestUnbufferedDispatch(event);
+                }
+                // fallthrough
             case MotionEvent.ACTION_POINTER_DOWN: {
-                if (touch_pointer_to_keys.containsKey(ptr_id)) {
+                if (!touchTracker.pointerDown(ptr_id, event.getX(actionIndex), event.getY(actionIndex),
+                        event.getEventTime())) {
                     Log.e("PianOli::DrawingCanvas", "Touch-track error: Repeated touch-down event received");
                     resetPianoState();
                     return super.onTouchEvent(event);
                 }
-
-                // Mark key down ptr_id
-                touch_pointer_to_keys.put(ptr_id, key_idx);
-                piano.doKeyDown(key_idx);
-
                 return true;
             }
             case MotionEvent.ACTION_MOVE: {
                 // action_move is special, there is no *single* `getActionIndex`,
                 // as *multiple* pointers could have moved, so we must check *each* pointer.
                 // https://developer.android.com/develop/ui/views/touch-and-input/gestures/multi
-                for (int size = event.getPointerCount(), i = 0; i < size; i++) {
-                    ptr_id = event.getPointerId(i);  // cf precalculated ptr_id above switch
-                    key_idx = piano.pos_to_key_idx(
-                            event.getX(i),
-                            event.getY(i));
-
-                    if (!touch_pointer_to_keys.containsKey(ptr_id)) {
-                        Log.e("PianOli::DrawingCanvas", "Touch-track error: Missed touch-up event");
-                        resetPianoState();
-                        return super.onTouchEvent(event);
+                // Fast-moving pointers get several samples batched per event: replay the older (historical) ones
+                // first, in time order, so keys swiped across between two events still sound.
+                // https://developer.android.com/reference/android/view/MotionEvent#batching
+                final int pointers = event.getPointerCount();
+                for (int h = 0, history = event.getHistorySize(); h < history; h++) {
+                    for (int i = 0; i < pointers; i++) {
+                        if (!touchTracker.pointerMove(event.getPointerId(i), event.getHistoricalX(i, h),
+                                event.getHistoricalY(i, h), event.getHistoricalEventTime(h))) {
+                            return onMissedTouchUp(event);
+                        }
                     }
-                    // check if key changed
-                    int prevKeyIdx = touch_pointer_to_keys.get(ptr_id);
-                    if (prevKeyIdx != key_idx) {
-                        Log.d("PianOli::DrawingCanvas", "Moved to another key");
-                        // Release key before storing new key_idx for new key down
-                        piano.doKeyUp(prevKeyIdx);
-                        touch_pointer_to_keys.put(ptr_id, key_idx);
-                        piano.doKeyDown(key_idx);
+                }
+                for (int i = 0; i < pointers; i++) {
+                    if (!touchTracker.pointerMove(event.getPointerId(i), event.getX(i), event.getY(i),
+                            event.getEventTime())) {
+                        return onMissedTouchUp(event);
                     }
                 }
-
                 return true;
             }
             case MotionEvent.ACTION_POINTER_UP:     // fallthrough
             case MotionEvent.ACTION_UP: {
-                if (!touch_pointer_to_keys.containsKey(ptr_id)) {
+                if (!touchTracker.pointerUp(ptr_id, event.getEventTime())) {
                     Log.e("PianOli::DrawingCanvas", "Touch-track error: Repeated touch-up event received");
                     resetPianoState();
                     return super.onTouchEvent(event);
                 }
-
-                touch_pointer_to_keys.remove(ptr_id);
-                piano.doKeyUp(key_idx);
-
                 return true;
             }
 
@@ -392,6 +728,12 @@ class PianoCanvas extends SurfaceView implements SurfaceHolder.Callback, PianoLi
     }
 
 
+    private boolean onMissedTouchUp(MotionEvent event) {
+        Log.e("PianOli::DrawingCanvas", "Touch-track error: Missed touch-up event");
+        resetPianoState();
+        return super.onTouchEvent(event);
+    }
+
     @Override
     public void surfaceChanged(@NonNull SurfaceHolder surfaceHolder, int i, int i1, int i2) {
         Log.i("PianOli::PianoCanvas", "surfaceChanged: ignoring!");
@@ -399,6 +741,17 @@ class PianoCanvas extends SurfaceView implements SurfaceHolder.Callback, PianoLi
 
     @Override
     public void surfaceDestroyed(@NonNull SurfaceHolder surfaceHolder) {
-        Log.i("PianOli::PianoCanvas", "surfaceDestroyed: ignoring!");
+        Log.i("PianOli::PianoCanvas", "surfaceDestroyed");
+        // Waits for a frame in progress: the render thread mustn't touch the surface after we return.
+        synchronized (frameLock) {
+            surfaceValid = false;
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        renderLoop.quit();
+        audioDispatcher.quit();
     }
 }
@@ -13,4 +13,43 @@ public interface PianoListener {
      * signals key <code>keyIdx</code> has been released.
      */
     void onKeyUp(int keyIdx);
+
+    /**
+     * The dispatch class of this listener, which determines when it is notified relative to other listeners.
+     *
+     * <p>
+     * Implementations must return a constant: the {@link Piano} queries it again whenever it adds listeners, to keep
+     * them sorted, and a listener whose priority changed would end up out of order.
+     * </p>
+     *
+     * @see Priority
+     */
+    default Priority getPriority() {
+        return Priority.STATE;
+    }
+
+    /**
+     * Dispatch classes for {@link PianoListener}s, in notification order.
+     *
+     * <p>
+     * Every key-event is delivered to <em>all</em> listeners of a class before any listener of the next class sees it.
+     * Within a class, listeners are notified in the order they were added.
+     * </p>
+     */
+    enum Priority {
+        /**
+         * Things that make noise. Notified first, so the touch-to-sound latency never includes the other listeners.
+         */
+        AUDIO,
+
+        /**
+         * Bookkeeping that other listeners (e.g. the renderer) may depend on. This is the default.
+         */
+        STATE,
+
+        /**
+         * Things that draw. Notified last, so they render the state all other listeners have already updated.
+         */
+        VISUAL,
+    }
 }
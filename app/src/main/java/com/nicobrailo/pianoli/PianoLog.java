@@ -0,0 +1,97 @@
+package com.nicobrailo.pianoli;
+
+import android.os.Trace;
+import android.util.Log;
+
+/**
+ * Debug logging and tracing for hot paths, that costs nothing in release builds.
+ *
+ * <p>
+ * <code>Log.d(TAG, "Key " + keyIdx + " is now DOWN")</code> builds its message even when nobody reads it: an allocation
+ * for every key event. Our debug methods take the variable parts as primitive arguments instead, and only build the
+ * message inside, if {@link #DEBUG} is set. Both flags here are compile-time constants, so in release builds the
+ * method bodies compile down to nothing, and a call is just passing a few constants and primitives to an empty
+ * method. Call sites guarded by <code>if (PianoLog.DEBUG)</code> disappear completely.
+ * </p>
+ * <p>
+ * Messages about every single key event are verbose ({@link #v(String, String, int, String)}), and only logged if
+ * {@link #VERBOSE} is set too: there are so many, they flood logcat, and slow down the very dispatch they report on.
+ * </p>
+ * <p>
+ * Errors, and messages from the cold paths (initialisation, settings), can keep using {@link Log} directly.
+ * </p>
+ * <p>
+ * When the <code>TRACING</code> build config field is set (see <code>app/build.gradle</code>), key dispatch,
+ * rendering and note playback are also marked as {@link Trace} sections, so they show up in systrace and Perfetto
+ * captures. Off by default, since sections cost a little even when nobody is capturing.
+ * </p>
+ */
+public final class PianoLog {
+    /** Whether debug messages are logged at all */
+    public static final boolean DEBUG = BuildConfig.DEBUG;
+    /** Whether verbose messages are logged, in debug builds; flip when debugging key dispatch itself */
+    public static final boolean VERBOSE = false;
+    /** Whether {@link #beginSection(String)} emits trace sections */
+    public static final boolean TRACING = BuildConfig.TRACING;
+
+    private PianoLog() {
+        // static facade only
+    }
+
+    /**
+     * Logs a debug message, in debug builds.
+     */
+    public static void d(String tag, String msg) {
+        if (DEBUG) {
+            Log.d(tag, msg);
+        }
+    }
+
+    /**
+     * Logs <code>msg</code> followed by <code>value</code>, in debug builds. The message is only built when logged.
+     */
+    public static void d(String tag, String msg, int value) {
+        if (DEBUG) {
+            Log.d(tag, msg + value);
+        }
+    }
+
+    /**
+     * Logs <code>msg</code> followed by <code>value</code>, then <code>suffix</code>, in debug builds.
+     * The message is only built when logged.
+     */
+    public static void d(String tag, String msg, int value, String suffix) {
+        if (DEBUG) {
+            Log.d(tag, msg + value + suffix);
+        }
+    }
+
+    /**
+     * Logs a verbose message, like {@link #d(String, String, int, String)}, if {@link #VERBOSE} is set in debug builds.
+     */
+    public static void v(String tag, String msg, int value, String suffix) {
+        if (DEBUG && VERBOSE) {
+            Log.v(tag, msg + value + suffix);
+        }
+    }
+
+    /**
+     * Starts a trace section, if tracing is enabled. Must be ended by {@link #endSection()}, on the same thread.
+     *
+     * @param name a constant: building a name per call would defeat the purpose.
+     */
+    public static void beginSection(String name) {
+        if (TRACING) {
+            Trace.beginSection(name);
+        }
+    }
+
+    /**
+     * Ends the innermost trace section started on this thread, if tracing is enabled.
+     */
+    public static void endSection() {
+        if (TRACING) {
+            Trace.endSection();
+        }
+    }
+}
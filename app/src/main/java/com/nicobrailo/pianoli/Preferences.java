@@ -22,6 +22,12 @@ public class Preferences {
     private final static String PREF_ENABLE_MELODIES = "enableMelodies";
     public static final String DEFAULT_THEME = "rainbow";
     private final static String PREF_THEME = "theme";
+    private final static String PREF_KEY_UP_RELEASE = "keyUpRelease";
+    private final static String DEFAULT_KEY_UP_RELEASE = "0";
+    private final static String PREF_LOW_LATENCY_AUDIO = "lowLatencyAudio";
+    private final static String PREF_UNBUFFERED_INPUT = "unbufferedInput";
+    private final static String PREF_RECORD_KEY_JOURNAL = "recordKeyJournal";
+    private final static String PREF_TRACE_LATENCY = "traceLatency";
 
     /**
      * If none are selected, then we play all melodies.
@@ -53,6 +59,54 @@ public class Preferences {
         return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(PREF_ENABLE_MELODIES, false);
     }
 
+    /**
+     * How long (milliseconds) a note fades out after its key is lifted; 0 means notes ring to their natural end.
+     *
+     * @see com.nicobrailo.pianoli.sound.SoundSet#setReleaseMillis(int)
+     */
+    public static int keyUpReleaseMillis(Context context) {
+        final String releaseMillis = PreferenceManager.getDefaultSharedPreferences(context).getString(PREF_KEY_UP_RELEASE, DEFAULT_KEY_UP_RELEASE);
+        try {
+            return Integer.parseInt(releaseMillis);
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Ignoring invalid key-up release \"" + releaseMillis + "\", letting notes ring instead.");
+            return 0;
+        }
+    }
+
+    /**
+     * Whether to decode and mix samples ourselves, for lower latency, rather than leaving that to android's SoundPool.
+     */
+    public static boolean isLowLatencyAudioEnabled(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(PREF_LOW_LATENCY_AUDIO, false);
+    }
+
+    /**
+     * Whether to ask android to deliver touches as soon as they happen, rather than batched once per display frame.
+     */
+    public static boolean isUnbufferedInputEnabled(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(PREF_UNBUFFERED_INPUT, false);
+    }
+
+    /**
+     * Whether to keep a journal of the recent key events, and export it whenever the piano is left, for replaying a
+     * session that went wrong.
+     *
+     * @see KeyEventJournal
+     */
+    public static boolean isKeyJournalEnabled(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(PREF_RECORD_KEY_JOURNAL, false);
+    }
+
+    /**
+     * Whether to measure how long key presses take to be heard and drawn, for logging on request.
+     *
+     * @see LatencyTracer
+     */
+    public static boolean isLatencyTracingEnabled(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(PREF_TRACE_LATENCY, false);
+    }
+
     /**
      * The sound set is the name of the folder in assets/sounds/soundset_[NAME]
      * (note that the soundset_ prefix is stripped from the directory name before being recorded here).
@@ -0,0 +1,75 @@
+package com.nicobrailo.pianoli;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.view.Choreographer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Dedicated render thread, paced by the display's vsync.
+ *
+ * <p>
+ * Any thread may {@link #requestFrame()}; however many requests come in between two vsyncs, the {@link Renderer}
+ * draws a single frame at the next one. Frames are only scheduled on request, so the loop costs nothing while the
+ * screen doesn't change.
+ * </p>
+ */
+class RenderLoop implements Choreographer.FrameCallback {
+    /**
+     * Draws a frame, on the render thread.
+     */
+    interface Renderer {
+        void drawFrame();
+    }
+
+    private final Renderer renderer;
+    private final HandlerThread thread;
+    private final Handler handler;
+
+    /** Whether a frame is scheduled, but not yet started */
+    private final AtomicBoolean frameRequested = new AtomicBoolean();
+    /** The render thread's own choreographer; only touched on the render thread */
+    private Choreographer choreographer;
+
+    private final Runnable scheduleFrame = () -> {
+        if (choreographer == null) {
+            choreographer = Choreographer.getInstance(); // per-thread instance, so must be fetched on our thread.
+        }
+        choreographer.postFrameCallback(this);
+    };
+
+    /**
+     * Starts the render thread right away; it idles until the first {@link #requestFrame()}.
+     */
+    RenderLoop(Renderer renderer) {
+        this.renderer = renderer;
+        thread = new HandlerThread("PianOli::Render", Process.THREAD_PRIORITY_DISPLAY);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Asks for a frame at the next vsync, unless one is already coming. Cheap, and safe to call from any thread.
+     */
+    void requestFrame() {
+        if (frameRequested.compareAndSet(false, true)) {
+            handler.post(scheduleFrame);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        // Cleared before drawing: requests that arrive while we draw need another frame.
+        frameRequested.set(false);
+        renderer.drawFrame();
+    }
+
+    /**
+     * Stops the render thread after the current frame, if any. Later frame requests are ignored.
+     */
+    void quit() {
+        thread.quitSafely();
+    }
+}
@@ -10,6 +10,7 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.preference.ListPreference;
 import androidx.preference.MultiSelectListPreference;
+import androidx.preference.Preference;
 import androidx.preference.PreferenceFragmentCompat;
 
 import com.nicobrailo.pianoli.melodies.Melody;
@@ -31,6 +32,7 @@ public class SettingsFragment extends PreferenceFragmentCompat {
         setPreferencesFromResource(R.xml.root_preferences, rootKey);
         loadSounds();
         loadMelodies();
+        loadLatencyTraceDump();
     }
 
     public void onAttach (@NonNull Context context) {
@@ -80,6 +82,18 @@ public class SettingsFragment extends PreferenceFragmentCompat {
         }
     }
 
+    void loadLatencyTraceDump() {
+        Preference dump = findPreference("dumpLatencyTrace");
+        if (dump != null) {
+            // The piano is paused while we're shown, so this is everything measured since the last dump.
+            dump.setOnPreferenceClickListener(preference -> {
+                LatencyTracer.get().dump();
+                Toast.makeText(requireContext(), R.string.latency_trace_logged, Toast.LENGTH_SHORT).show();
+                return true;
+            });
+        }
+    }
+
     void loadSounds() {
         ListPreference soundsets = findPreference("selectedSoundSet");
         if (soundsets != null) {
@@ -0,0 +1,128 @@
+package com.nicobrailo.pianoli;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Stopwatch for the phases of a cold start, so we can see where startup time goes.
+ *
+ * <p>
+ * Each {@link Phase} is timed at most once per process: only the <em>first</em> {@link #begin(Phase)} /
+ * {@link #end(Phase)} pair counts, later ones (e.g. from re-initialising after the settings screen) are ignored.
+ * Once all phases are done, debug builds log a summary. The individual durations can be read back at any time via
+ * {@link #getDurationMillis(Phase)}.
+ * </p>
+ */
+public class StartupTimings {
+    private static final String TAG = "PianOli::Startup";
+
+    /** Marker value for "this phase has not started/ended yet" */
+    static final long NOT_RECORDED = -1;
+
+    private static final StartupTimings INSTANCE = new StartupTimings();
+
+    /**
+     * The interesting parts of a cold start.
+     */
+    public enum Phase {
+        /** Inflating the main layout, including the construction of {@link PianoCanvas} */
+        VIEW_INFLATE,
+        /** Building the {@link Piano} model, and hooking up its listeners */
+        MODEL_BUILD,
+        /** Loading the samples of the selected soundset */
+        SAMPLE_LOAD,
+        /** From the start of the main activity, until the first frame of keys has been posted */
+        FIRST_FRAME,
+    }
+
+    private final long[] beginNanos = new long[Phase.values().length];
+    private final long[] endNanos = new long[Phase.values().length];
+
+    StartupTimings() {
+        Arrays.fill(beginNanos, NOT_RECORDED);
+        Arrays.fill(endNanos, NOT_RECORDED);
+    }
+
+    /**
+     * @return the process-wide startup stopwatch.
+     */
+    public static StartupTimings get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Marks the start of <code>phase</code>, unless it was already started before.
+     */
+    public synchronized void begin(@NonNull Phase phase) {
+        if (beginNanos[phase.ordinal()] == NOT_RECORDED) {
+            beginNanos[phase.ordinal()] = getNow();
+        }
+    }
+
+    /**
+     * Marks the end of <code>phase</code>, unless it was never started, or already ended before.
+     */
+    public void end(@NonNull Phase phase) {
+        boolean justCompleted;
+        synchronized (this) {
+            final int i = phase.ordinal();
+            if (beginNanos[i] == NOT_RECORDED || endNanos[i] != NOT_RECORDED) {
+                return;
+            }
+            endNanos[i] = getNow();
+            justCompleted = isComplete();
+        }
+
+        if (justCompleted && BuildConfig.DEBUG) {
+            Log.i(TAG, toString());
+        }
+    }
+
+    /**
+     * @return how long <code>phase</code> took, or {@link #NOT_RECORDED} if it hasn't finished (yet).
+     */
+    public synchronized long getDurationMillis(@NonNull Phase phase) {
+        final int i = phase.ordinal();
+        if (endNanos[i] == NOT_RECORDED) {
+            return NOT_RECORDED;
+        }
+        return (endNanos[i] - beginNanos[i]) / 1_000_000;
+    }
+
+    /**
+     * @return <code>true</code> when all phases have been timed.
+     */
+    public synchronized boolean isComplete() {
+        for (long end : endNanos) {
+            if (end == NOT_RECORDED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder("Startup timings:");
+        for (Phase phase : Phase.values()) {
+            long ms = getDurationMillis(phase);
+            sb.append(' ').append(phase.name().toLowerCase(Locale.ROOT)).append('=');
+            sb.append(ms == NOT_RECORDED ? "?" : ms + "ms");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Test seam: override to inject fake time for testing.
+     *
+     * @return current monotonic time in nanoseconds
+     * @see System#nanoTime()
+     */
+    long getNow() {
+        return System.nanoTime();
+    }
+}
@@ -8,12 +8,12 @@ import androidx.core.graphics.ColorUtils;
  * Switchable key-colouring decisions for {@link PianoCanvas}.
  *
  * <p>
- * Whenever {@link PianoCanvas} renders a key, it asks the current <code>Theme</code>-variant for the paint colour.
- * This allows us to switch palettes via preferences.
+ * Whenever {@link PianoCanvas} (re-)renders its {@link KeySpriteCache}, it asks the current <code>Theme</code>-variant
+ * for the paint colours. This allows us to switch palettes via preferences.
  * </p>
  *
  * @see Preferences#selectedTheme(android.content.Context)
- * @see PianoCanvas#drawKey(android.graphics.Canvas, int)
+ * @see KeySpriteCache
  */
 public enum Theme {
     /**
@@ -93,6 +93,30 @@ public enum Theme {
      */
     private final KeyColor[] colors;
 
+    /*
+     * Palette layout. Each palette entry is a (colour slot, pressed-state) pair, holding SHADES colours: the key's fill,
+     * and its three bevels. Entries 0 and 1 are the flats, unpressed and pressed; big keys' colour slots follow.
+     */
+    static final int SHADE_FILL = 0;
+    static final int SHADE_LEFT_BEVEL = 1;
+    static final int SHADE_RIGHT_BEVEL = 2;
+    static final int SHADE_BOTTOM_BEVEL = 3;
+    static final int SHADES = 4;
+    /** Palette entries of flats come first, followed by big keys per colour slot */
+    private static final int FIRST_BIG_KEY_ENTRY = 2;
+
+    /** Hardcoded "black" for flats, for now, but theme-able in the future */
+    private static final int FLAT_NORMAL = 0xFF333333;
+    private static final int FLAT_PRESSED = Color.GRAY;
+
+    /**
+     * All colours we ever render, as {@link #SHADES} shades per palette entry; compiled once, so rendering just
+     * indexes this.
+     *
+     * @see #getPaletteEntry(int, boolean)
+     */
+    private final int[] palette;
+
     public static Theme fromPreference(String selectedTheme) {
         // defensive programming: if we ever mess up our preferences handling, it's better to fall back to default,
         // than to crash the app.
@@ -119,16 +143,70 @@ public enum Theme {
 
     Theme(KeyColor[] colors) {
         this.colors = colors;
+        this.palette = new int[(FIRST_BIG_KEY_ENTRY + 2 * colors.length) * SHADES];
+        compileShades(0, FLAT_NORMAL);
+        compileShades(1, FLAT_PRESSED);
+        for (int slot = 0; slot < colors.length; slot++) {
+            compileShades(FIRST_BIG_KEY_ENTRY + 2 * slot, colors[slot].normal);
+            compileShades(FIRST_BIG_KEY_ENTRY + 2 * slot + 1, colors[slot].pressed);
+        }
     }
 
-    public int getColorForKey(int keyIndex, boolean isPressed) {
+    /**
+     * Fills palette entry <code>entry</code> with all shades of <code>fill</code>.
+     */
+    private void compileShades(int entry, int fill) {
+        int base = entry * SHADES;
+        palette[base + SHADE_FILL] = fill;
+        palette[base + SHADE_LEFT_BEVEL] = ColorUtils.blendARGB(fill, Color.BLACK, 0.3f);
+        palette[base + SHADE_RIGHT_BEVEL] = ColorUtils.blendARGB(fill, Color.WHITE, 0.2f);
+        palette[base + SHADE_BOTTOM_BEVEL] = ColorUtils.blendARGB(fill, Color.BLACK, 0.1f);
+    }
+
+    /**
+     * @return how many different colours big keys cycle through; flats always share one colour.
+     */
+    int getColorCount() {
+        return colors.length;
+    }
+
+    /**
+     * @return amount of palette entries: every key looks like one of them.
+     */
+    int getPaletteSize() {
+        return palette.length / SHADES;
+    }
+
+    /**
+     * @return the palette entry for key <code>keyIndex</code> in the given state; pressed entries are odd.
+     */
+    int getPaletteEntry(int keyIndex, boolean isPressed) {
+        final int pressedOffset = isPressed ? 1 : 0;
         if ((keyIndex & 1) == 1) { // odd index = black/flat/small key
-            return isPressed ? Color.GRAY : 0xFF333333; // hardcoded "black" for now, but theme-able in the future.
+            return pressedOffset;
         }
 
         final int col_idx = (keyIndex / 2) % colors.length; // divide by two to skip 'flat'/black keys at odd positions.
-        final KeyColor color = colors[col_idx];
-        return isPressed ? color.pressed : color.normal;
+        return FIRST_BIG_KEY_ENTRY + 2 * col_idx + pressedOffset;
+    }
+
+    /**
+     * @return whether <code>paletteEntry</code> holds the colours of a flat, rather than of a big key.
+     */
+    static boolean isFlatEntry(int paletteEntry) {
+        return paletteEntry < FIRST_BIG_KEY_ENTRY;
+    }
+
+    /**
+     * @param shade one of {@link #SHADE_FILL}, {@link #SHADE_LEFT_BEVEL}, {@link #SHADE_RIGHT_BEVEL} or
+     *              {@link #SHADE_BOTTOM_BEVEL}.
+     */
+    int getShade(int paletteEntry, int shade) {
+        return palette[paletteEntry * SHADES + shade];
+    }
+
+    public int getColorForKey(int keyIndex, boolean isPressed) {
+        return getShade(getPaletteEntry(keyIndex, isPressed), SHADE_FILL);
     }
 
     /**
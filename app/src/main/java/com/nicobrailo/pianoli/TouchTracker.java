@@ -0,0 +1,163 @@
+package com.nicobrailo.pianoli;
+
+import java.util.Arrays;
+
+/**
+ * Tracks which key each touch pointer is on, and turns pointer movements into key presses and releases.
+ *
+ * <p>
+ * Android numbers the pointers of a gesture with small IDs, so we keep a plain array indexed by pointer ID, instead of
+ * a map that would box every ID and key index. Nothing in here allocates, which matters because we're called for every
+ * touch sample: a few fingers sliding over the keys produce hundreds of <code>ACTION_MOVE</code> events per second.
+ * </p>
+ * <p>
+ * Moves are interpolated: a fast swipe can cover several keys between two touch samples, and each key it crosses
+ * is pressed and released in turn, with an interpolated timestamp, so a glissando sounds every note.
+ * </p>
+ * <p>
+ * Plain Java on purpose, without any android dependencies, so it can be tested on the JVM; {@link PianoCanvas}
+ * unpacks the <code>MotionEvent</code>s (including their historical samples) for us.
+ * </p>
+ */
+class TouchTracker {
+    /** Highest pointer ID we can track; android's <code>MotionEvent</code> never uses higher ones */
+    static final int MAX_POINTER_ID = 31;
+
+    /**
+     * Most positions we check between two samples of a pointer. Bounds the work per sample under extreme input;
+     * swipes longer than this many steps may skip keys.
+     */
+    static final int MAX_INTERPOLATION_STEPS = 32;
+
+    /** Marks untracked pointers; out-of-range key indices are valid for tracked ones, so this can't be -1 */
+    private static final int NOT_TRACKED = Integer.MIN_VALUE;
+
+    private final Piano piano;
+
+    /**
+     * Distance between interpolated positions: less than the narrowest strip of a key a swipe can cross
+     * (a big key's, between two flats), so no key is skipped.
+     */
+    private final float interpolationStep;
+
+    /** Key held by each pointer, or {@link #NOT_TRACKED} */
+    private final int[] pointerKeys = new int[MAX_POINTER_ID + 1];
+    /* Last position and time of each tracked pointer, to interpolate from */
+    private final float[] pointerX = new float[MAX_POINTER_ID + 1];
+    private final float[] pointerY = new float[MAX_POINTER_ID + 1];
+    private final long[] pointerTime = new long[MAX_POINTER_ID + 1];
+
+    TouchTracker(Piano piano) {
+        this.piano = piano;
+        this.interpolationStep = Math.max(1, piano.get_keys_flat_width() / 2f);
+        reset();
+    }
+
+    /**
+     * A new pointer touched the screen: press the key under it.
+     *
+     * @param eventTime when it happened, see {@link Piano#getEventTime()}.
+     * @return <code>false</code> if we're out of sync (this pointer was already down); nothing was pressed.
+     */
+    boolean pointerDown(int pointerId, float x, float y, long eventTime) {
+        if (!isValid(pointerId) || pointerKeys[pointerId] != NOT_TRACKED) {
+            return false;
+        }
+
+        int keyIdx = piano.pos_to_key_idx(x, y);
+        pointerKeys[pointerId] = keyIdx;
+        remember(pointerId, x, y, eventTime);
+        piano.doKeyDown(keyIdx, eventTime);
+        return true;
+    }
+
+    /**
+     * A pointer moved: for every key it slid across on its way, in order, release the old key and press the next one.
+     *
+     * <p>
+     * Feed historical samples through here too, oldest first, for the best interpolation.
+     * </p>
+     *
+     * @return <code>false</code> if we're out of sync (this pointer wasn't down); nothing was pressed or released.
+     */
+    boolean pointerMove(int pointerId, float x, float y, long eventTime) {
+        if (!isTracked(pointerId)) {
+            return false;
+        }
+
+        final float fromX = pointerX[pointerId];
+        final float fromY = pointerY[pointerId];
+        final long fromTime = pointerTime[pointerId];
+        final float dx = x - fromX;
+        final float dy = y - fromY;
+        final int steps = (int) Math.min(MAX_INTERPOLATION_STEPS,
+                Math.ceil(Math.max(Math.abs(dx), Math.abs(dy)) / interpolationStep));
+        for (int step = 1; step < steps; step++) {
+            float fraction = (float) step / steps;
+            slideTo(pointerId, fromX + dx * fraction, fromY + dy * fraction,
+                    fromTime + (long) ((eventTime - fromTime) * fraction));
+        }
+        slideTo(pointerId, x, y, eventTime);
+
+        remember(pointerId, x, y, eventTime);
+        return true;
+    }
+
+    /**
+     * If the pointer is on another key now, release the old one and press the new one.
+     */
+    private void slideTo(int pointerId, float x, float y, long eventTime) {
+        int keyIdx = piano.pos_to_key_idx(x, y);
+        int prevKeyIdx = pointerKeys[pointerId];
+        if (prevKeyIdx != keyIdx) {
+            // Release key before storing new key_idx for new key down
+            piano.doKeyUp(prevKeyIdx, eventTime);
+            pointerKeys[pointerId] = keyIdx;
+            piano.doKeyDown(keyIdx, eventTime);
+        }
+    }
+
+    /**
+     * A pointer left the screen: release the key it held.
+     *
+     * @return <code>false</code> if we're out of sync (this pointer wasn't down); nothing was released.
+     */
+    boolean pointerUp(int pointerId, long eventTime) {
+        if (!isTracked(pointerId)) {
+            return false;
+        }
+
+        int keyIdx = pointerKeys[pointerId];
+        pointerKeys[pointerId] = NOT_TRACKED;
+        piano.doKeyUp(keyIdx, eventTime);
+        return true;
+    }
+
+    private void remember(int pointerId, float x, float y, long eventTime) {
+        pointerX[pointerId] = x;
+        pointerY[pointerId] = y;
+        pointerTime[pointerId] = eventTime;
+    }
+
+    /**
+     * @return the key held by <code>pointerId</code>, or <code>-1</code> if it isn't down.
+     */
+    int getKeyForPointer(int pointerId) {
+        return isTracked(pointerId) ? pointerKeys[pointerId] : -1;
+    }
+
+    /**
+     * Forgets all pointers, without releasing their keys: for when we lost track, and reset the piano anyway.
+     */
+    void reset() {
+        Arrays.fill(pointerKeys, NOT_TRACKED);
+    }
+
+    private boolean isTracked(int pointerId) {
+        return isValid(pointerId) && pointerKeys[pointerId] != NOT_TRACKED;
+    }
+
+    private static boolean isValid(int pointerId) {
+        return pointerId >= 0 && pointerId <= MAX_POINTER_ID;
+    }
+}
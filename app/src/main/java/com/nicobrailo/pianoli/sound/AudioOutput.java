@@ -0,0 +1,143 @@
+package com.nicobrailo.pianoli.sound;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Plays a {@link PcmSource} through a streaming {@link AudioTrack}, from a dedicated high-priority thread.
+ *
+ * <p>
+ * Tuned for latency: the track runs at the device's native sample rate, so android doesn't need to resample, and we
+ * write in blocks of the device's native buffer size. On API 26+, we also ask for the low-latency (fast) mixer path.
+ * </p>
+ * <p>
+ * The thread sleeps whenever the source is idle, so silence costs no CPU.
+ * </p>
+ */
+class AudioOutput {
+    private static final String TAG = "PianOli::AudioOutput";
+
+    /** Fallback for devices that don't report their native buffer size */
+    private static final int DEFAULT_FRAMES_PER_BUFFER = 256;
+
+    private final PcmSource source;
+    private final AudioTrack track;
+    private final int framesPerWrite;
+    private final Thread thread;
+    private volatile boolean closed;
+
+    /**
+     * Starts the output thread right away.
+     *
+     * @param sampleRate rate that <code>source</code> renders at; ideally {@link #nativeSampleRate(Context)}.
+     */
+    AudioOutput(Context context, int sampleRate, PcmSource source, String threadName) {
+        this.source = source;
+        framesPerWrite = nativeFramesPerBuffer(context);
+        int minBufferBytes = AudioTrack.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_OUT_MONO,
+                AudioFormat.ENCODING_PCM_16BIT);
+        // Double-buffering: room for one block playing, while we render the next.
+        int bufferBytes = Math.max(minBufferBytes, 2 * framesPerWrite * 2);
+
+        AudioAttributes attributes = new AudioAttributes.Builder()
+                .setUsage(AudioAttributes.USAGE_GAME)
+                .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                .build();
+        AudioFormat format = new AudioFormat.Builder()
+                .setSampleRate(sampleRate)
+                .setChannelMask(AudioFormat.CHANNEL_OUT_MONO)
+                .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                .build();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            track = new AudioTrack.Builder()
+                    .setAudioAttributes(attributes)
+                    .setAudioFormat(format)
+                    .setBufferSizeInBytes(bufferBytes)
+                    .setTransferMode(AudioTrack.MODE_STREAM)
+                    .setPerformanceMode(AudioTrack.PERFORMANCE_MODE_LOW_LATENCY)
+                    .build();
+        } else {
+            track = new AudioTrack(attributes, format, bufferBytes, AudioTrack.MODE_STREAM,
+                    AudioManager.AUDIO_SESSION_ID_GENERATE);
+        }
+
+        thread = new Thread(this::renderLoop, threadName);
+        thread.setDaemon(true);
+        thread.start();
+        Log.d(TAG, threadName + ": " + sampleRate + "Hz, " + framesPerWrite + " frames per write, "
+                + bufferBytes + " bytes buffered");
+    }
+
+    /**
+     * @return the sample rate the device mixes at, so our output needs no resampling.
+     */
+    static int nativeSampleRate(Context context) {
+        AudioManager audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+        int sampleRate = parsePositive(audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE));
+        return sampleRate > 0 ? sampleRate : AudioTrack.getNativeOutputSampleRate(AudioManager.STREAM_MUSIC);
+    }
+
+    /**
+     * @return the buffer size (frames) the device mixes in, which is the smallest block size worth writing.
+     */
+    static int nativeFramesPerBuffer(Context context) {
+        AudioManager audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+        int frames = parsePositive(audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_FRAMES_PER_BUFFER));
+        return frames > 0 ? frames : DEFAULT_FRAMES_PER_BUFFER;
+    }
+
+    /**
+     * @return the number, or 0 if it isn't a positive number.
+     */
+    private static int parsePositive(String value) {
+        try {
+            return value == null ? 0 : Math.max(0, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Output thread: renders the source into the track while anything sounds, and sleeps while nothing does.
+     */
+    private void renderLoop() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        final short[] buffer = new short[framesPerWrite];
+        try {
+            while (!closed) {
+                if (source.isIdle()) {
+                    track.stop(); // in streaming mode, this still plays out what was written so far.
+                    source.awaitActive();
+                    track.play();
+                }
+                source.render(buffer, buffer.length);
+                track.write(buffer, 0, buffer.length);
+            }
+        } catch (InterruptedException e) {
+            // close() wants us to stop.
+        } finally {
+            track.release();
+        }
+    }
+
+    /**
+     * @return memory held by our own buffer; the track's buffer lives in the audio server.
+     */
+    long getBufferBytes() {
+        return framesPerWrite * 2L;
+    }
+
+    /**
+     * Stops the output thread, which releases the track itself, so we don't pull it from under a write.
+     */
+    void close() {
+        closed = true;
+        thread.interrupt();
+    }
+}
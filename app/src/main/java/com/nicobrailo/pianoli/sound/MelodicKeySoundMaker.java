@@ -4,6 +4,7 @@ package com.nicobrailo.pianoli.sound;
 import com.nicobrailo.pianoli.PianoListener;
 import com.nicobrailo.pianoli.melodies.MelodyPlayer;
 
+import java.util.Arrays;
 import java.util.Objects;
 
 /**
@@ -12,15 +13,27 @@ import java.util.Objects;
  * @see MelodyPlayer
  */
 public class MelodicKeySoundMaker implements PianoListener {
+    /**
+     * How many held keys we remember the melody note of; one per finger is plenty.
+     * Beyond that, notes simply ring to their natural end.
+     */
+    static final int MAX_HELD_KEYS = 10;
+    private static final int NONE = -1;
+
     private final SoundSet soundSet;
     private final MelodyPlayer melody;
 
+    /** Held keys, and the note each one played, so we can release it on key-up; {@link #NONE} for unused slots */
+    private final int[] heldKeys = new int[MAX_HELD_KEYS];
+    private final int[] heldNotes = new int[MAX_HELD_KEYS];
+
     public MelodicKeySoundMaker(SoundSet soundSet, MelodyPlayer melodyPlayer) {
         Objects.requireNonNull(soundSet, "Need a soundset to play notes from, otherwise I have no reason to exist");
         Objects.requireNonNull(melodyPlayer, "Need melody player to play, otherwise I have no reason to exist");
 
         this.soundSet = soundSet;
         this.melody = melodyPlayer;
+        Arrays.fill(heldKeys, NONE);
     }
 
     @Override
@@ -29,12 +42,54 @@ public class MelodicKeySoundMaker implements PianoListener {
             melody.reset();
         }
 
-        soundSet.playNote(melody.nextNote());
+        int note = melody.nextNote();
+        soundSet.playNote(note);
+        if (keyIdx < 0) {
+            return; // not a real key, nothing to remember.
+        }
+
+        int slot = findHeld(keyIdx);
+        if (slot == NONE) {
+            slot = findHeld(NONE);
+        }
+        if (slot != NONE) {
+            heldKeys[slot] = keyIdx;
+            heldNotes[slot] = note;
+        }
     }
 
+    /**
+     * Releases the melody note that was played when this key went down; which is typically not the key's own note.
+     */
     @Override
     public void onKeyUp(int keyIdx) {
-        // Nothing to do.
-        // We don't stop already-running samples from playing, since they're short anyway.
+        int slot = keyIdx < 0 ? NONE : findHeld(keyIdx);
+        if (slot == NONE) {
+            return;
+        }
+
+        // Soundset decides whether to fade out, or let the note ring, see SoundSet#setReleaseMillis.
+        soundSet.releaseNote(heldNotes[slot]);
+        heldKeys[slot] = NONE;
+    }
+
+    /**
+     * @return slot in {@link #heldKeys} that holds <code>keyIdx</code>, or {@link #NONE}.
+     */
+    private int findHeld(int keyIdx) {
+        for (int slot = 0; slot < heldKeys.length; slot++) {
+            if (heldKeys[slot] == keyIdx) {
+                return slot;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Sound makers go first, so a key-press is never kept waiting for a redraw before it is heard.
+     */
+    @Override
+    public Priority getPriority() {
+        return Priority.AUDIO;
     }
 }
@@ -0,0 +1,100 @@
+package com.nicobrailo.pianoli.sound;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.content.res.Resources;
+import com.nicobrailo.pianoli.R;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * {@link SamplePool} that decodes samples to PCM itself, and mixes them with our own {@link PcmMixer}.
+ *
+ * <p>
+ * Alternative to {@link SoundPoolSamplePool}, for lower latency: playback goes straight into a low-latency
+ * {@link AudioOutput}, rather than through SoundPool's own, larger buffers.
+ * </p>
+ */
+class MixerSamplePool implements SamplePool {
+    private final AssetManager assets;
+    private final Resources resources;
+    private final PcmDiskCache diskCache;
+    private final PcmMixer mixer;
+    private final AudioOutput output;
+    private OnLoadedListener listener;
+
+    /** Total size of all loaded sample files; written from the loader thread. */
+    private volatile long loadedFileBytes;
+
+    MixerSamplePool(Context context, int maxVoices, PcmDiskCache diskCache) {
+        assets = context.getAssets();
+        resources = context.getResources();
+        this.diskCache = diskCache;
+
+        int sampleRate = AudioOutput.nativeSampleRate(context);
+        mixer = new PcmMixer(sampleRate, maxVoices);
+        output = new AudioOutput(context, sampleRate, mixer, "PianOli-Mixer");
+    }
+
+    @Override
+    public void setOnLoadedListener(OnLoadedListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public int loadNote(String soundSetName, int noteNum) throws IOException {
+        try (AssetFileDescriptor afd = assets.openFd(SamplePool.noteAssetPath(soundSetName, noteNum))) {
+            return load(afd, diskCache.noteFile(soundSetName, noteNum));
+        }
+    }
+
+    @Override
+    public int loadNoNote() throws IOException {
+        try (AssetFileDescriptor afd = resources.openRawResourceFd(R.raw.no_note)) {
+            return load(afd, diskCache.noNoteFile());
+        }
+    }
+
+    /**
+     * Decodes synchronously (or reads the result of an earlier decode from <code>cached</code>),
+     * so the sample is ready (and reported as such) before we return. The mixer is mono, so stereo samples are
+     * mixed down here; the cache keeps them stereo for SoundPool.
+     */
+    private int load(AssetFileDescriptor afd, File cached) throws IOException {
+        loadedFileBytes += afd.getLength();
+        PcmSample sample = diskCache.getOrDecode(cached, () -> PcmDecoder.decode(afd)).toMono();
+        int sampleId = mixer.addSample(sample.pcm, sample.sampleRate);
+        if (listener != null) {
+            listener.onLoaded(sampleId, true);
+        }
+        return sampleId;
+    }
+
+    @Override
+    public int play(int sampleId, float rate) {
+        return mixer.play(sampleId, rate);
+    }
+
+    @Override
+    public void stop(int streamId) {
+        mixer.stop(streamId);
+    }
+
+    @Override
+    public void setVolume(int streamId, float volume) {
+        mixer.setVolume(streamId, volume);
+    }
+
+    @Override
+    public long getLoadedFileBytes() {
+        return loadedFileBytes;
+    }
+
+    @Override
+    public void release() {
+        output.close();
+        mixer.clear();
+    }
+}
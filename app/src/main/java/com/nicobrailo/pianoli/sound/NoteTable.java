@@ -0,0 +1,118 @@
+package com.nicobrailo.pianoli.sound;
+
+import com.nicobrailo.pianoli.Piano;
+
+/**
+ * Precomputed mapping of {@link Piano} key indices to a sample, and the playback rate that makes it sound right.
+ *
+ * <p>
+ * Keys that have their own sample simply play it at rate 1. Every other key borrows the sample with the nearest pitch,
+ * played faster or slower to shift it by the missing semitones (one semitone is a rate of <code>2^(1/12)</code>).
+ * This lets a soundset cover far more keys than it has samples, e.g. on wide tablet screens.
+ * </p>
+ * <p>
+ * Android's SoundPool only supports rates from {@link #MIN_RATE} to {@link #MAX_RATE}, i.e. one octave each way.
+ * Keys even further away from any sample are folded back by whole octaves: they play the right note, in the wrong
+ * octave. For a toddler, that beats silence.
+ * </p>
+ * <p>
+ * Everything is calculated up front, so looking up a key on the hot path is a plain array access.
+ * </p>
+ */
+class NoteTable {
+    /**
+     * Amount of keys covered. Far more than fit on any screen at {@link Piano}'s key widths.
+     */
+    static final int SIZE = 128;
+
+    /** Key indices per octave; including the non-existing flats, see {@link Piano} */
+    static final int KEYS_PER_OCTAVE = 14;
+
+    static final float MIN_RATE = 0.5f;
+    static final float MAX_RATE = 2f;
+
+    /** Marker for keys without a note */
+    static final int NO_NOTE = -1;
+
+    private static final int SEMITONES_PER_OCTAVE = 12;
+
+    /** Semitone (relative to the octave's first key) per key index in an octave; {@link #NO_NOTE} for missing flats */
+    private static final int[] OCTAVE_SEMITONES = {0, 1, 2, 3, 4, NO_NOTE, 5, 6, 7, 8, 9, 10, 11, NO_NOTE};
+
+    /** sample slot per key index */
+    private final int[] slots;
+    /** playback rate per key index */
+    private final float[] rates;
+
+    /**
+     * @param size        amount of keys to cover.
+     * @param sampledKeys key indices that have a sample of their own, which become the sample slots.
+     * @param noNoteSlot  slot of the sample for keys that have no note, i.e. the missing flats.
+     */
+    NoteTable(int size, int[] sampledKeys, int noNoteSlot) {
+        if (sampledKeys.length == 0) {
+            throw new IllegalArgumentException("Need at least one sample to cover any keys");
+        }
+
+        slots = new int[size];
+        rates = new float[size];
+        for (int keyIdx = 0; keyIdx < size; keyIdx++) {
+            int semitone = semitoneOf(keyIdx);
+            if (semitone == NO_NOTE) {
+                slots[keyIdx] = noNoteSlot;
+                rates[keyIdx] = 1f;
+                continue;
+            }
+
+            int nearest = sampledKeys[0];
+            for (int sampled : sampledKeys) {
+                int distance = Math.abs(semitone - semitoneOf(sampled));
+                int bestDistance = Math.abs(semitone - semitoneOf(nearest));
+                // On a tie, prefer pitching a higher sample down: that sounds more natural than speeding one up.
+                if (distance < bestDistance || (distance == bestDistance && sampled > nearest)) {
+                    nearest = sampled;
+                }
+            }
+
+            int shift = semitone - semitoneOf(nearest);
+            while (shift > SEMITONES_PER_OCTAVE) {
+                shift -= SEMITONES_PER_OCTAVE;
+            }
+            while (shift < -SEMITONES_PER_OCTAVE) {
+                shift += SEMITONES_PER_OCTAVE;
+            }
+
+            slots[keyIdx] = nearest;
+            rates[keyIdx] = (float) Math.pow(2, shift / (double) SEMITONES_PER_OCTAVE);
+        }
+    }
+
+    /**
+     * @return semitones above key 0, or {@link #NO_NOTE} for the keys that don't exist (no flat between E-F and B-C)
+     */
+    static int semitoneOf(int keyIdx) {
+        int inOctave = OCTAVE_SEMITONES[keyIdx % KEYS_PER_OCTAVE];
+        if (inOctave == NO_NOTE) {
+            return NO_NOTE;
+        }
+        return (keyIdx / KEYS_PER_OCTAVE) * SEMITONES_PER_OCTAVE + inOctave;
+    }
+
+    int size() {
+        return slots.length;
+    }
+
+    /**
+     * @return the sample slot to play for <code>keyIdx</code>; range-checking is up to the caller.
+     */
+    int getSlot(int keyIdx) {
+        return slots[keyIdx];
+    }
+
+    /**
+     * @return the playback rate for <code>keyIdx</code>, between {@link #MIN_RATE} and {@link #MAX_RATE}.
+     */
+    float getRate(int keyIdx) {
+        return rates[keyIdx];
+    }
+}
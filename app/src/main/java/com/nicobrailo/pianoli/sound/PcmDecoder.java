@@ -0,0 +1,110 @@
+package com.nicobrailo.pianoli.sound;
+
+import android.content.res.AssetFileDescriptor;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Decodes compressed audio files (our mp3 samples) to {@link PcmSample}s, with android's own codecs.
+ */
+final class PcmDecoder {
+    /** How long (microseconds) to wait for codec buffers, before checking the other side again */
+    private static final long TIMEOUT_US = 10_000;
+
+    private PcmDecoder() {
+        // static helpers only
+    }
+
+    /**
+     * Decodes the first audio track of a file, completely. Blocks until done, so don't call on the UI thread.
+     */
+    static PcmSample decode(AssetFileDescriptor afd) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            extractor.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+            MediaFormat format = selectAudioTrack(extractor);
+            int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            int channels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            short[] decoded = new short[sampleRate * channels]; // a second, grown as needed
+            int length = 0;
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            boolean inputDone = false;
+            boolean outputDone = false;
+            while (!outputDone) {
+                if (!inputDone) {
+                    int in = codec.dequeueInputBuffer(TIMEOUT_US);
+                    if (in >= 0) {
+                        int size = extractor.readSampleData(codec.getInputBuffer(in), 0);
+                        if (size < 0) {
+                            codec.queueInputBuffer(in, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            codec.queueInputBuffer(in, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+
+                int out = codec.dequeueOutputBuffer(info, TIMEOUT_US);
+                if (out >= 0) {
+                    ByteBuffer bytes = codec.getOutputBuffer(out);
+                    bytes.position(info.offset);
+                    bytes.limit(info.offset + info.size);
+                    ShortBuffer shorts = bytes.order(ByteOrder.nativeOrder()).asShortBuffer();
+                    if (length + shorts.remaining() > decoded.length) {
+                        decoded = Arrays.copyOf(decoded, Math.max(decoded.length * 2, length + shorts.remaining()));
+                    }
+                    int count = shorts.remaining();
+                    shorts.get(decoded, length, count);
+                    length += count;
+                    codec.releaseOutputBuffer(out, false);
+                    outputDone = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+                } else if (out == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    MediaFormat outputFormat = codec.getOutputFormat();
+                    sampleRate = outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                    channels = outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                }
+            }
+
+            return PcmSample.fromInterleaved(decoded, length, channels, sampleRate);
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            // MediaCodec reports broken or unsupported files as runtime exceptions.
+            throw new IOException("Can't decode sample", e);
+        } finally {
+            if (codec != null) {
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+
+    /**
+     * Selects the first audio track for extraction.
+     *
+     * @return its format.
+     */
+    private static MediaFormat selectAudioTrack(MediaExtractor extractor) throws IOException {
+        for (int track = 0; track < extractor.getTrackCount(); track++) {
+            MediaFormat format = extractor.getTrackFormat(track);
+            String mime = format.getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith("audio/")) {
+                extractor.selectTrack(track);
+                return format;
+            }
+        }
+        throw new IOException("No audio track found");
+    }
+}
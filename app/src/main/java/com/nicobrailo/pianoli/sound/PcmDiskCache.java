@@ -0,0 +1,309 @@
+package com.nicobrailo.pianoli.sound;
+
+import android.content.Context;
+import android.util.Log;
+import com.nicobrailo.pianoli.BuildConfig;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+/**
+ * On-disk cache of decoded samples, so each mp3 only has to go through the codec once per app version.
+ *
+ * <p>
+ * Samples are stored as plain 16-bit WAV files, with as many channels as the mp3 had, which both SoundPool (by path)
+ * and our own mixer (memory-mapped, then mixed down to mono) can load without any real decoding. Files live in a
+ * directory per app version, <code>cacheDir/pcm-v&lt;versionCode&gt;/&lt;soundset&gt;/nXX.wav</code>, so an update
+ * that changes the samples can never play stale ones. Directories of other versions are deleted, see
+ * {@link #deleteStaleVersions()}.
+ * </p>
+ * <p>
+ * Android may clear the cache directory at any time; a missing or damaged file is simply decoded again.
+ * Not thread-safe; intended to be used from the (single) sample-loader thread.
+ * </p>
+ */
+class PcmDiskCache {
+    private static final String TAG = "PianOli::PcmDiskCache";
+
+    /** Prefix of the versioned cache directories */
+    static final String DIR_PREFIX = "pcm-v";
+
+    /** Size of the canonical WAV header we write */
+    static final int WAV_HEADER_BYTES = 44;
+    /** Offset of the channel count in the header */
+    private static final int CHANNELS_OFFSET = 22;
+    /** Offset of the sample data's length in the header */
+    private static final int DATA_SIZE_OFFSET = 40;
+    /** Most channels we write, or read; our samples are mono or stereo */
+    static final int MAX_CHANNELS = 2;
+
+    /** Shared by all soundsets, see {@link #forContext(Context)} */
+    private static PcmDiskCache shared;
+
+    /**
+     * Produces a sample, on a cache miss.
+     */
+    interface Decoder {
+        PcmSample decode() throws IOException;
+    }
+
+    private final File root;
+    private final File dir;
+
+    /** Stale versions only need deleting once, on first use */
+    private boolean staleDeleted;
+    private int hits;
+    private int misses;
+
+    /**
+     * @param root    directory to keep the versioned cache directories in.
+     * @param version cached files are only valid for this version.
+     */
+    PcmDiskCache(File root, int version) {
+        this.root = root;
+        this.dir = new File(root, DIR_PREFIX + version);
+    }
+
+    /**
+     * @return the cache for the app's own cache directory, and version.
+     */
+    static synchronized PcmDiskCache forContext(Context context) {
+        if (shared == null) {
+            shared = new PcmDiskCache(context.getCacheDir(), BuildConfig.VERSION_CODE);
+        }
+        return shared;
+    }
+
+    /**
+     * @param noteNum 1-based note number, as in the sample file names.
+     */
+    File noteFile(String soundSetName, int noteNum) {
+        // root locale OK for number-formatting.
+        return new File(new File(dir, SoundSet.addPrefix(soundSetName)), String.format(Locale.ROOT, "n%02d.wav", noteNum));
+    }
+
+    /**
+     * @return file for the sample of keys without a note, which is shared by all soundsets.
+     */
+    File noNoteFile() {
+        return new File(dir, "no_note.wav");
+    }
+
+    /**
+     * Reads a sample from the cache, or decodes (and caches) it if that fails.
+     */
+    PcmSample getOrDecode(File file, Decoder decoder) throws IOException {
+        deleteStaleVersionsOnce();
+        PcmSample cached = read(file);
+        if (cached != null) {
+            hits++;
+            return cached;
+        }
+
+        misses++;
+        PcmSample decoded = decoder.decode();
+        try {
+            write(file, decoded);
+        } catch (IOException e) {
+            // Not being able to cache is no reason not to play.
+            Log.w(TAG, "Can't cache " + file + ": " + e.getMessage());
+        }
+        return decoded;
+    }
+
+    /**
+     * Makes sure <code>file</code> holds a valid sample, decoding it if it doesn't. For loaders that read the file
+     * themselves, like SoundPool.
+     *
+     * @return <code>file</code>, for chaining.
+     */
+    File ensureCached(File file, Decoder decoder) throws IOException {
+        deleteStaleVersionsOnce();
+        if (hasValidHeader(file)) {
+            hits++;
+        } else {
+            misses++;
+            write(file, decoder.decode());
+        }
+        return file;
+    }
+
+    /**
+     * @return the sample in <code>file</code>, or <code>null</code> if it's missing or damaged (in which case it's
+     * deleted).
+     */
+    PcmSample read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (FileInputStream in = new FileInputStream(file)) {
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            int sampleRate = parseHeader(mapped, channel.size());
+            if (sampleRate <= 0) {
+                throw new IOException("not one of our WAV files");
+            }
+
+            mapped.position(WAV_HEADER_BYTES);
+            mapped.limit(WAV_HEADER_BYTES + mapped.getInt(DATA_SIZE_OFFSET));
+            short[] pcm = new short[mapped.remaining() / 2];
+            mapped.asShortBuffer().get(pcm);
+            return new PcmSample(pcm, mapped.getShort(CHANNELS_OFFSET), sampleRate);
+        } catch (IOException e) {
+            Log.w(TAG, "Dropping damaged cache file " + file + ": " + e.getMessage());
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if <code>file</code> exists, and has a header we can play. Doesn't read the samples.
+     */
+    private static boolean hasValidHeader(File file) {
+        if (!file.isFile() || file.length() < WAV_HEADER_BYTES) {
+            return false;
+        }
+        byte[] header = new byte[WAV_HEADER_BYTES];
+        try (FileInputStream in = new FileInputStream(file)) {
+            if (in.read(header) != WAV_HEADER_BYTES) {
+                return false;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        return parseHeader(ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN), file.length()) > 0;
+    }
+
+    /**
+     * Writes a sample, atomically: a crash half-way never leaves a damaged file behind under the final name.
+     */
+    void write(File file, PcmSample sample) throws IOException {
+        if (sample.channels > MAX_CHANNELS) {
+            throw new IOException("Can't cache " + sample.channels + " channels");
+        }
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Can't create " + parent);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(WAV_HEADER_BYTES + sample.pcm.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        writeHeader(buffer, sample);
+        buffer.asShortBuffer().put(sample.pcm);
+        buffer.rewind();
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            FileChannel channel = out.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        if (!temp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw new IOException("Can't rename " + temp + " to " + file);
+        }
+    }
+
+    /**
+     * Writes a canonical 44-byte header for 16-bit PCM, leaving the buffer positioned at the sample data.
+     */
+    private static void writeHeader(ByteBuffer buffer, PcmSample sample) {
+        int dataBytes = sample.pcm.length * 2;
+        int frameBytes = sample.channels * 2;
+        buffer.put(new byte[]{'R', 'I', 'F', 'F'}).putInt(36 + dataBytes).put(new byte[]{'W', 'A', 'V', 'E'});
+        buffer.put(new byte[]{'f', 'm', 't', ' '}).putInt(16)
+                .putShort((short) 1)                  // PCM
+                .putShort((short) sample.channels)
+                .putInt(sample.sampleRate)
+                .putInt(sample.sampleRate * frameBytes) // byte rate
+                .putShort((short) frameBytes)         // bytes per frame
+                .putShort((short) 16);                // bits per sample
+        buffer.put(new byte[]{'d', 'a', 't', 'a'}).putInt(dataBytes);
+    }
+
+    /**
+     * Checks for exactly the header {@link #writeHeader} writes; we never read anyone else's files.
+     *
+     * @param fileLength to check that all announced sample data is actually there.
+     * @return the sample rate, or -1 if invalid.
+     */
+    private static int parseHeader(ByteBuffer header, long fileLength) {
+        if (header.limit() < WAV_HEADER_BYTES
+                || header.getInt(0) != tag("RIFF") || header.getInt(8) != tag("WAVE")
+                || header.getInt(12) != tag("fmt ") || header.getInt(16) != 16
+                || header.getShort(20) != 1 || header.getShort(34) != 16
+                || header.getInt(36) != tag("data")) {
+            return -1;
+        }
+
+        int channels = header.getShort(CHANNELS_OFFSET);
+        if (channels < 1 || channels > MAX_CHANNELS || header.getShort(32) != channels * 2) {
+            return -1;
+        }
+        int dataBytes = header.getInt(DATA_SIZE_OFFSET);
+        if (dataBytes < 0 || dataBytes % (channels * 2) != 0 || WAV_HEADER_BYTES + (long) dataBytes > fileLength) {
+            return -1; // truncated
+        }
+        return header.getInt(24);
+    }
+
+    /**
+     * @return a four-character chunk tag, as read by a little-endian {@link ByteBuffer#getInt(int)}
+     */
+    private static int tag(String fourCc) {
+        return fourCc.charAt(0) | fourCc.charAt(1) << 8 | fourCc.charAt(2) << 16 | fourCc.charAt(3) << 24;
+    }
+
+    private void deleteStaleVersionsOnce() {
+        if (!staleDeleted) {
+            staleDeleted = true;
+            deleteStaleVersions();
+        }
+    }
+
+    /**
+     * Deletes cache directories of other app versions.
+     */
+    void deleteStaleVersions() {
+        File[] versions = root.listFiles();
+        if (versions == null) {
+            return;
+        }
+        for (File version : versions) {
+            if (version.getName().startsWith(DIR_PREFIX) && !version.equals(dir)) {
+                Log.i(TAG, "Deleting stale sample cache " + version.getName());
+                deleteRecursively(version);
+            }
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    int getHits() {
+        return hits;
+    }
+
+    int getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,230 @@
+package com.nicobrailo.pianoli.sound;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sample mixer: plays decoded samples, at any rate and volume, mixed into one mono 16-bit stream.
+ *
+ * <p>
+ * Does for {@link MixerSamplePool} what SoundPool does for {@link SoundPoolSamplePool}, but under our own control:
+ * the voice count is fixed up front, and we decide the output buffer size. Samples are played back with linear
+ * interpolation at a fractional step, which converts their sample rate to the output's, and shifts their pitch
+ * (see {@link NoteTable}) in one go.
+ * </p>
+ * <p>
+ * Plain Java on purpose, so it can be tested and benchmarked on the JVM.
+ * {@link #render(short[], int)} doesn't allocate, so it is safe to call from an audio thread.
+ * Everything else may be called from any thread.
+ * </p>
+ */
+class PcmMixer implements PcmSource {
+    /** Fractional bits of the fixed-point playback positions and steps */
+    private static final int FRACTION_BITS = 16;
+    private static final int FRACTION_MASK = (1 << FRACTION_BITS) - 1;
+    private static final long ONE = 1L << FRACTION_BITS;
+    /**
+     * Precision of interpolation weights and gains: 15 bits, so that multiplying them with (differences of)
+     * 16-bit samples can't overflow an int.
+     */
+    private static final int WEIGHT_BITS = 15;
+    private static final int WEIGHT_ONE = 1 << WEIGHT_BITS;
+
+    /** Frames mixed per pass; longer renders are done in multiple passes, so our scratch buffer stays small. */
+    static final int BLOCK_FRAMES = 512;
+
+    /** Returned by {@link #play(int, float)} when nothing could be played */
+    static final int NO_STREAM = 0;
+
+    private final int outputRate;
+
+    /** Loaded samples; sample id <code>n</code> is at index <code>n-1</code> */
+    private final List<short[]> samples = new ArrayList<>();
+    private final List<Integer> sampleRates = new ArrayList<>();
+
+    /** Sample per voice, or <code>null</code> for free voices */
+    private final short[][] voicePcm;
+    /** Playback position per voice, in fixed-point frames */
+    private final long[] positions;
+    /** Position increment per output frame, per voice, in fixed-point frames */
+    private final long[] steps;
+    private final float[] gains;
+    private final int[] streamIds;
+    private int nextStreamId = 1;
+
+    /** Mix accumulator, with headroom above 16 bits, so clipping only happens once, at the end */
+    private final int[] accumulator = new int[BLOCK_FRAMES];
+
+    PcmMixer(int outputRate, int maxVoices) {
+        if (outputRate <= 0 || maxVoices <= 0) {
+            throw new IllegalArgumentException("Can't mix " + maxVoices + " voices at a rate of " + outputRate);
+        }
+        this.outputRate = outputRate;
+        voicePcm = new short[maxVoices][];
+        positions = new long[maxVoices];
+        steps = new long[maxVoices];
+        gains = new float[maxVoices];
+        streamIds = new int[maxVoices];
+    }
+
+    /**
+     * @param pcm        mono 16-bit samples; not copied, so don't modify it afterwards.
+     * @param sampleRate of <code>pcm</code>
+     * @return sample id, for {@link #play(int, float)}
+     */
+    synchronized int addSample(short[] pcm, int sampleRate) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("Invalid sample rate: " + sampleRate);
+        }
+        samples.add(pcm);
+        sampleRates.add(sampleRate);
+        return samples.size();
+    }
+
+    /**
+     * Starts playing a sample, at full volume.
+     *
+     * @param rate playback rate: 2 is an octave up, 0.5 an octave down.
+     * @return stream id, for {@link #stop(int)} and {@link #setVolume(int, float)}; or {@link #NO_STREAM} if the sample
+     *          doesn't exist, or all voices are busy.
+     */
+    synchronized int play(int sampleId, float rate) {
+        if (sampleId < 1 || sampleId > samples.size() || rate <= 0) {
+            return NO_STREAM;
+        }
+        for (int voice = 0; voice < voicePcm.length; voice++) {
+            if (voicePcm[voice] == null) {
+                voicePcm[voice] = samples.get(sampleId - 1);
+                positions[voice] = 0;
+                steps[voice] = Math.round((double) rate * sampleRates.get(sampleId - 1) / outputRate * ONE);
+                gains[voice] = 1f;
+                streamIds[voice] = nextStreamId;
+                nextStreamId = nextStreamId == Integer.MAX_VALUE ? 1 : nextStreamId + 1;
+                notifyAll(); // wakes up awaitActive()
+                return streamIds[voice];
+            }
+        }
+        return NO_STREAM;
+    }
+
+    /**
+     * Stops a stream. Harmless if it already ended.
+     */
+    synchronized void stop(int streamId) {
+        int voice = findVoice(streamId);
+        if (voice >= 0) {
+            voicePcm[voice] = null;
+        }
+    }
+
+    /**
+     * Changes the volume of a stream. Harmless if it already ended.
+     *
+     * @param volume from 0 (silent) to 1 (full volume)
+     */
+    synchronized void setVolume(int streamId, float volume) {
+        int voice = findVoice(streamId);
+        if (voice >= 0) {
+            gains[voice] = Math.max(0f, Math.min(1f, volume));
+        }
+    }
+
+    private int findVoice(int streamId) {
+        for (int voice = 0; voice < voicePcm.length; voice++) {
+            if (voicePcm[voice] != null && streamIds[voice] == streamId) {
+                return voice;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public synchronized int render(short[] out, int frames) {
+        for (int offset = 0; offset < frames; offset += BLOCK_FRAMES) {
+            mixBlock(out, offset, Math.min(BLOCK_FRAMES, frames - offset));
+        }
+        return activeVoices();
+    }
+
+    /**
+     * Mixes all voices into <code>out[offset..offset+frames-1]</code>, with <code>frames <= BLOCK_FRAMES</code>.
+     */
+    private void mixBlock(short[] out, int offset, int frames) {
+        final int[] acc = accumulator;
+        for (int i = 0; i < frames; i++) {
+            acc[i] = 0;
+        }
+
+        for (int voice = 0; voice < voicePcm.length; voice++) {
+            final short[] pcm = voicePcm[voice];
+            if (pcm == null) {
+                continue;
+            }
+
+            long position = positions[voice];
+            final long step = steps[voice];
+            final int gain = (int) (gains[voice] * WEIGHT_ONE);
+            final int last = pcm.length - 1; // interpolation needs the next frame too
+            for (int i = 0; i < frames; i++) {
+                int index = (int) (position >>> FRACTION_BITS);
+                if (index >= last) {
+                    voicePcm[voice] = null; // sample ended
+                    break;
+                }
+                int weight = (int) (position & FRACTION_MASK) >>> (FRACTION_BITS - WEIGHT_BITS);
+                int sample = pcm[index] + (((pcm[index + 1] - pcm[index]) * weight) >> WEIGHT_BITS);
+                acc[i] += (sample * gain) >> WEIGHT_BITS;
+                position += step;
+            }
+            positions[voice] = position;
+        }
+
+        for (int i = 0; i < frames; i++) {
+            out[offset + i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, acc[i]));
+        }
+    }
+
+    private int activeVoices() {
+        int active = 0;
+        for (short[] pcm : voicePcm) {
+            if (pcm != null) {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    @Override
+    public synchronized boolean isIdle() {
+        return activeVoices() == 0;
+    }
+
+    @Override
+    public synchronized void awaitActive() throws InterruptedException {
+        while (isIdle()) {
+            wait();
+        }
+    }
+
+    /**
+     * Stops all voices, and forgets all samples.
+     */
+    synchronized void clear() {
+        for (int voice = 0; voice < voicePcm.length; voice++) {
+            voicePcm[voice] = null;
+        }
+        samples.clear();
+        sampleRates.clear();
+    }
+
+    /**
+     * @return total size of all loaded samples, in bytes.
+     */
+    synchronized long getSampleBytes() {
+        long total = 0;
+        for (short[] pcm : samples) {
+            total += pcm.length * 2L;
+        }
+        return total;
+    }
+}
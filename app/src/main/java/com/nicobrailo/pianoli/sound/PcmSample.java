@@ -0,0 +1,72 @@
+package com.nicobrailo.pianoli.sound;
+
+import java.util.Arrays;
+
+/**
+ * A decoded sample: 16-bit PCM, interleaved if it has more than one channel, and its sample rate.
+ */
+final class PcmSample {
+    final short[] pcm;
+    final int channels;
+    final int sampleRate;
+
+    /**
+     * A mono sample.
+     */
+    PcmSample(short[] pcm, int sampleRate) {
+        this(pcm, 1, sampleRate);
+    }
+
+    /**
+     * @param pcm frames of <code>channels</code> samples each.
+     */
+    PcmSample(short[] pcm, int channels, int sampleRate) {
+        if (channels < 1) {
+            throw new IllegalArgumentException("Need at least one channel, but got " + channels);
+        }
+        this.pcm = pcm;
+        this.channels = channels;
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Copies the complete frames of interleaved multi-channel PCM into a sample, keeping all channels.
+     *
+     * @param interleaved frames of <code>channels</code> samples each.
+     * @param length      amount of valid samples (not frames) in <code>interleaved</code>.
+     */
+    static PcmSample fromInterleaved(short[] interleaved, int length, int channels, int sampleRate) {
+        if (channels < 1) {
+            throw new IllegalArgumentException("Need at least one channel, but got " + channels);
+        }
+        return new PcmSample(Arrays.copyOf(interleaved, length - length % channels), channels, sampleRate);
+    }
+
+    /**
+     * @return number of frames, i.e. samples per channel.
+     */
+    int frames() {
+        return pcm.length / channels;
+    }
+
+    /**
+     * Mixes the sample down to mono, by averaging the channels; our own {@link PcmMixer} only mixes mono.
+     *
+     * @return this sample, if it's mono already.
+     */
+    PcmSample toMono() {
+        if (channels == 1) {
+            return this;
+        }
+
+        short[] mono = new short[frames()];
+        for (int frame = 0; frame < mono.length; frame++) {
+            int sum = 0;
+            for (int channel = 0; channel < channels; channel++) {
+                sum += pcm[frame * channels + channel];
+            }
+            mono[frame] = (short) (sum / channels);
+        }
+        return new PcmSample(mono, sampleRate);
+    }
+}
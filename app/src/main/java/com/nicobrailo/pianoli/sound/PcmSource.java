@@ -0,0 +1,28 @@
+package com.nicobrailo.pianoli.sound;
+
+/**
+ * Something that produces mono 16-bit PCM audio, for {@link AudioOutput} to play.
+ *
+ * <p>
+ * Plain Java, so implementations can be tested and benchmarked on the JVM.
+ * </p>
+ */
+interface PcmSource {
+    /**
+     * Renders the next <code>frames</code> samples into <code>out</code>, overwriting what was there.
+     * Called on the audio thread, so must not block or allocate.
+     *
+     * @return amount of voices still sounding afterwards.
+     */
+    int render(short[] out, int frames);
+
+    /**
+     * @return <code>true</code> if nothing is sounding, so rendering would only produce silence.
+     */
+    boolean isIdle();
+
+    /**
+     * Blocks until something sounds, so output threads don't have to spin on silence.
+     */
+    void awaitActive() throws InterruptedException;
+}
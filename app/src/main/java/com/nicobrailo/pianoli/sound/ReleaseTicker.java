@@ -0,0 +1,116 @@
+package com.nicobrailo.pianoli.sound;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One shared timer that drives all fading notes, see {@link SoundSet#releaseNote(int)}.
+ *
+ * <p>
+ * Rather than scheduling a task per released note, soundsets with fading notes register a single {@link Fader},
+ * which gets ticked every {@link #TICK_MS} until it reports that nothing is fading anymore.
+ * The timer only runs while there is something to fade, so an idle piano costs nothing.
+ * </p>
+ */
+class ReleaseTicker {
+    private static final String TAG = "PianOli::ReleaseTicker";
+
+    /**
+     * Interval (milliseconds) between volume updates. Short enough that fades sound smooth, rather than stepped.
+     */
+    static final long TICK_MS = 10;
+
+    /**
+     * Something with fading notes.
+     */
+    interface Fader {
+        /**
+         * Advances all fades to the current time.
+         *
+         * @return <code>true</code> while there are notes left to fade, <code>false</code> when done.
+         */
+        boolean tick();
+    }
+
+    /** Shared by all soundsets, since only one of them plays at a time anyway. */
+    static final ReleaseTicker SHARED = new ReleaseTicker();
+
+    private final List<Fader> faders = new ArrayList<>();
+    /** lazily created, on the first fade */
+    private ScheduledExecutorService timer;
+    private ScheduledFuture<?> ticking;
+    private boolean running;
+
+    /**
+     * Makes sure <code>fader</code> gets ticked, until it reports it's done.
+     * Harmless if it is already being ticked.
+     */
+    synchronized void add(Fader fader) {
+        if (!faders.contains(fader)) {
+            faders.add(fader);
+        }
+        if (!running) {
+            running = true;
+            startTimer();
+        }
+    }
+
+    /**
+     * Ticks all faders once, forgetting those that are done.
+     * Stops the timer when nothing is left to fade.
+     */
+    synchronized void tick() {
+        for (int i = faders.size() - 1; i >= 0; i--) {
+            if (!faders.get(i).tick()) {
+                faders.remove(i);
+            }
+        }
+
+        if (faders.isEmpty() && running) {
+            running = false;
+            stopTimer();
+        }
+    }
+
+    /**
+     * Starts calling {@link #tick()} periodically.
+     *
+     * <p>
+     * Test seam: override to tick manually.
+     * </p>
+     */
+    void startTimer() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "PianOli-ReleaseTicker");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        Log.d(TAG, "fading notes, starting timer");
+        ticking = timer.scheduleAtFixedRate(this::tick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops calling {@link #tick()}.
+     *
+     * <p>
+     * Test seam: override to tick manually.
+     * </p>
+     */
+    void stopTimer() {
+        ticking.cancel(false);
+        ticking = null;
+    }
+
+    /** @return <code>true</code> while the timer runs, for tests. */
+    synchronized boolean isRunning() {
+        return running;
+    }
+}
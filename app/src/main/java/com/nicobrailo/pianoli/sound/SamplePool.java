@@ -0,0 +1,87 @@
+package com.nicobrailo.pianoli.sound;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * The bits of a sample-mixer that {@link SampledSoundSet} needs.
+ *
+ * <p>
+ * Decoupling interface, to keep android-specific code out of {@link SampledSoundSet}, so that its loading and
+ * playback logic can be tested on a plain JVM.
+ * </p>
+ *
+ * @see SoundPoolSamplePool
+ */
+interface SamplePool {
+    /**
+     * Gets told when a sample has finished loading, and can be played.
+     */
+    interface OnLoadedListener {
+        /**
+         * @param sampleId as returned from {@link #loadNote(String, int)} or {@link #loadNoNote()}
+         * @param success  <code>false</code> if the sample could not be decoded, and will never be playable.
+         */
+        void onLoaded(int sampleId, boolean success);
+    }
+
+    void setOnLoadedListener(OnLoadedListener listener);
+
+    /**
+     * @param noteNum 1-based note number
+     * @return asset path of a note's sample file
+     */
+    static String noteAssetPath(String soundSetName, int noteNum) {
+        // root locale OK for number-formatting.
+        return "sounds/" + SoundSet.addPrefix(soundSetName) + "/" + String.format(Locale.ROOT, "n%02d.mp3", noteNum);
+    }
+
+    /**
+     * Starts loading note <code>noteNum</code> of a soundset.
+     *
+     * <p>
+     * May block for file I/O, so don't call on the UI thread. Decoding may continue after this returns;
+     * the sample is only playable after the {@link OnLoadedListener} was called for it.
+     * </p>
+     *
+     * @param noteNum 1-based note number, as in the sample file names.
+     * @return sample id, for {@link #play(int, float)}
+     */
+    int loadNote(String soundSetName, int noteNum) throws IOException;
+
+    /**
+     * Starts loading the sound for keys that don't have a note.
+     *
+     * @see #loadNote(String, int)
+     */
+    int loadNoNote() throws IOException;
+
+    /**
+     * @param rate playback rate, which shifts the pitch: 2 is an octave up, 0.5 an octave down.
+     *             Supported from {@link NoteTable#MIN_RATE} to {@link NoteTable#MAX_RATE}.
+     * @return stream id of the started sound, or 0 on failure.
+     */
+    int play(int sampleId, float rate);
+
+    /**
+     * Stops a sound started by {@link #play(int, float)}. Harmless if it already ended by itself.
+     */
+    void stop(int streamId);
+
+    /**
+     * Changes the volume of a sound started by {@link #play(int, float)}. Harmless if it already ended by itself.
+     *
+     * @param volume from 0 (silent) to 1 (full volume)
+     */
+    void setVolume(int streamId, float volume);
+
+    /**
+     * @return the total size of all sample files loaded so far, as stored in the APK.
+     */
+    long getLoadedFileBytes();
+
+    /**
+     * Stops all sounds, and frees all samples. The pool is unusable afterwards.
+     */
+    void release();
+}
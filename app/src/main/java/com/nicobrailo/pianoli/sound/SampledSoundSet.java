@@ -1,22 +1,39 @@
 package com.nicobrailo.pianoli.sound;
 
 import android.content.Context;
-import android.content.res.AssetFileDescriptor;
-import android.content.res.AssetManager;
-import android.media.SoundPool;
 import android.util.Log;
+
 import com.nicobrailo.pianoli.Piano;
-import com.nicobrailo.pianoli.R;
+import com.nicobrailo.pianoli.PianoLog;
 
 import java.io.IOException;
-import java.util.Locale;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Handle for the currently selected soundset, enabling the rest of the app to easily play notes.
  *
  * <p>
  * This is intended to be a "throw-away" object. When the selected instrument changes, {@link #close()} the current
- * object, and replace it with a new instance.
+ * object, and replace it with a new instance. Usually, {@link SoundSetCache} takes care of that.
+ * </p>
+ * <p>
+ * Samples are loaded in the background, starting with the notes of the keys in the middle of the screen, since those
+ * are the ones most likely to be played first; samples that no key on screen plays come last. Use
+ * {@link #isNoteReady(int)} / {@link #isFullyLoaded()} to check progress. A note that is played before its sample is
+ * ready is remembered, and played as soon as its sample is ready, unless that takes longer than
+ * {@link #PENDING_PLAY_TIMEOUT_MS}: a late note is more confusing than a missing one.
+ * </p>
+ * <p>
+ * Keys beyond our {@link #SOUNDSET_SAMPLES_SIZE} samples reuse the nearest sample, pitch-shifted; see
+ * {@link NoteTable}.
  * </p>
  */
 public class SampledSoundSet implements SoundSet {
@@ -26,98 +43,517 @@ public class SampledSoundSet implements SoundSet {
      * <p>
      * Slightly inflated, since it also reserves slots for the non-existant black/flat keys.
      * This keeps the sample indices here in sync with {@link Piano}'s key-indices.
+     * Keys beyond this play pitch-shifted samples, see {@link #NOTES}.
      * </p>
      */
     public static final int SOUNDSET_SAMPLES_SIZE = 28;
 
     /**
-     * Handle to our android-provided sound mixer, that mixes multiple simultaneous tones
+     * How much bigger decoded samples are than their mp3 files, for memory accounting.
+     *
+     * <p>
+     * SoundPool keeps its samples as decoded 16-bit PCM. Our samples are 128kbps mp3s, which decode to 705kbps (mono)
+     * or 1411kbps (stereo) at 44.1kHz. We assume the worst case.
+     * </p>
+     */
+    static final int DECODED_SIZE_FACTOR = 11;
+
+    /**
+     * How long (milliseconds) a note that was played before its sample was loaded, may still start once it is loaded.
+     */
+    static final long PENDING_PLAY_TIMEOUT_MS = 250;
+
+    /**
+     * How many notes may sound simultaneously.
+     *
+     * @see VoiceAllocator
+     */
+    static final int MAX_VOICES = 7;
+
+    /** Marker in {@link #SAMPLE_NOTE_NUMBERS} for the non-existing flat keys */
+    private static final int NO_NOTE = 0;
+
+    /**
+     * Which note file (<code>nXX.mp3</code>) belongs to which key index.
+     */
+    private static final int[] SAMPLE_NOTE_NUMBERS = {
+             1,  2,  3,  4,  5, NO_NOTE,  6,  7,  8,  9, 10, 11, 12, NO_NOTE,
+            13, 14, 15, 16, 17, NO_NOTE, 18, 19, 20, 21, 22, 23, 24, NO_NOTE,
+    };
+
+    /**
+     * Which sample, at which rate, each key plays.
      */
-    private final SoundPool pool;
+    static final NoteTable NOTES = new NoteTable(NoteTable.SIZE, sampledKeys(), noNoteKey());
+
+    /** Per-key loading states, see {@link #state} */
+    private static final int NOT_STARTED = 0, LOADING = 1, READY = 2, FAILED = 3;
 
     /**
-     * Resource handles to the mp3 samples of our currently active soundset, one for each note
+     * Shared by all soundsets, so an abandoned soundset's {@link #close()} is ordered after its own loading,
+     * and we never decode two soundsets at the same time.
      */
-    private final int[] samples;
+    private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "PianOli-SampleLoader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final SamplePool pool;
+    private final VoiceAllocator voices;
+    private final Executor loader;
+    private final ReleaseTicker releaseTicker;
+    private final ReleaseTicker.Fader fader = this::tickReleases;
     private final String name;
+    /** Sample slots, in loading order, see {@link #loadOrder(int)} */
+    private final int[] loadOrder;
+
+    /** sample id per key index; guarded by <code>this</code> */
+    private final int[] samples = new int[SOUNDSET_SAMPLES_SIZE];
+    /**
+     * {@link #NOT_STARTED}, {@link #LOADING}, {@link #READY} or {@link #FAILED} per key index; guarded by
+     * <code>this</code>
+     */
+    private final int[] state = new int[SOUNDSET_SAMPLES_SIZE];
+    /** When a not-yet-loaded key was last played (nanos), or 0 if it wasn't; guarded by <code>this</code> */
+    private final long[] pendingSince = new long[SOUNDSET_SAMPLES_SIZE];
+    /** Which key played the pending note, which may be a pitch-shifted one; guarded by <code>this</code> */
+    private final int[] pendingKey = new int[SOUNDSET_SAMPLES_SIZE];
+    /** Sample ids that finished loading successfully, in case that happens before we know which key they're for */
+    private final Set<Integer> loadedIds = new HashSet<>();
+    /** Sample ids that failed to load */
+    private final Set<Integer> failedIds = new HashSet<>();
+    /** Callbacks waiting for {@link #isFullyLoaded()}; guarded by <code>this</code> */
+    private final List<Runnable> whenReady = new ArrayList<>();
+
+    private final long loadStartNanos;
+    private long loadDoneNanos;
+    private boolean closed;
+    /** Fade-out time on key-up (nanos), or 0 to let notes ring to their end */
+    private volatile long releaseNanos;
 
     public SampledSoundSet(final Context context, String soundSetName) {
+        this(context, soundSetName, false, SOUNDSET_SAMPLES_SIZE);
+    }
+
+    /**
+     * @param lowLatency  <code>true</code> to decode and mix samples ourselves ({@link MixerSamplePool}),
+     *                    <code>false</code> to leave that to android's SoundPool.
+     * @param visibleKeys how many keys are on screen (see {@link Piano#get_keys_count()}), to load their notes first.
+     */
+    public SampledSoundSet(final Context context, String soundSetName, boolean lowLatency, int visibleKeys) {
+        // Let the pool mix as many sounds as our voice allocator allows, so the allocator decides what gets cut off.
+        this(lowLatency
+                        ? new MixerSamplePool(context, MAX_VOICES, PcmDiskCache.forContext(context))
+                        : new SoundPoolSamplePool(context, MAX_VOICES, PcmDiskCache.forContext(context)),
+                soundSetName, LOADER, ReleaseTicker.SHARED, visibleKeys);
+    }
+
+    /**
+     * Test seam: inject fake pool, loader thread and release timer; all sampled keys are on screen.
+     */
+    SampledSoundSet(SamplePool pool, String soundSetName, Executor loader, ReleaseTicker releaseTicker) {
+        this(pool, soundSetName, loader, releaseTicker, SOUNDSET_SAMPLES_SIZE);
+    }
+
+    /**
+     * Test seam: inject fake pool, loader thread and release timer.
+     */
+    SampledSoundSet(SamplePool pool, String soundSetName, Executor loader, ReleaseTicker releaseTicker,
+                    int visibleKeys) {
         this.name = soundSetName;
+        this.loadOrder = loadOrder(visibleKeys);
+        this.pool = pool;
+        this.voices = new VoiceAllocator(pool, MAX_VOICES);
+        this.loader = loader;
+        this.releaseTicker = releaseTicker;
+        this.loadStartNanos = getNow();
 
-        pool = new SoundPool.Builder()
-                .setMaxStreams(7)   // Play max N concurrent sounds
-                .build();
+        pool.setOnLoadedListener(this::onSampleLoaded);
+        loader.execute(this::loadAll);
+    }
 
-        samples = new int[SOUNDSET_SAMPLES_SIZE];
-        final AssetManager am = context.getAssets();
-        try {
-            int loadedNoNote = pool.load(context, R.raw.no_note, 1);
-
-            samples[0]  = loadNoteFd(am, pool, soundSetName, 1);
-            samples[1]  = loadNoteFd(am, pool, soundSetName, 2);
-            samples[2]  = loadNoteFd(am, pool, soundSetName, 3);
-            samples[3]  = loadNoteFd(am, pool, soundSetName, 4);
-            samples[4]  = loadNoteFd(am, pool, soundSetName, 5);
-            samples[5]  = loadedNoNote;
-            samples[6]  = loadNoteFd(am, pool, soundSetName, 6);
-            samples[7]  = loadNoteFd(am, pool, soundSetName, 7);
-            samples[8]  = loadNoteFd(am, pool, soundSetName, 8);
-            samples[9]  = loadNoteFd(am, pool, soundSetName, 9);
-            samples[10] = loadNoteFd(am, pool, soundSetName, 10);
-            samples[11] = loadNoteFd(am, pool, soundSetName, 11);
-            samples[12] = loadNoteFd(am, pool, soundSetName, 12);
-            samples[13] = loadedNoNote;
-
-            samples[14] = loadNoteFd(am, pool, soundSetName, 13);
-            samples[15] = loadNoteFd(am, pool, soundSetName, 14);
-            samples[16] = loadNoteFd(am, pool, soundSetName, 15);
-            samples[17] = loadNoteFd(am, pool, soundSetName, 16);
-            samples[18] = loadNoteFd(am, pool, soundSetName, 17);
-            samples[19] = loadedNoNote;
-            samples[20] = loadNoteFd(am, pool, soundSetName, 18);
-            samples[21] = loadNoteFd(am, pool, soundSetName, 19);
-            samples[22] = loadNoteFd(am, pool, soundSetName, 20);
-            samples[23] = loadNoteFd(am, pool, soundSetName, 21);
-            samples[24] = loadNoteFd(am, pool, soundSetName, 22);
-            samples[25] = loadNoteFd(am, pool, soundSetName, 23);
-            samples[26] = loadNoteFd(am, pool, soundSetName, 24);
-            samples[27] = loadedNoNote;
-        } catch (IOException e) {
-            Log.d("PianOli::SoundSet", "Failed to load sounds");
-            e.printStackTrace();
-        }
-    }
-
-    /**
-     * Small helper to deduplicate sample-loading
-     */
-    private static int loadNoteFd(AssetManager am, SoundPool pool, String soundSetName, int noteNum) throws IOException {
-        String assetFolder = "sounds/" + SoundSet.addPrefix(soundSetName) + "/";
-        String fileName = String.format(Locale.ROOT, "n%02d.mp3", noteNum); // root locale OK for number-formatting.
-        try (AssetFileDescriptor afd = am.openFd(assetFolder + fileName)) {
-            return pool.load(afd, 1);
+    /**
+     * @return key indices that have a sample file of their own.
+     */
+    private static int[] sampledKeys() {
+        int count = 0;
+        for (int note : SAMPLE_NOTE_NUMBERS) {
+            if (note != NO_NOTE) {
+                count++;
+            }
+        }
+
+        int[] result = new int[count];
+        int i = 0;
+        for (int keyIdx = 0; keyIdx < SAMPLE_NOTE_NUMBERS.length; keyIdx++) {
+            if (SAMPLE_NOTE_NUMBERS[keyIdx] != NO_NOTE) {
+                result[i++] = keyIdx;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return a key index that plays the shared no-note sample.
+     */
+    private static int noNoteKey() {
+        for (int keyIdx = 0; keyIdx < SAMPLE_NOTE_NUMBERS.length; keyIdx++) {
+            if (SAMPLE_NOTE_NUMBERS[keyIdx] == NO_NOTE) {
+                return keyIdx;
+            }
+        }
+        throw new IllegalStateException("No slot for keys without a note");
+    }
+
+    /**
+     * Orders all sample slots by urgency: first those played by the keys on screen, starting from the middle of the
+     * screen, then the rest, starting from the middle of the soundset.
+     *
+     * @param visibleKeys how many keys are on screen, from key index 0.
+     */
+    static int[] loadOrder(int visibleKeys) {
+        final int[] order = new int[SOUNDSET_SAMPLES_SIZE];
+        final boolean[] added = new boolean[SOUNDSET_SAMPLES_SIZE];
+        int count = 0;
+        for (int keyIdx : centreFirst(Math.max(1, Math.min(visibleKeys, NOTES.size())))) {
+            final int slot = NOTES.getSlot(keyIdx);
+            if (!added[slot]) {
+                added[slot] = true;
+                order[count++] = slot;
+            }
+        }
+        for (int slot : centreFirst(SOUNDSET_SAMPLES_SIZE)) {
+            if (!added[slot]) {
+                added[slot] = true;
+                order[count++] = slot;
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Orders indices <code>0..size-1</code> by distance to the middle, so the centre comes first.
+     */
+    private static int[] centreFirst(int size) {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        final int centre = size / 2;
+        Arrays.sort(order, (a, b) -> Math.abs(a - centre) != Math.abs(b - centre)
+                ? Math.abs(a - centre) - Math.abs(b - centre)
+                : a - b);
+
+        int[] result = new int[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = order[i];
+        }
+        return result;
+    }
+
+    /**
+     * Background job: loads all samples, most urgent first.
+     */
+    private void loadAll() {
+        int noNoteSample = 0;
+        for (int keyIdx = nextToLoad(); keyIdx >= 0; keyIdx = nextToLoad()) {
+            int sampleId;
+            try {
+                if (SAMPLE_NOTE_NUMBERS[keyIdx] != NO_NOTE) {
+                    sampleId = pool.loadNote(name, SAMPLE_NOTE_NUMBERS[keyIdx]);
+                } else {
+                    // All non-existing keys share the same sample, only load it once.
+                    if (noNoteSample == 0) {
+                        noNoteSample = pool.loadNoNote();
+                    }
+                    sampleId = noNoteSample;
+                }
+            } catch (IOException e) {
+                Log.d("PianOli::SoundSet", "Failed to load sound for key " + keyIdx + " of " + name);
+                e.printStackTrace();
+                markDone(keyIdx, FAILED);
+                continue;
+            }
+
+            int alreadyDone = LOADING;
+            synchronized (this) {
+                samples[keyIdx] = sampleId;
+                // The load may already have completed before we knew which key it was for.
+                if (loadedIds.contains(sampleId)) {
+                    alreadyDone = READY;
+                } else if (failedIds.contains(sampleId)) {
+                    alreadyDone = FAILED;
+                }
+            }
+            if (alreadyDone != LOADING) {
+                markDone(keyIdx, alreadyDone);
+            }
+        }
+    }
+
+    /**
+     * Picks the next key to load: keys that were already played come first, then the rest in {@link #loadOrder}.
+     *
+     * @return key index to load, or -1 if there's nothing left to load (or we've been closed).
+     */
+    private synchronized int nextToLoad() {
+        if (closed) {
+            return -1;
+        }
+
+        int next = -1;
+        for (int keyIdx : loadOrder) {
+            if (state[keyIdx] == NOT_STARTED) {
+                if (pendingSince[keyIdx] != 0) {
+                    next = keyIdx;
+                    break;
+                }
+                if (next < 0) {
+                    next = keyIdx;
+                }
+            }
+        }
+
+        if (next >= 0) {
+            state[next] = LOADING;
+        }
+        return next;
+    }
+
+    /**
+     * Callback from the pool, possibly on another thread.
+     */
+    private void onSampleLoaded(int sampleId, boolean success) {
+        synchronized (this) {
+            (success ? loadedIds : failedIds).add(sampleId);
+        }
+        for (int keyIdx = 0; keyIdx < SOUNDSET_SAMPLES_SIZE; keyIdx++) {
+            boolean match;
+            synchronized (this) {
+                match = samples[keyIdx] == sampleId && state[keyIdx] == LOADING;
+            }
+            if (match) {
+                markDone(keyIdx, success ? READY : FAILED);
+            }
+        }
+    }
+
+    /**
+     * Records that a key is done loading, plays it if it was played while loading, and finishes up if it was the last.
+     */
+    private void markDone(int keyIdx, int doneState) {
+        boolean playNow = false;
+        int sampleId;
+        int playKey = keyIdx;
+        List<Runnable> callbacks = null;
+        synchronized (this) {
+            if (state[keyIdx] == READY || state[keyIdx] == FAILED) {
+                return; // already done, e.g. when load completion raced with sample-id bookkeeping.
+            }
+            state[keyIdx] = doneState;
+            sampleId = samples[keyIdx];
+
+            if (pendingSince[keyIdx] != 0) {
+                long waitedMs = TimeUnit.NANOSECONDS.toMillis(getNow() - pendingSince[keyIdx]);
+                playNow = doneState == READY && !closed && waitedMs <= PENDING_PLAY_TIMEOUT_MS;
+                if (!playNow) {
+                    voices.noteDropped();
+                }
+                pendingSince[keyIdx] = 0;
+                playKey = pendingKey[keyIdx];
+            }
+
+            if (isFullyLoaded()) {
+                loadDoneNanos = getNow();
+                callbacks = new ArrayList<>(whenReady);
+                whenReady.clear();
+            }
+        }
+
+        if (playNow) {
+            voices.noteOn(playKey, sampleId, NOTES.getRate(playKey), getNow());
+        }
+        if (callbacks != null) {
+            Log.i("PianOli::SoundSet", "soundset " + name + " loaded in " + getLoadTimeMillis() + "ms");
+            for (Runnable callback : callbacks) {
+                callback.run();
+            }
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the sample for <code>keyIdx</code> is loaded, so playing it will actually be heard.
+     */
+    public synchronized boolean isNoteReady(int keyIdx) {
+        return keyIdx >= 0 && keyIdx < NOTES.size() && state[NOTES.getSlot(keyIdx)] == READY;
+    }
+
+    /**
+     * @return <code>true</code> once loading has finished for all samples (even if some failed).
+     */
+    public synchronized boolean isFullyLoaded() {
+        for (int s : state) {
+            if (s != READY && s != FAILED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return how long loading all samples took, or -1 if it hasn't finished yet.
+     */
+    public synchronized long getLoadTimeMillis() {
+        if (loadDoneNanos == 0) {
+            return -1;
         }
+        return TimeUnit.NANOSECONDS.toMillis(loadDoneNanos - loadStartNanos);
+    }
+
+    /**
+     * Calls <code>callback</code> once all samples are loaded: immediately if they already are, otherwise from
+     * whichever thread completes the loading.
+     */
+    @Override
+    public void whenReady(Runnable callback) {
+        synchronized (this) {
+            if (!isFullyLoaded()) {
+                whenReady.add(callback);
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    /**
+     * @return how often a playing note was cut off to make room for another key's note, see {@link VoiceAllocator}.
+     */
+    public int getVoicesStolen() {
+        return voices.getVoicesStolen();
+    }
+
+    /**
+     * @return how often a playing note was cut off because its own key was pressed again, see {@link VoiceAllocator}.
+     */
+    public int getVoicesChoked() {
+        return voices.getVoicesChoked();
+    }
+
+    /**
+     * @return how many notes were stopped early, by fading them out on key-up.
+     */
+    public int getVoicesReleased() {
+        return voices.getVoicesReleased();
+    }
+
+    /**
+     * @return how many notes could not be played at all, e.g. because their sample didn't load in time.
+     */
+    public int getNotesDropped() {
+        return voices.getNotesDropped();
+    }
+
+    @Override
+    public long getEstimatedMemoryBytes() {
+        return pool.getLoadedFileBytes() * DECODED_SIZE_FACTOR;
     }
 
     @Override
     public void close() {
-        Log.d("PianOli::SoundSet", "releasing soundset " + name);
-        pool.release();
+        Log.d("PianOli::SoundSet", "releasing soundset " + name + "; voices stolen=" + getVoicesStolen()
+                + ", choked=" + getVoicesChoked() + ", released=" + getVoicesReleased()
+                + ", notes dropped=" + getNotesDropped());
+        synchronized (this) {
+            closed = true;
+            whenReady.clear();
+        }
+        // Release on the loader thread, so we don't pull the pool from under a running load.
+        loader.execute(pool::release);
     }
 
     /**
      * Plays the sound sample associated with note <code>keyIdx</code>.
      *
+     * <p>
+     * If the sample is still loading, it is played once loaded (if that happens soon enough), see the class docs.
+     * </p>
+     *
      * @param keyIdx note to play. Range-checked, and does nothing (except log the problem) if the key is out of range.
-     * @see #SOUNDSET_SAMPLES_SIZE
+     * @see #NOTES
      */
     @Override
     public void playNote(int keyIdx) {
-        if (keyIdx < 0 || keyIdx >= SOUNDSET_SAMPLES_SIZE) {
-            Log.d("PianOli::SoundSet", "This shouldn't happen: Sound out of range: " + keyIdx);
+        if (keyIdx < 0 || keyIdx >= NOTES.size()) {
+            PianoLog.d("PianOli::SoundSet", "This shouldn't happen: Sound out of range: ", keyIdx);
+            return;
+        }
+
+        PianoLog.beginSection("PianOli::PlayNote");
+        try {
+            playSlot(keyIdx, NOTES.getSlot(keyIdx));
+        } finally {
+            PianoLog.endSection();
+        }
+    }
+
+    private void playSlot(int keyIdx, int slot) {
+        int sampleId;
+        synchronized (this) {
+            if (state[slot] != READY) {
+                if (state[slot] == FAILED) {
+                    voices.noteDropped();
+                } else {
+                    PianoLog.d("PianOli::SoundSet", "Sound not loaded yet, deferring: ", keyIdx);
+                    pendingSince[slot] = getNow();
+                    pendingKey[slot] = keyIdx;
+                }
+                return;
+            }
+            sampleId = samples[slot];
+        }
+
+        voices.noteOn(keyIdx, sampleId, NOTES.getRate(keyIdx), getNow());
+    }
+
+    @Override
+    public void setReleaseMillis(int releaseMillis) {
+        releaseNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, releaseMillis));
+    }
+
+    /**
+     * Fades out note <code>keyIdx</code>, if enabled via {@link #setReleaseMillis(int)}; otherwise lets it ring.
+     */
+    @Override
+    public void releaseNote(int keyIdx) {
+        if (releaseNanos == 0 || keyIdx < 0 || keyIdx >= NOTES.size()) {
             return;
         }
 
-        pool.play(samples[keyIdx], 1, 1, 1, 0, 1f);
+        if (voices.noteOff(keyIdx, getNow())) {
+            releaseTicker.add(fader);
+        }
+    }
+
+    /**
+     * {@link ReleaseTicker.Fader} for our voices.
+     */
+    private boolean tickReleases() {
+        synchronized (this) {
+            if (closed) {
+                return false; // pool is (being) released, and the voices with it.
+            }
+        }
+        return voices.tickReleases(getNow(), releaseNanos);
+    }
+
+    /**
+     * Test seam: override to inject fake time for testing.
+     *
+     * @return current monotonic time in nanoseconds
+     * @see System#nanoTime()
+     */
+    long getNow() {
+        return System.nanoTime();
     }
 }
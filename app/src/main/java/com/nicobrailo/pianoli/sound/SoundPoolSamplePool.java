@@ -0,0 +1,100 @@
+package com.nicobrailo.pianoli.sound;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.content.res.Resources;
+import android.media.SoundPool;
+import android.util.Log;
+import com.nicobrailo.pianoli.R;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * {@link SamplePool} backed by android's own sample mixer, {@link SoundPool}.
+ *
+ * <p>
+ * Loads the decoded WAV files of the {@link PcmDiskCache}, which keep the mp3's channels, so the joint-stereo
+ * soundsets stay stereo.
+ * </p>
+ */
+class SoundPoolSamplePool implements SamplePool {
+    /**
+     * Handle to our android-provided sound mixer, that mixes multiple simultaneous tones
+     */
+    private final SoundPool pool;
+    private final AssetManager assets;
+    private final Resources resources;
+    private final PcmDiskCache diskCache;
+
+    /** Total size of all loaded sample files; written from the loader thread. */
+    private volatile long loadedFileBytes;
+
+    SoundPoolSamplePool(Context context, int maxStreams, PcmDiskCache diskCache) {
+        pool = new SoundPool.Builder()
+                .setMaxStreams(maxStreams)   // Play max N concurrent sounds
+                .build();
+        assets = context.getAssets();
+        resources = context.getResources();
+        this.diskCache = diskCache;
+    }
+
+    @Override
+    public void setOnLoadedListener(OnLoadedListener listener) {
+        pool.setOnLoadCompleteListener((soundPool, sampleId, status) -> listener.onLoaded(sampleId, status == 0));
+    }
+
+    @Override
+    public int loadNote(String soundSetName, int noteNum) throws IOException {
+        try (AssetFileDescriptor afd = assets.openFd(SamplePool.noteAssetPath(soundSetName, noteNum))) {
+            return load(afd, diskCache.noteFile(soundSetName, noteNum));
+        }
+    }
+
+    @Override
+    public int loadNoNote() throws IOException {
+        try (AssetFileDescriptor afd = resources.openRawResourceFd(R.raw.no_note)) {
+            return load(afd, diskCache.noNoteFile());
+        }
+    }
+
+    /**
+     * Loads the decoded copy from <code>cached</code>, decoding it first if needed: SoundPool can load that
+     * without going through the mp3 codec. Falls back to the mp3 itself when the cache can't be used.
+     */
+    private int load(AssetFileDescriptor afd, File cached) {
+        loadedFileBytes += afd.getLength();
+        try {
+            return pool.load(diskCache.ensureCached(cached, () -> PcmDecoder.decode(afd)).getPath(), 1);
+        } catch (IOException e) {
+            Log.w("PianOli::SoundPool", "Can't use decoded cache " + cached + ", loading mp3: " + e.getMessage());
+            return pool.load(afd, 1);
+        }
+    }
+
+    @Override
+    public int play(int sampleId, float rate) {
+        return pool.play(sampleId, 1, 1, 1, 0, rate);
+    }
+
+    @Override
+    public void stop(int streamId) {
+        pool.stop(streamId);
+    }
+
+    @Override
+    public void setVolume(int streamId, float volume) {
+        pool.setVolume(streamId, volume, volume);
+    }
+
+    @Override
+    public long getLoadedFileBytes() {
+        return loadedFileBytes;
+    }
+
+    @Override
+    public void release() {
+        pool.release();
+    }
+}
@@ -1,5 +1,6 @@
 package com.nicobrailo.pianoli.sound;
 
+import android.content.Context;
 import android.content.res.AssetManager;
 
 import java.io.IOException;
@@ -71,7 +72,64 @@ public interface SoundSet extends AutoCloseable {
         return Collections.emptyList();
     }
 
+    /**
+     * Creates the soundset of the given name: synthesized for {@link SynthSoundSet#SOUNDSET_NAME}, sampled otherwise.
+     *
+     * @param lowLatency  for sampled soundsets, whether to use our own mixer instead of android's SoundPool,
+     *                    see {@link SampledSoundSet#SampledSoundSet(Context, String, boolean, int)}.
+     * @param visibleKeys for sampled soundsets, how many keys are on screen, to load their notes first.
+     */
+    static SoundSet create(Context context, String soundSetName, boolean lowLatency, int visibleKeys) {
+        if (SynthSoundSet.SOUNDSET_NAME.equals(stripPrefix(soundSetName))) {
+            return new SynthSoundSet(context);
+        }
+        return new SampledSoundSet(context, soundSetName, lowLatency, visibleKeys);
+    }
+
     void playNote(int keyIdx);
 
+    /**
+     * Tells the soundset that the key that played note <code>keyIdx</code> was lifted.
+     *
+     * <p>
+     * Soundsets that support it fade the note out, if enabled via {@link #setReleaseMillis(int)}.
+     * By default, notes ring to their natural end.
+     * </p>
+     */
+    default void releaseNote(int keyIdx) {
+        // Nothing to do.
+    }
+
+    /**
+     * Sets how long (milliseconds) {@link #releaseNote(int)} takes to fade a note to silence.
+     *
+     * @param releaseMillis fade duration, or 0 to not fade at all, and let notes ring to their natural end.
+     */
+    default void setReleaseMillis(int releaseMillis) {
+        // Nothing to do, we don't fade anyway.
+    }
+
     void close();
+
+    /**
+     * Rough estimate of the memory held by this soundset, e.g. for its decoded samples.
+     *
+     * @return estimated size in bytes, or 0 if negligible.
+     * @see SoundSetCache
+     */
+    default long getEstimatedMemoryBytes() {
+        return 0;
+    }
+
+    /**
+     * Calls <code>callback</code> once all notes are ready to be played.
+     *
+     * <p>
+     * Soundsets that load in the background call it from whichever thread finishes loading.
+     * By default, soundsets are ready immediately, and call it right away.
+     * </p>
+     */
+    default void whenReady(Runnable callback) {
+        callback.run();
+    }
 }
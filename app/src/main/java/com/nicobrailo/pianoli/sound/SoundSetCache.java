@@ -0,0 +1,196 @@
+package com.nicobrailo.pianoli.sound;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+/**
+ * Small LRU cache of loaded {@link SoundSet}s, keyed by soundset name.
+ *
+ * <p>
+ * Loading a soundset means decoding all its samples, which is by far the most expensive thing we do.
+ * This cache ensures that returning from the settings screen, or flipping back and forth between two instruments,
+ * doesn't pay that price again.
+ * </p>
+ * <p>
+ * The cache <em>owns</em> its soundsets: users must not {@link SoundSet#close()} what they get from {@link #get(String)}.
+ * Evicted soundsets are closed by the cache. Memory is accounted via {@link SoundSet#getEstimatedMemoryBytes()};
+ * least-recently-used entries are evicted when either the entry- or the memory budget is exceeded,
+ * except for the most recently used one, which is always kept.
+ * </p>
+ * <p>
+ * Soundsets may load in the background, so a freshly loaded one only accounts for part of its memory at first. The
+ * budget is checked again once it has {@linkplain SoundSet#whenReady(Runnable) finished loading}, so it's never
+ * more than one soundset over for long.
+ * </p>
+ * <p>
+ * Not thread-safe; intended to be used from the UI thread only. Hence the <code>uiThread</code> executor in the
+ * constructor: that's where the re-check after loading runs.
+ * </p>
+ */
+public class SoundSetCache {
+    private static final String TAG = "PianOli::SoundSetCache";
+
+    /** Default maximum amount of simultaneously loaded soundsets. */
+    public static final int DEFAULT_MAX_ENTRIES = 3;
+
+    /** Default memory budget (bytes) for all cached soundsets together. */
+    public static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+    /**
+     * Strategy for actually loading a soundset on a cache-miss.
+     */
+    public interface Loader {
+        @NonNull
+        SoundSet load(@NonNull String soundSetName);
+    }
+
+    private final Loader loader;
+    private final Executor uiThread;
+    private final int maxEntries;
+    private final long maxBytes;
+
+    /** access-ordered, so iteration starts at the least recently used entry */
+    private final LinkedHashMap<String, SoundSet> entries = new LinkedHashMap<>(4, 0.75f, true);
+
+    private int hits;
+    private int misses;
+    private int evictions;
+    private long totalLoadNanos;
+
+    /**
+     * @param uiThread runs tasks on the thread that uses this cache, e.g. <code>view::post</code>.
+     */
+    public SoundSetCache(@NonNull Loader loader, @NonNull Executor uiThread) {
+        this(loader, uiThread, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+    }
+
+    public SoundSetCache(@NonNull Loader loader, @NonNull Executor uiThread, int maxEntries, long maxBytes) {
+        Objects.requireNonNull(loader, "Need a loader for cache misses, otherwise I have no reason to exist");
+        Objects.requireNonNull(uiThread, "Need the UI thread, to re-check the budget after background loading");
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Cache must be able to hold at least the soundset in use, but maxEntries=" + maxEntries);
+        }
+
+        this.loader = loader;
+        this.uiThread = uiThread;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the named soundset, loading it if it isn't cached yet.
+     *
+     * <p>
+     * The returned soundset becomes the most recently used one. Loading may evict other soundsets.
+     * </p>
+     */
+    @NonNull
+    public SoundSet get(@NonNull String soundSetName) {
+        SoundSet cached = entries.get(soundSetName);
+        if (cached != null) {
+            hits++;
+            Log.d(TAG, "hit for " + soundSetName + "; " + this);
+            return cached;
+        }
+
+        misses++;
+        long start = System.nanoTime();
+        SoundSet loaded = loader.load(soundSetName);
+        totalLoadNanos += System.nanoTime() - start;
+
+        entries.put(soundSetName, loaded);
+        evictWhileOver(maxEntries, maxBytes);
+        // Most of its memory only shows up once it's loaded; that may put us over budget after all.
+        loaded.whenReady(() -> uiThread.execute(() -> evictWhileOver(maxEntries, maxBytes)));
+
+        Log.d(TAG, "miss for " + soundSetName + "; " + this);
+        return loaded;
+    }
+
+    /**
+     * Releases all soundsets, except the most recently used one (which is presumably still in use).
+     */
+    public void trimToCurrent() {
+        evictWhileOver(1, Long.MAX_VALUE);
+    }
+
+    /**
+     * Releases <em>all</em> soundsets, including the one in use.
+     *
+     * <p>
+     * Only safe when nothing can play notes anymore until the next {@link #get(String)}.
+     * </p>
+     */
+    public void clear() {
+        evictWhileOver(0, 0);
+    }
+
+    /**
+     * Closes least-recently-used soundsets until there are at most <code>entryLimit</code> entries,
+     * and the accounted memory is at most <code>byteLimit</code>.
+     * The most recently used entry is only evicted if <code>entryLimit</code> is zero.
+     */
+    private void evictWhileOver(int entryLimit, long byteLimit) {
+        Iterator<Map.Entry<String, SoundSet>> lru = entries.entrySet().iterator();
+        while (lru.hasNext()) {
+            boolean overBudget = entries.size() > entryLimit || getCachedBytes() > byteLimit;
+            boolean isLastOne = entries.size() == 1 && entryLimit > 0;
+            if (!overBudget || isLastOne) {
+                return;
+            }
+
+            Map.Entry<String, SoundSet> victim = lru.next();
+            lru.remove();
+            evictions++;
+            Log.d(TAG, "evicting " + victim.getKey());
+            victim.getValue().close();
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the accounted memory of all cached soundsets, in bytes.
+     *          Recalculated on every call, since soundsets that load in the background grow over time.
+     */
+    public long getCachedBytes() {
+        long total = 0;
+        for (SoundSet soundSet : entries.values()) {
+            total += soundSet.getEstimatedMemoryBytes();
+        }
+        return total;
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    public int getEvictions() {
+        return evictions;
+    }
+
+    /** @return total time spent in the {@link Loader}, for all misses together */
+    public long getTotalLoadMillis() {
+        return totalLoadNanos / 1_000_000;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "SoundSetCache[entries=%d, kiB=%d, hits=%d, misses=%d, evictions=%d, loadMs=%d]",
+                entries.size(), getCachedBytes() / 1024, hits, misses, evictions, getTotalLoadMillis());
+    }
+}
@@ -24,7 +24,15 @@ public class StraightKeySoundMaker implements PianoListener {
 
     @Override
     public void onKeyUp(int keyIdx) {
-        // Nothing to do.
-        // We don't stop already-running samples from playing, since they're short anyway.
+        // Soundset decides whether to fade out, or let the note ring, see SoundSet#setReleaseMillis.
+        soundSet.releaseNote(keyIdx);
+    }
+
+    /**
+     * Sound makers go first, so a key-press is never kept waiting for a redraw before it is heard.
+     */
+    @Override
+    public Priority getPriority() {
+        return Priority.AUDIO;
     }
 }
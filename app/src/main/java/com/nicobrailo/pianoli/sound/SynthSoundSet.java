@@ -0,0 +1,109 @@
+package com.nicobrailo.pianoli.sound;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.nicobrailo.pianoli.PianoLog;
+
+/**
+ * {@link SoundSet} that synthesizes its notes in real time, rather than playing samples.
+ *
+ * <p>
+ * Replaces the sine-wave soundset: no assets to load, so it is ready instantly, and it only needs a wavetable and
+ * a small output buffer, instead of two dozen decoded samples.
+ * </p>
+ * <p>
+ * {@link AudioOutput} renders {@link WavetableSynth}'s voices into a streaming AudioTrack, on its own thread.
+ * It sleeps whenever nothing is sounding, so an idle piano costs no CPU.
+ * </p>
+ */
+public class SynthSoundSet implements SoundSet {
+    private static final String TAG = "PianOli::SynthSoundSet";
+
+    /**
+     * Name of the soundset we replace; its asset folder is kept, since that is what makes it show up in the settings.
+     */
+    public static final String SOUNDSET_NAME = "sine";
+
+    /** Pitch of key 0: middle C */
+    static final double BASE_FREQUENCY_HZ = 261.63;
+    /** Highest pitch we play (C8); higher keys are folded down by octaves, which also keeps us clear of aliasing */
+    static final double MAX_FREQUENCY_HZ = 4186.01;
+    /** How long a note takes to fade out by itself */
+    static final int NOTE_DECAY_MS = 1200;
+
+    /** Keys without a note get a short, low thud instead */
+    static final double NO_NOTE_FREQUENCY_HZ = 82.41;
+    static final int NO_NOTE_DECAY_MS = 80;
+
+    private final WavetableSynth synth;
+    private final AudioOutput output;
+
+    private volatile boolean closed;
+    private volatile int releaseMillis;
+
+    public SynthSoundSet(Context context) {
+        int sampleRate = AudioOutput.nativeSampleRate(context);
+        synth = new WavetableSynth(sampleRate);
+        output = new AudioOutput(context, sampleRate, synth, "PianOli-Synth");
+    }
+
+    /**
+     * @return the pitch of <code>keyIdx</code>, in Hz, or 0 if the key has no note.
+     */
+    static double frequencyOf(int keyIdx) {
+        int semitone = NoteTable.semitoneOf(keyIdx);
+        if (semitone == NoteTable.NO_NOTE) {
+            return 0;
+        }
+
+        double frequency = BASE_FREQUENCY_HZ * Math.pow(2, semitone / 12.0);
+        while (frequency > MAX_FREQUENCY_HZ) {
+            frequency /= 2;
+        }
+        return frequency;
+    }
+
+    @Override
+    public void playNote(int keyIdx) {
+        if (keyIdx < 0) {
+            PianoLog.d(TAG, "This shouldn't happen: Sound out of range: ", keyIdx);
+            return;
+        }
+        if (closed) {
+            return;
+        }
+
+        double frequency = frequencyOf(keyIdx);
+        if (frequency == 0) {
+            synth.noteOn(keyIdx, NO_NOTE_FREQUENCY_HZ, NO_NOTE_DECAY_MS);
+        } else {
+            synth.noteOn(keyIdx, frequency, NOTE_DECAY_MS);
+        }
+    }
+
+    @Override
+    public void releaseNote(int keyIdx) {
+        int release = releaseMillis;
+        if (release > 0) {
+            synth.noteOff(keyIdx, release);
+        }
+    }
+
+    @Override
+    public void setReleaseMillis(int releaseMillis) {
+        this.releaseMillis = Math.max(0, releaseMillis);
+    }
+
+    @Override
+    public long getEstimatedMemoryBytes() {
+        return WavetableSynth.getEstimatedMemoryBytes() + output.getBufferBytes();
+    }
+
+    @Override
+    public void close() {
+        Log.d(TAG, "releasing synth");
+        closed = true;
+        output.close();
+    }
+}
@@ -0,0 +1,215 @@
+package com.nicobrailo.pianoli.sound;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides which sounds may play, when more keys are pressed than the mixer can handle.
+ *
+ * <p>
+ * Tracks the streams ("voices") started on a {@link SamplePool}, so that we, rather than the mixer, choose
+ * which sounds get cut off:
+ * <ul>
+ *     <li><b>choke</b>: re-triggering a key stops its previous voice, so hammering one key doesn't pile up
+ *     copies of the same note;</li>
+ *     <li><b>steal</b>: when all voices are busy, the oldest one is stopped to make room, since it has mostly
+ *     faded out anyway. Voices that are already being released go first.</li>
+ *     <li><b>release</b>: optionally, a voice is faded out once its key is lifted, and stopped at silence, which frees
+ *     it long before its sample would have ended by itself.</li>
+ * </ul>
+ * We're never told when a sample finishes playing, so voices older than {@link #VOICE_LIFETIME_MS} are assumed to
+ * have ended by themselves.
+ * </p>
+ */
+class VoiceAllocator {
+    /**
+     * How long (milliseconds) a voice is assumed to keep playing. Comfortably longer than our longest sample.
+     */
+    static final long VOICE_LIFETIME_MS = 2000;
+
+    /** Marker for unused voice slots */
+    private static final int FREE = 0;
+
+    private final SamplePool pool;
+    private final long lifetimeNanos;
+
+    /** stream id per voice slot, or {@link #FREE} */
+    private final int[] streams;
+    /** key index that started the voice in each slot */
+    private final int[] keys;
+    /** start time (nanos) of the voice in each slot */
+    private final long[] startedAt;
+    /** whether the voice in each slot is fading out, see {@link #noteOff(int, long)} */
+    private final boolean[] releasing;
+    /** start time (nanos) of the fade of each releasing voice */
+    private final long[] releasedAt;
+
+    private int voicesStolen;
+    private int voicesChoked;
+    private int notesDropped;
+    private int voicesReleased;
+
+    VoiceAllocator(SamplePool pool, int maxVoices) {
+        this.pool = pool;
+        this.lifetimeNanos = TimeUnit.MILLISECONDS.toNanos(VOICE_LIFETIME_MS);
+        this.streams = new int[maxVoices];
+        this.keys = new int[maxVoices];
+        this.startedAt = new long[maxVoices];
+        this.releasing = new boolean[maxVoices];
+        this.releasedAt = new long[maxVoices];
+    }
+
+    /**
+     * Plays <code>sampleId</code> for key <code>keyIdx</code>, making room for it first if needed.
+     *
+     * @param rate playback rate, see {@link SamplePool#play(int, float)}
+     * @param now  current time (nanos), see {@link System#nanoTime()}
+     */
+    synchronized void noteOn(int keyIdx, int sampleId, float rate, long now) {
+        int slot = pickSlot(keyIdx, now);
+
+        int streamId = pool.play(sampleId, rate);
+        if (streamId == FREE) {
+            notesDropped++;
+        }
+        streams[slot] = streamId;
+        keys[slot] = keyIdx;
+        startedAt[slot] = now;
+        releasing[slot] = false;
+    }
+
+    /**
+     * Chooses the slot for a new voice of <code>keyIdx</code>, stopping whatever plays in it.
+     */
+    private int pickSlot(int keyIdx, long now) {
+        int free = -1;
+        int oldest = 0;
+        for (int slot = 0; slot < streams.length; slot++) {
+            if (streams[slot] != FREE && now - startedAt[slot] > lifetimeNanos) {
+                streams[slot] = FREE; // must have ended by itself by now.
+            }
+
+            if (streams[slot] == FREE) {
+                if (free < 0) {
+                    free = slot;
+                }
+            } else if (keys[slot] == keyIdx) {
+                // choke: re-triggered key cuts off its own previous voice
+                voicesChoked++;
+                pool.stop(streams[slot]);
+                streams[slot] = FREE;
+                return slot;
+            } else if (streams[oldest] == FREE || isStolenBefore(slot, oldest)) {
+                oldest = slot;
+            }
+        }
+
+        if (free >= 0) {
+            return free;
+        }
+
+        // steal: all voices busy, sacrifice the oldest.
+        voicesStolen++;
+        pool.stop(streams[oldest]);
+        streams[oldest] = FREE;
+        return oldest;
+    }
+
+    /**
+     * @return whether the voice in slot <code>a</code> is a better victim to steal than the one in <code>b</code>:
+     *          a fading voice is the least missed, otherwise the oldest.
+     */
+    private boolean isStolenBefore(int a, int b) {
+        if (releasing[a] != releasing[b]) {
+            return releasing[a];
+        }
+        return startedAt[a] < startedAt[b];
+    }
+
+    /**
+     * Starts fading out the voice of key <code>keyIdx</code>, if it is (still) playing.
+     * The actual fade happens in {@link #tickReleases(long, long)}.
+     *
+     * @param now current time (nanos), see {@link System#nanoTime()}
+     * @return <code>true</code> if a fade was started.
+     */
+    synchronized boolean noteOff(int keyIdx, long now) {
+        for (int slot = 0; slot < streams.length; slot++) {
+            if (streams[slot] != FREE && keys[slot] == keyIdx && !releasing[slot]
+                    && now - startedAt[slot] <= lifetimeNanos) {
+                releasing[slot] = true;
+                releasedAt[slot] = now;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Advances the fade of all releasing voices: lowers their volume, and stops those that reached silence.
+     *
+     * @param now          current time (nanos), see {@link System#nanoTime()}
+     * @param releaseNanos how long a fade from full volume to silence takes.
+     * @return <code>true</code> while there are voices left to fade.
+     */
+    synchronized boolean tickReleases(long now, long releaseNanos) {
+        boolean fading = false;
+        for (int slot = 0; slot < streams.length; slot++) {
+            if (streams[slot] == FREE || !releasing[slot]) {
+                continue;
+            }
+
+            long elapsed = now - releasedAt[slot];
+            if (elapsed >= releaseNanos) {
+                voicesReleased++;
+                pool.stop(streams[slot]);
+                streams[slot] = FREE;
+            } else {
+                // squared, so the fade sounds even to our (logarithmic) ears, instead of lingering at the end.
+                float remaining = 1f - (float) elapsed / releaseNanos;
+                pool.setVolume(streams[slot], remaining * remaining);
+                fading = true;
+            }
+        }
+        return fading;
+    }
+
+    /**
+     * Records a note that could not be played at all, e.g. because its sample wasn't loaded in time.
+     */
+    synchronized void noteDropped() {
+        notesDropped++;
+    }
+
+    /**
+     * @return amount of voices that currently (are assumed to) play.
+     */
+    synchronized int activeVoices(long now) {
+        int active = 0;
+        for (int slot = 0; slot < streams.length; slot++) {
+            if (streams[slot] != FREE && now - startedAt[slot] <= lifetimeNanos) {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    /** @return how often a playing voice was cut off to make room for a new note of another key */
+    synchronized int getVoicesStolen() {
+        return voicesStolen;
+    }
+
+    /** @return how often a playing voice was cut off because its own key was pressed again */
+    synchronized int getVoicesChoked() {
+        return voicesChoked;
+    }
+
+    /** @return how many voices were stopped early, after fading out on key-up */
+    synchronized int getVoicesReleased() {
+        return voicesReleased;
+    }
+
+    /** @return how many notes could not be played at all */
+    synchronized int getNotesDropped() {
+        return notesDropped;
+    }
+}
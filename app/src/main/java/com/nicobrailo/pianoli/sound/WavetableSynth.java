@@ -0,0 +1,225 @@
+package com.nicobrailo.pianoli.sound;
+
+/**
+ * Tiny polyphonic synthesizer: mixes a handful of sine-wave voices, read from a wavetable, into 16-bit PCM.
+ *
+ * <p>
+ * Each voice has a simple chime-like envelope: a click-free attack, then an exponential decay; optionally cut short by
+ * a faster release via {@link #noteOff(int, int)}. When all voices are busy, the quietest one is taken over.
+ * </p>
+ * <p>
+ * Plain Java on purpose, without any android dependencies, so it can be tested and benchmarked on the JVM.
+ * {@link #render(short[], int)} doesn't allocate, so it is safe to call from an audio thread.
+ * Notes may be started and stopped from any thread.
+ * </p>
+ *
+ * @see SynthSoundSet
+ */
+class WavetableSynth implements PcmSource {
+    /** log2 of the wavetable size */
+    private static final int TABLE_BITS = 10;
+    static final int TABLE_SIZE = 1 << TABLE_BITS;
+    /** Bits of the phase accumulator below the table index, used for interpolation */
+    private static final int FRACTION_BITS = 32 - TABLE_BITS;
+    private static final float FRACTION_SCALE = 1f / (1 << FRACTION_BITS);
+
+    /**
+     * One period of a sine wave, with the first sample repeated at the end, so interpolation never has to wrap.
+     */
+    private static final float[] SINE = new float[TABLE_SIZE + 1];
+
+    static {
+        for (int i = 0; i <= TABLE_SIZE; i++) {
+            SINE[i] = (float) Math.sin(2 * Math.PI * i / TABLE_SIZE);
+        }
+    }
+
+    /** How many notes can sound at once */
+    static final int MAX_VOICES = 8;
+
+    /**
+     * Volume of a single voice at full envelope; leaves headroom for a few simultaneous notes before clipping.
+     */
+    static final float VOICE_GAIN = 0.3f;
+
+    /** Fade-in time (milliseconds), just long enough to avoid an audible click */
+    static final int ATTACK_MS = 5;
+
+    /** Envelope level below which a voice is considered silent, and freed. Roughly -80dB. */
+    private static final float SILENCE = 1e-4f;
+
+    private final int sampleRate;
+    private final int attackSamples;
+
+    /** key index per voice */
+    private final int[] keys = new int[MAX_VOICES];
+    /** phase accumulator per voice: a full 32-bit wrap is one period */
+    private final int[] phases = new int[MAX_VOICES];
+    /** phase increment per sample, per voice */
+    private final int[] phaseSteps = new int[MAX_VOICES];
+    /** envelope level per voice, 0 for free voices */
+    private final float[] levels = new float[MAX_VOICES];
+    /** remaining attack samples per voice */
+    private final int[] attacksLeft = new int[MAX_VOICES];
+    /** per-sample envelope multiplier per voice: the decay, or the faster release after {@link #noteOff(int, int)} */
+    private final float[] decays = new float[MAX_VOICES];
+
+    WavetableSynth(int sampleRate) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("Can't synthesize at a sample rate of " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+        this.attackSamples = Math.max(1, sampleRate * ATTACK_MS / 1000);
+    }
+
+    int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Starts a note. Re-triggering a key that still sounds restarts its envelope, without resetting its phase,
+     * which would click.
+     *
+     * @param keyIdx      identifies the note for {@link #noteOff(int, int)}
+     * @param frequency   pitch, in Hz; should stay well below half the sample rate.
+     * @param decayMillis time for the note to fade by 60dB by itself.
+     */
+    synchronized void noteOn(int keyIdx, double frequency, int decayMillis) {
+        int voice = pickVoice(keyIdx);
+        keys[voice] = keyIdx;
+        phaseSteps[voice] = (int) (long) (frequency / sampleRate * (1L << 32));
+        attacksLeft[voice] = attackSamples;
+        decays[voice] = decayFactor(decayMillis);
+        if (levels[voice] < SILENCE) {
+            phases[voice] = 0;
+            levels[voice] = SILENCE; // attack starts from silence; non-zero, so the voice counts as busy.
+        }
+        notifyAll(); // wakes up awaitActive()
+    }
+
+    /**
+     * Fades out the note of <code>keyIdx</code>, if it still sounds.
+     *
+     * @param releaseMillis time to fade by 60dB.
+     */
+    synchronized void noteOff(int keyIdx, int releaseMillis) {
+        float release = decayFactor(releaseMillis);
+        for (int voice = 0; voice < MAX_VOICES; voice++) {
+            if (levels[voice] > 0 && keys[voice] == keyIdx) {
+                attacksLeft[voice] = 0;
+                decays[voice] = Math.min(decays[voice], release);
+            }
+        }
+    }
+
+    /**
+     * @return the voice already playing <code>keyIdx</code>, else a free one, else the quietest one.
+     */
+    private int pickVoice(int keyIdx) {
+        int quietest = 0;
+        for (int voice = 0; voice < MAX_VOICES; voice++) {
+            if (levels[voice] > 0 && keys[voice] == keyIdx) {
+                return voice;
+            }
+            if (levels[voice] < levels[quietest]) {
+                quietest = voice;
+            }
+        }
+        return quietest;
+    }
+
+    /**
+     * @return per-sample multiplier that reduces a level by 60dB (a factor 1000) over <code>millis</code>.
+     */
+    private float decayFactor(int millis) {
+        double samples = Math.max(1, (double) sampleRate * millis / 1000);
+        return (float) Math.pow(0.001, 1 / samples);
+    }
+
+    /**
+     * Mixes all sounding voices into <code>out[0..frames-1]</code>, overwriting what was there.
+     *
+     * @return amount of voices still sounding afterwards.
+     */
+    @Override
+    public synchronized int render(short[] out, int frames) {
+        for (int i = 0; i < frames; i++) {
+            out[i] = 0;
+        }
+
+        int active = 0;
+        for (int voice = 0; voice < MAX_VOICES; voice++) {
+            if (levels[voice] > 0) {
+                renderVoice(voice, out, frames);
+                if (levels[voice] > 0) {
+                    active++;
+                }
+            }
+        }
+        return active;
+    }
+
+    /**
+     * Adds one voice to the mix, advancing its phase and envelope.
+     */
+    private void renderVoice(int voice, short[] out, int frames) {
+        int phase = phases[voice];
+        final int step = phaseSteps[voice];
+        float level = levels[voice];
+        int attackLeft = attacksLeft[voice];
+        final float decay = decays[voice];
+        final float attackStep = 1f / attackSamples;
+
+        for (int i = 0; i < frames; i++) {
+            if (attackLeft > 0) {
+                level = Math.min(1f, level + attackStep);
+                attackLeft--;
+            } else {
+                level *= decay;
+                if (level < SILENCE) {
+                    level = 0;
+                    break;
+                }
+            }
+
+            int index = phase >>> FRACTION_BITS;
+            float fraction = (phase & ((1 << FRACTION_BITS) - 1)) * FRACTION_SCALE;
+            float sample = SINE[index] + (SINE[index + 1] - SINE[index]) * fraction;
+            phase += step;
+
+            int mixed = out[i] + (int) (sample * level * VOICE_GAIN * Short.MAX_VALUE);
+            out[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, mixed));
+        }
+
+        phases[voice] = phase;
+        levels[voice] = level;
+        attacksLeft[voice] = attackLeft;
+    }
+
+    /**
+     * @return <code>true</code> if no voice is sounding.
+     */
+    @Override
+    public synchronized boolean isIdle() {
+        for (float level : levels) {
+            if (level > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void awaitActive() throws InterruptedException {
+        while (isIdle()) {
+            wait();
+        }
+    }
+
+    /**
+     * Approximate memory held by the wavetable, and the voices.
+     */
+    static long getEstimatedMemoryBytes() {
+        return SINE.length * 4L + MAX_VOICES * (4 + 4 + 4 + 4 + 4 + 4);
+    }
+}
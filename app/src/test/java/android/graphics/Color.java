@@ -8,53 +8,61 @@ package android.graphics;
  * provided by the Android Gradle Plugin.<br>
  * This is a low-tech way of avoiding a full-featured mocking dependency like Powermock or Mockito.
  * </p>
+ * <p>
+ * The packing and unpacking are the same plain bit-twiddling as android's, so colours computed in tests (e.g. by
+ * {@link androidx.core.graphics.ColorUtils}) are the real ones.
+ * </p>
  */
 public class Color {
+    public static final int BLACK = 0xFF000000;
+    public static final int GRAY = 0xFF888888;
+    public static final int WHITE = 0xFFFFFFFF;
+
     /**
      * Needed for {@link com.nicobrailo.pianoli.Theme#BLACK_AND_WHITE}
      * @noinspection unused
      */
     public static int rgb(int red, int green, int blue) {
-        return 0;
+        return argb(0xFF, red, green, blue);
     }
 
     /**
      * Used internally in {@link androidx.core.graphics.ColorUtils}, which is used by {@link com.nicobrailo.pianoli.Theme.KeyColor#createLighterWhenPressed(int, float)}
      * @noinspection unused
      */
-    public static int alpha(int a) {
-        return 0;
+    public static int alpha(int color) {
+        return color >>> 24;
     }
 
     /**
      * Used internally in {@link androidx.core.graphics.ColorUtils}, which is used by {@link com.nicobrailo.pianoli.Theme.KeyColor#createLighterWhenPressed(int, float)}
      * @noinspection unused
      */
-    public static int red(int a) {
-        return 0;
+    public static int red(int color) {
+        return (color >> 16) & 0xFF;
     }
 
     /**
      * Used internally in {@link androidx.core.graphics.ColorUtils}, which is used by {@link com.nicobrailo.pianoli.Theme.KeyColor#createLighterWhenPressed(int, float)}
      * @noinspection unused
      */
-    public static int green(int a) {
-        return 0;
+    public static int green(int color) {
+        return (color >> 8) & 0xFF;
     }
 
     /**
      * Used internally in {@link androidx.core.graphics.ColorUtils}, which is used by {@link com.nicobrailo.pianoli.Theme.KeyColor#createLighterWhenPressed(int, float)}
      * @noinspection unused
      */
-    public static int blue(int a) {
-        return 0;
+    public static int blue(int color) {
+        return color & 0xFF;
     }
 
     /**
      * Used internally in {@link androidx.core.graphics.ColorUtils}, which is used by {@link com.nicobrailo.pianoli.Theme.KeyColor#createLighterWhenPressed(int, float)}
      * @noinspection unused
      */
-    public static int argb(int a, int r, int g, int b) {
-        return 0;
+    public static int argb(int alpha, int red, int green, int blue) {
+        return (alpha << 24) | (red << 16) | (green << 8) | blue;
     }
 }
@@ -0,0 +1,22 @@
+package android.os;
+
+/**
+ * Minimal test double for thread priorities, so tests can run the {@link com.nicobrailo.pianoli.AudioDispatcher}'s
+ * audio thread.
+ *
+ * <p>
+ * When test-compiling, this will shadow the default (not-mocked-exception-throwing) implementation
+ * provided by the Android Gradle Plugin.<br>
+ * This is a low-tech way of avoiding a full-featured mocking dependency like Powermock or Mockito.
+ * </p>
+ * <p>
+ * Priorities are a scheduling hint; on the JVM, we simply ignore them.
+ * </p>
+ */
+public class Process {
+    public static final int THREAD_PRIORITY_URGENT_AUDIO = -19;
+
+    public static void setThreadPriority(int priority) {
+        // Nothing to do: the JVM schedules its threads itself.
+    }
+}
@@ -16,6 +16,11 @@ package android.util;
  * @noinspection unused
  */
 public class Log {
+    public static int v(String tag, String msg) {
+        System.out.println("VERBOSE: " + tag + ": " + msg);
+        return 0;
+    }
+
     public static int d(String tag, String msg) {
         System.out.println("DEBUG: " + tag + ": " + msg);
         return 0;
@@ -70,6 +70,21 @@ class AppConfigTriggerTest {
         }
     }
 
+    @Test
+    public void copyPressedConfigKeysInPressOrder() {
+        int[] pressed = new int[AppConfigTrigger.CONFIG_TRIGGER_COUNT];
+        assertEquals(0, trigger.copyPressedConfigKeys(pressed));
+
+        int first = trigger.getNextExpectedKey();
+        trigger.onKeyDown(first);
+        assertEquals(1, trigger.copyPressedConfigKeys(pressed));
+        assertEquals(first, pressed[0]);
+        assertNotEquals(first, trigger.getNextExpectedKey(), "held keys must not be chosen again");
+
+        trigger.onKeyUp(first);
+        assertEquals(0, trigger.copyPressedConfigKeys(pressed), "releasing resets progress");
+    }
+
     /**
      * When touching any key that <em>isn't</em> a config key, the next expected key
      * should remain constant, to avoid the gear icon twitching on every key-press.
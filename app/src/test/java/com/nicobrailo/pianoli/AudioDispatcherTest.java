@@ -0,0 +1,363 @@
+package com.nicobrailo.pianoli;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AudioDispatcherTest {
+    private Piano piano;
+    private AudioDispatcher dispatcher;
+
+    @BeforeEach
+    void setup() {
+        piano = new Piano(1920, 1080);
+        dispatcher = new AudioDispatcher(piano);
+        piano.addListener(dispatcher);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.quit();
+    }
+
+    /**
+     * Records events, with the thread they arrived on.
+     */
+    private static class EventLog implements PianoListener {
+        final String name;
+        final List<String> events;
+        final PianoListener.Priority priority;
+        volatile Thread lastThread;
+
+        EventLog(String name, List<String> events, Priority priority) {
+            this.name = name;
+            this.events = events;
+            this.priority = priority;
+        }
+
+        @Override
+        public void onKeyDown(int keyIdx) {
+            lastThread = Thread.currentThread();
+            events.add(name + " down " + keyIdx);
+        }
+
+        @Override
+        public void onKeyUp(int keyIdx) {
+            lastThread = Thread.currentThread();
+            events.add(name + " up " + keyIdx);
+        }
+
+        @Override
+        public Priority getPriority() {
+            return priority;
+        }
+    }
+
+    @Test
+    void eventsQueueUntilDrained() {
+        SpyListener spy = new SpyListener();
+        dispatcher.addListener(spy);
+
+        piano.doKeyDown(4);
+        piano.doKeyUp(4);
+        assertEquals(0, spy.downCount, "not started, nor drained");
+
+        assertEquals(2, dispatcher.drain());
+        assertEquals(1, spy.downCount);
+        assertEquals(4, spy.lastUpIdx);
+    }
+
+    @Test
+    void listenersNotifiedByPriority() {
+        List<String> events = new ArrayList<>();
+        dispatcher.addListener(new EventLog("state", events, PianoListener.Priority.STATE));
+        dispatcher.addListener(new EventLog("audio", events, PianoListener.Priority.AUDIO));
+
+        piano.doKeyDown(2);
+        dispatcher.drain();
+        assertEquals(Arrays.asList("audio down 2", "state down 2"), events);
+    }
+
+    @Test
+    void addAndRemove() {
+        SpyListener spy = new SpyListener();
+        assertTrue(dispatcher.addListener(spy));
+        assertFalse(dispatcher.addListener(spy), "no double subscriptions");
+        assertTrue(dispatcher.removeListener(spy));
+        assertFalse(dispatcher.removeListener(spy));
+
+        piano.doKeyDown(2);
+        dispatcher.drain();
+        assertEquals(0, spy.downCount);
+    }
+
+    @Test
+    void eventTimesPassedOn() {
+        List<Long> times = new ArrayList<>();
+        dispatcher.addListener(new SpyListener() {
+            @Override
+            public void onKeyDown(int keyIdx) {
+                times.add(dispatcher.getEventTime());
+            }
+        });
+
+        piano.doKeyDown(0, 123);
+        piano.doKeyDown(2, Piano.UNKNOWN_TIME);
+        dispatcher.drain();
+        assertEquals(Arrays.asList(123L, Piano.UNKNOWN_TIME), times);
+    }
+
+    @Test
+    void playNoteTracedAfterSoundMakers() {
+        // A slow sound maker: its delay is part of the touch-to-sound latency.
+        dispatcher.addListener(new SpyListener() {
+            @Override
+            public void onKeyDown(int keyIdx) {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        LatencyTracer tracer = LatencyTracer.get();
+        tracer.reset();
+        LatencyTracer.setEnabled(true);
+        try {
+            // The tracer's clock, in the time base of event times.
+            piano.doKeyDown(0, System.nanoTime() / 1_000_000);
+            piano.doKeyUp(0, System.nanoTime() / 1_000_000);
+            dispatcher.drain();
+        } finally {
+            LatencyTracer.setEnabled(false);
+        }
+
+        LatencyHistogram playNote = tracer.getHistogram(LatencyTracer.Stage.PLAY_NOTE);
+        assertEquals(1, playNote.getCount(), "only key-downs are traced");
+        assertTrue(playNote.getPercentileMicros(50) >= 4_000, "must include the sound maker's 5ms");
+        tracer.reset();
+    }
+
+    @Test
+    void droppedWhenFullAndNotRunning() {
+        for (int i = 0; i < AudioDispatcher.CAPACITY + 10; i++) {
+            piano.doKeyDown(0); // mustn't hang
+        }
+        // The last slots are reserved for key-ups, one per key.
+        final int fit = AudioDispatcher.CAPACITY - piano.get_keys_count();
+        assertEquals(AudioDispatcher.CAPACITY + 10 - fit, dispatcher.getDroppedEvents());
+        assertEquals(fit, dispatcher.drain());
+    }
+
+    /**
+     * An audio thread that's stuck mustn't stall the UI thread: once the ring is (nearly) full, key-downs are dropped,
+     * and counted, rather than waited for.
+     */
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void stuckAudioThreadDoesNotBlockPublishing() throws InterruptedException {
+        CountDownLatch stuck = new CountDownLatch(1);
+        CountDownLatch unstuck = new CountDownLatch(1);
+        SpyListener spy = new SpyListener() {
+            @Override
+            public void onKeyDown(int keyIdx) {
+                super.onKeyDown(keyIdx);
+                if (downCount == 1) {
+                    stuck.countDown();
+                    try {
+                        unstuck.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        };
+        dispatcher.addListener(spy);
+        dispatcher.start();
+
+        piano.doKeyDown(0);
+        stuck.await();
+        final int more = AudioDispatcher.CAPACITY + 10;
+        for (int i = 0; i < more; i++) {
+            piano.doKeyDown(0); // mustn't hang
+        }
+        // The event being dispatched still holds its slot, and the last ones are reserved for key-ups.
+        final int fit = AudioDispatcher.CAPACITY - piano.get_keys_count();
+        assertEquals(more - (fit - 1), dispatcher.getDroppedEvents());
+
+        unstuck.countDown();
+        while (spy.downCount < fit) {
+            Thread.sleep(1);
+        }
+        Thread.sleep(10);
+        assertEquals(fit, spy.downCount, "everything that fit arrives, nothing more");
+    }
+
+    /**
+     * Counts, per key, the notes played and released, on the audio thread.
+     */
+    private static class ReleaseCounter implements PianoListener {
+        final int[] downs;
+        final int[] ups;
+        volatile int totalDowns;
+        volatile int totalUps;
+
+        ReleaseCounter(int keys) {
+            downs = new int[keys];
+            ups = new int[keys];
+        }
+
+        @Override
+        public void onKeyDown(int keyIdx) {
+            downs[keyIdx]++;
+            totalDowns++;
+        }
+
+        @Override
+        public void onKeyUp(int keyIdx) {
+            ups[keyIdx]++;
+            totalUps++;
+        }
+    }
+
+    /**
+     * While the audio thread is stuck, key-downs get dropped, but never the key-ups of the notes that were played:
+     * a note that's never released can't fade, and holds on to a sound maker's held-key slot.
+     */
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void stuckAudioThreadStillReleasesEveryNote() throws InterruptedException {
+        CountDownLatch stuck = new CountDownLatch(1);
+        CountDownLatch unstuck = new CountDownLatch(1);
+        final int keys = piano.get_keys_count();
+        ReleaseCounter counter = new ReleaseCounter(keys) {
+            @Override
+            public void onKeyDown(int keyIdx) {
+                super.onKeyDown(keyIdx);
+                if (totalDowns == 1) {
+                    stuck.countDown();
+                    try {
+                        unstuck.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        };
+        dispatcher.addListener(counter);
+        dispatcher.start();
+
+        piano.doKeyDown(0);
+        stuck.await();
+        piano.doKeyUp(0);
+        for (int i = 0; i < 3 * AudioDispatcher.CAPACITY; i++) {
+            piano.doKeyDown(i % keys);
+            piano.doKeyUp(i % keys);
+        }
+        assertTrue(dispatcher.getDroppedEvents() > 0, "the ring must have overflowed");
+
+        unstuck.countDown();
+        while (counter.totalUps < counter.totalDowns) {
+            Thread.sleep(1);
+        }
+        Thread.sleep(10);
+        for (int key = 0; key < keys; key++) {
+            assertEquals(counter.downs[key], counter.ups[key], "every note played on key " + key + " is released");
+        }
+        assertEquals(counter.totalDowns, counter.totalUps);
+    }
+
+    /**
+     * The config trigger stays on the UI thread: it sees every event synchronously, in order, regardless of the
+     * audio thread.
+     */
+    @Test
+    void configTriggerStaysSynchronous() {
+        AppConfigTrigger trigger = new AppConfigTrigger();
+        SpyCallback callback = new SpyCallback();
+        trigger.setConfigRequestCallback(callback);
+        piano.addListener(trigger);
+
+        for (int i = 0; i < AppConfigTrigger.CONFIG_TRIGGER_COUNT; i++) {
+            int next = trigger.getNextExpectedKey();
+            piano.doKeyDown(next);
+            assertTrue(i == AppConfigTrigger.CONFIG_TRIGGER_COUNT - 1 || trigger.getPressedConfigKeys().contains(next),
+                    "progress must be visible right away, without draining");
+        }
+        assertEquals(1, callback.triggerCount);
+    }
+
+    /**
+     * Bursts of events from the test thread, with the real audio thread consuming: every event reaches the listeners
+     * on the audio thread, exactly once, in order; also across the audio thread going to sleep between bursts.
+     */
+    @Test
+    @Timeout(value = 60, unit = TimeUnit.SECONDS)
+    void burstsArriveCompleteAndInOrder() throws InterruptedException {
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        EventLog audio = new EventLog("audio", events, PianoListener.Priority.AUDIO);
+        dispatcher.addListener(audio);
+        dispatcher.start();
+
+        List<String> expected = new ArrayList<>();
+        final int keys = piano.get_keys_count();
+        final int downRoom = AudioDispatcher.CAPACITY - keys; // the rest is kept for key-ups
+        int key = 0;
+        for (int burst = 0; burst < 200; burst++) {
+            int size = 1 + (burst * 37) % downRoom; // some bursts fill all the room key-downs have
+            for (int i = 0; i < size; i++) {
+                key = (key * 31 + 7) % keys;
+                if (i % 2 == 0) {
+                    piano.doKeyDown(key);
+                    expected.add("audio down " + key);
+                } else {
+                    piano.doKeyUp(key);
+                    expected.add("audio up " + key);
+                }
+            }
+            // a whole ring in flight would overflow; don't let bursts pile up
+            awaitSize(events, expected.size());
+            if (burst % 10 == 0) {
+                Thread.sleep(2); // let the audio thread run dry, and park
+            }
+        }
+
+        assertEquals(0, dispatcher.getDroppedEvents());
+        assertEquals(expected.size(), events.size());
+        assertEquals(expected, new ArrayList<>(events));
+        assertNotSame(Thread.currentThread(), audio.lastThread, "listeners must run on the audio thread");
+    }
+
+    private static void awaitSize(List<String> events, int size) throws InterruptedException {
+        while (events.size() < size) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void quitStopsThread() throws InterruptedException {
+        SpyListener spy = new SpyListener();
+        dispatcher.addListener(spy);
+        dispatcher.start();
+        piano.doKeyDown(0);
+        while (spy.downCount == 0) {
+            Thread.sleep(1);
+        }
+
+        dispatcher.quit();
+        Thread.sleep(50);
+        piano.doKeyDown(2); // no-one to hear it, but mustn't hang or throw
+        assertEquals(1, spy.downCount);
+    }
+}
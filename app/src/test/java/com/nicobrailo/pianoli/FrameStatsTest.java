@@ -0,0 +1,100 @@
+package com.nicobrailo.pianoli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameStatsTest {
+    private static final long MS = 1_000_000;
+
+    @Test
+    void budgetFromRefreshRate() {
+        assertEquals(16_666_666, FrameStats.budgetForRefreshRate(60f));
+        assertEquals(8_333_333, FrameStats.budgetForRefreshRate(120f));
+    }
+
+    @ParameterizedTest
+    @ValueSource(floats = {0f, -1f, Float.NaN, Float.POSITIVE_INFINITY, 1e6f})
+    void nonsenseRefreshRateUsesDefault(float refreshRate) {
+        assertEquals(FrameStats.DEFAULT_BUDGET_NANOS, FrameStats.budgetForRefreshRate(refreshRate));
+    }
+
+    @Test
+    void countsFramesOverBudget() {
+        FrameStats stats = new FrameStats(16 * MS);
+        stats.record(1 * MS, 5 * MS, 1 * MS);
+        stats.record(2 * MS, 12 * MS, 3 * MS); // 17ms
+        stats.record(1 * MS, 14 * MS, 1 * MS); // exactly on budget
+
+        assertEquals(3, stats.getFrameCount());
+        assertEquals(1, stats.getOverBudgetCount());
+    }
+
+    @Test
+    void summary() {
+        FrameStats stats = new FrameStats(16 * MS);
+        assertEquals("Frames: 0, 0 over the 16.0ms budget", stats.toString());
+
+        stats.record(1 * MS, 4 * MS, 1 * MS);
+        stats.record(3 * MS, 20 * MS, 1 * MS);
+        assertEquals("Frames: 2, 1 over the 16.0ms budget; last 2: lock mean 2.00ms max 3.00ms, "
+                + "draw mean 12.00ms max 20.00ms, post mean 1.00ms max 1.00ms", stats.toString());
+    }
+
+    @Test
+    void ringKeepsRecentFrames() {
+        FrameStats stats = new FrameStats(16 * MS);
+        stats.record(0, 100 * MS, 0); // a slow frame long ago...
+        for (int i = 0; i < FrameStats.CAPACITY; i++) {
+            stats.record(0, 2 * MS, 0);
+        }
+
+        // ...has dropped out of the summary, but still counts.
+        assertTrue(stats.toString().contains("last " + FrameStats.CAPACITY + ": "), stats.toString());
+        assertTrue(stats.toString().contains("draw mean 2.00ms max 2.00ms"), stats.toString());
+        assertEquals(FrameStats.CAPACITY + 1, stats.getFrameCount());
+        assertEquals(1, stats.getOverBudgetCount());
+    }
+
+    @Test
+    void reset() {
+        FrameStats stats = new FrameStats(16 * MS);
+        stats.record(0, 100 * MS, 0);
+        stats.reset();
+        stats.record(0, 2 * MS, 0);
+
+        assertEquals(1, stats.getFrameCount());
+        assertEquals(0, stats.getOverBudgetCount());
+        assertTrue(stats.toString().contains("draw mean 2.00ms max 2.00ms"), stats.toString());
+    }
+
+    /**
+     * Recorded for every frame, in release builds too: mustn't give the garbage collector any work.
+     */
+    @Test
+    void recordDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assertTrue(threads.isThreadAllocatedMemorySupported(), "JVM can't count allocations");
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        FrameStats stats = new FrameStats(16 * MS);
+        for (int i = 0; i < 10_000; i++) { // warm up
+            stats.record(i, 2 * i, 3 * i);
+        }
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        long overhead = threads.getThreadAllocatedBytes(threadId) - before;
+
+        before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1_000; i++) {
+            stats.record(i * MS, 2 * MS, 20 * MS);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before - overhead;
+        assertEquals(0, allocated, "bytes allocated while recording frames");
+    }
+}
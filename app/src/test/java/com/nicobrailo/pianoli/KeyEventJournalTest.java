@@ -0,0 +1,186 @@
+package com.nicobrailo.pianoli;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyEventJournalTest {
+    private Piano piano;
+    private long now;
+    private KeyEventJournal journal;
+
+    @BeforeEach
+    void setup() {
+        piano = new Piano(1920, 1080);
+        journal = newJournal(16);
+        piano.addListener(journal);
+    }
+
+    private KeyEventJournal newJournal(int capacity) {
+        return new KeyEventJournal(piano, capacity) {
+            @Override
+            long getNow() {
+                return now;
+            }
+        };
+    }
+
+    /**
+     * Records events, with the times the replayer stamped them with.
+     */
+    private static class EventLog implements PianoListener {
+        final Piano piano;
+        final List<String> events = new ArrayList<>();
+
+        EventLog(Piano piano) {
+            this.piano = piano;
+        }
+
+        @Override
+        public void onKeyDown(int keyIdx) {
+            events.add("down " + keyIdx + " @" + piano.getEventTime());
+        }
+
+        @Override
+        public void onKeyUp(int keyIdx) {
+            events.add("up " + keyIdx + " @" + piano.getEventTime());
+        }
+    }
+
+    private static byte[] export(KeyEventJournal journal) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        journal.writeTo(out);
+        return out.toByteArray();
+    }
+
+    @Test
+    void encoding() {
+        for (int key : new int[]{0, 1, 42, -1, -42}) {
+            for (boolean down : new boolean[]{true, false}) {
+                int event = KeyEventJournal.encode(key, down);
+                assertEquals(key, KeyEventJournal.decodeKey(event));
+                assertEquals(down, KeyEventJournal.decodeDown(event));
+            }
+        }
+    }
+
+    @Test
+    void roundtrip() throws IOException, InterruptedException {
+        piano.doKeyDown(3, 100);
+        piano.doKeyDown(5, 104);
+        piano.doKeyUp(3, 150);
+        now = 160_500_000; // no touch time: stamped when dispatched
+        piano.doKeyUp(5);
+
+        byte[] bytes = export(journal);
+        assertEquals(4 + 2 + 4 + 4 * 12, bytes.length, "compact: 12 bytes per event");
+
+        JournalReplayer replayer = KeyEventJournal.read(new ByteArrayInputStream(bytes));
+        assertEquals(4, replayer.size());
+        assertEquals(60_500_000, replayer.getDurationNanos());
+
+        Piano target = new Piano(1920, 1080);
+        EventLog log = new EventLog(target);
+        target.addListener(log);
+        replayer.replay(target, false);
+        assertEquals(4, log.events.size());
+        assertTrue(log.events.get(0).startsWith("down 3 @"), log.events.toString());
+        assertTrue(log.events.get(1).startsWith("down 5 @"), log.events.toString());
+        assertTrue(log.events.get(2).startsWith("up 3 @"), log.events.toString());
+        assertTrue(log.events.get(3).startsWith("up 5 @"), log.events.toString());
+        assertFalse(target.is_key_pressed(3));
+    }
+
+    @Test
+    void ringKeepsNewest() throws IOException, InterruptedException {
+        for (int i = 0; i < 40; i++) {
+            piano.doKeyDown(i % piano.get_keys_count(), 1000 + i);
+        }
+        assertEquals(16, journal.size());
+
+        JournalReplayer replayer = KeyEventJournal.read(new ByteArrayInputStream(export(journal)));
+        assertEquals(16, replayer.size());
+        assertEquals(15_000_000, replayer.getDurationNanos(), "events 24 to 39");
+
+        Piano target = new Piano(1920, 1080);
+        SpyListener spy = new SpyListener();
+        target.addListener(spy);
+        replayer.replay(target, false);
+        assertEquals(39 % piano.get_keys_count(), spy.lastDownIdx, "oldest first, so the newest comes last");
+    }
+
+    @Test
+    void clear() throws IOException {
+        piano.doKeyDown(1, 10);
+        journal.clear();
+        assertEquals(0, journal.size());
+        assertEquals(0, KeyEventJournal.read(new ByteArrayInputStream(export(journal))).size());
+    }
+
+    @Test
+    void originalSpeedKeepsGaps() throws IOException, InterruptedException {
+        piano.doKeyDown(0, 1_000);
+        piano.doKeyUp(0, 1_250);
+        piano.doKeyDown(2, 2_000);
+        JournalReplayer recorded = KeyEventJournal.read(new ByteArrayInputStream(export(journal)));
+
+        List<Long> waits = new ArrayList<>();
+        final long[] clock = {7_000_000_000L};
+        JournalReplayer timed = new JournalReplayer(new long[]{1_000_000_000L, 1_250_000_000L, 2_000_000_000L},
+                new int[]{KeyEventJournal.encode(0, true), KeyEventJournal.encode(0, false),
+                        KeyEventJournal.encode(2, true)}) {
+            @Override
+            long getNow() {
+                return clock[0];
+            }
+
+            @Override
+            void sleepUntil(long deadline) {
+                waits.add(deadline - 7_000_000_000L);
+                clock[0] = Math.max(clock[0], deadline);
+            }
+        };
+        assertEquals(recorded.getDurationNanos(), timed.getDurationNanos(), "same journal as recorded");
+
+        Piano target = new Piano(1920, 1080);
+        EventLog log = new EventLog(target);
+        target.addListener(log);
+        timed.replay(target, true);
+
+        assertEquals(Arrays.asList(0L, 250_000_000L, 1_000_000_000L), waits);
+        assertEquals(Arrays.asList("down 0 @7000", "up 0 @7250", "down 2 @8000"), log.events,
+                "stamped with the replay clock");
+    }
+
+    @Test
+    void rejectsForeignData() {
+        assertThrows(IOException.class, () -> KeyEventJournal.read(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6})));
+        assertThrows(EOFException.class, () -> KeyEventJournal.read(new ByteArrayInputStream(new byte[0])));
+    }
+
+    @Test
+    void rejectsTruncated() throws IOException {
+        piano.doKeyDown(1, 10);
+        piano.doKeyDown(2, 20);
+        byte[] bytes = export(journal);
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 5);
+        assertThrows(EOFException.class, () -> KeyEventJournal.read(new ByteArrayInputStream(truncated)));
+    }
+
+    @Test
+    void rejectsOtherVersions() throws IOException {
+        byte[] bytes = export(journal);
+        bytes[5] = 2; // low byte of the version
+        IOException e = assertThrows(IOException.class, () -> KeyEventJournal.read(new ByteArrayInputStream(bytes)));
+        assertTrue(e.getMessage().contains("version"), e.getMessage());
+    }
+}
@@ -0,0 +1,133 @@
+package com.nicobrailo.pianoli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyEventRingTest {
+
+    /** Collects drained events as strings */
+    private static class EventLog implements KeyEventRing.Handler {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onKeyEvent(boolean down, int keyIdx, long eventTime) {
+            events.add((down ? "down " : "up ") + keyIdx + " @" + eventTime);
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({"1,1", "2,2", "3,4", "1000,1024", "1024,1024"})
+    void capacityRoundedUpToPowerOfTwo(int requested, int expected) {
+        assertEquals(expected, new KeyEventRing(requested).getCapacity());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, -1, Integer.MAX_VALUE})
+    void capacityOutOfRange(int capacity) {
+        assertThrows(IllegalArgumentException.class, () -> new KeyEventRing(capacity));
+    }
+
+    @Test
+    void drainsInOrder() {
+        KeyEventRing ring = new KeyEventRing(8);
+        assertTrue(ring.isEmpty());
+        ring.offer(true, 3, 100);
+        ring.offer(false, 3, 110);
+        ring.offer(true, 5, Piano.UNKNOWN_TIME);
+        assertFalse(ring.isEmpty());
+
+        EventLog log = new EventLog();
+        assertEquals(3, ring.drain(log));
+        assertEquals(Arrays.asList("down 3 @100", "up 3 @110", "down 5 @-1"), log.events);
+        assertTrue(ring.isEmpty());
+        assertEquals(0, ring.drain(log));
+    }
+
+    @Test
+    void fullRingRejects() {
+        KeyEventRing ring = new KeyEventRing(4);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, ring.size());
+            assertTrue(ring.offer(true, i, i));
+        }
+        assertFalse(ring.offer(true, 4, 4), "ring is full");
+        assertEquals(4, ring.size());
+
+        EventLog log = new EventLog();
+        ring.drain(log);
+        assertEquals(0, ring.size());
+        assertEquals(4, log.events.size());
+        assertEquals("down 3 @3", log.events.get(3), "rejected event mustn't overwrite anything");
+        assertTrue(ring.offer(true, 4, 4), "drained slots are reusable");
+    }
+
+    @Test
+    void wrapsAround() {
+        KeyEventRing ring = new KeyEventRing(4);
+        EventLog log = new EventLog();
+        for (int i = 0; i < 10; i++) {
+            ring.offer(i % 2 == 0, i, i * 10L);
+            ring.offer(i % 2 != 0, i, i * 10L + 1);
+            ring.drain(log);
+        }
+        assertEquals(20, log.events.size());
+        assertEquals("down 9 @91", log.events.get(19));
+    }
+
+    /**
+     * A producer thread publishes bursts as fast as it can, into a small ring, so it's full most of the time, while a
+     * consumer thread drains concurrently. Every event must arrive exactly once, in order, with its own data.
+     */
+    @Test
+    @Timeout(value = 60, unit = TimeUnit.SECONDS)
+    void stressNoEventLostOrReordered() throws InterruptedException {
+        final KeyEventRing ring = new KeyEventRing(16);
+        final int events = 2_000_000;
+        final long[] failure = {-1};
+
+        Thread consumer = new Thread(() -> {
+            final long[] expected = {0};
+            KeyEventRing.Handler check = (down, keyIdx, eventTime) -> {
+                long seq = expected[0]++;
+                // All three fields derive from the sequence number, so torn or stale slots are caught too.
+                if (eventTime != seq || keyIdx != (int) (seq % 97) || down != (seq % 3 == 0)) {
+                    if (failure[0] < 0) {
+                        failure[0] = seq;
+                    }
+                }
+            };
+            while (expected[0] < events) {
+                if (ring.drain(check) == 0) {
+                    Thread.yield();
+                }
+            }
+        }, "consumer");
+        consumer.start();
+
+        int rejected = 0;
+        for (long seq = 0; seq < events; seq++) {
+            while (!ring.offer(seq % 3 == 0, (int) (seq % 97), seq)) {
+                rejected++;
+                Thread.yield();
+            }
+            if (seq % 1000 == 0) {
+                Thread.yield(); // bursts, with gaps for the consumer to catch up and go idle
+            }
+        }
+        consumer.join();
+
+        assertEquals(-1, failure[0], "first wrong event");
+        assertTrue(ring.isEmpty());
+        assertTrue(rejected > 0, "ring should have been full at times, or this doesn't test much");
+    }
+}
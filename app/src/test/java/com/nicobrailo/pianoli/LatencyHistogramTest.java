@@ -0,0 +1,102 @@
+package com.nicobrailo.pianoli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void empty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileMicros(50));
+        assertEquals(0, histogram.getPercentileMicros(99));
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        for (int micros = 0; micros < LatencyHistogram.EXACT_LIMIT; micros++) {
+            assertEquals(micros, LatencyHistogram.valueOf(LatencyHistogram.bucketOf(micros)));
+        }
+    }
+
+    @Test
+    void bucketsAreOrderedAndContiguous() {
+        int prev = LatencyHistogram.bucketOf(0);
+        for (long micros = 1; micros < 1 << 20; micros++) {
+            int bucket = LatencyHistogram.bucketOf(micros);
+            assertTrue(bucket == prev || bucket == prev + 1, "bucket skipped at " + micros);
+            prev = bucket;
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = {16, 17, 100, 999, 1_000, 2_500, 16_667, 123_456, 10_000_000})
+    void bucketValueWithinPrecision(long micros) {
+        long value = LatencyHistogram.valueOf(LatencyHistogram.bucketOf(micros));
+        assertEquals(micros, value, micros / 8.0, "reported for " + micros);
+    }
+
+    @Test
+    void extremesAreClamped() {
+        assertEquals(0, LatencyHistogram.bucketOf(-5));
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketOf(1L << 40));
+    }
+
+    @Test
+    void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 1..100ms, one sample each
+        for (int ms = 1; ms <= 100; ms++) {
+            histogram.record(ms * 1_000L);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(50_000, histogram.getPercentileMicros(50), 50_000 / 8.0);
+        assertEquals(95_000, histogram.getPercentileMicros(95), 95_000 / 8.0);
+        assertEquals(99_000, histogram.getPercentileMicros(99), 99_000 / 8.0);
+        assertEquals(1_000, histogram.getPercentileMicros(0), 1_000 / 8.0, "lowest sample");
+    }
+
+    @Test
+    void outlierOnlyInHighPercentile() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(2_000);
+        }
+        histogram.record(500_000);
+
+        assertEquals(2_000, histogram.getPercentileMicros(99), 2_000 / 8.0);
+        assertEquals(500_000, histogram.getPercentileMicros(100), 500_000 / 8.0);
+    }
+
+    @Test
+    void reset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1_000);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+    }
+
+    @Test
+    void concurrentRecordsAllCounted() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i % 3); // few buckets, so threads collide
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40_000, histogram.getCount());
+    }
+}
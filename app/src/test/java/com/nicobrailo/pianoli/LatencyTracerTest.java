@@ -0,0 +1,130 @@
+package com.nicobrailo.pianoli;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyTracerTest {
+    private long nowMillis;
+    private LatencyTracer tracer;
+
+    @BeforeEach
+    void setup() {
+        tracer = new LatencyTracer() {
+            @Override
+            long getNow() {
+                return nowMillis * 1_000_000;
+            }
+        };
+    }
+
+    /** Asserts the median of <code>stage</code>, within the histogram's precision */
+    private void assertMedianMillis(long expected, LatencyTracer.Stage stage) {
+        long micros = tracer.getHistogram(stage).getPercentileMicros(50);
+        assertEquals(expected * 1_000, micros, expected * 1_000 / 8.0, stage.name());
+    }
+
+    @Test
+    void stagesMeasuredFromTouch() {
+        nowMillis = 103;
+        tracer.beginKeyDown(100);
+        nowMillis = 105;
+        tracer.stamp(LatencyTracer.Stage.PLAY_NOTE);
+        nowMillis = 106;
+        tracer.keyDrawn();
+        tracer.endKeyDown();
+
+        nowMillis = 110;
+        long shown = tracer.beginFrame();
+        nowMillis = 120;
+        tracer.frameEnd(shown);
+
+        assertMedianMillis(3, LatencyTracer.Stage.KEY_DOWN);
+        assertMedianMillis(5, LatencyTracer.Stage.PLAY_NOTE);
+        assertMedianMillis(6, LatencyTracer.Stage.DISPATCHED);
+        assertMedianMillis(20, LatencyTracer.Stage.FRAME_END);
+    }
+
+    @Test
+    void forgetsInFlight() {
+        nowMillis = 103;
+        tracer.beginKeyDown(100);
+        tracer.keyDrawn();
+        tracer.forgetInFlight();
+        tracer.endKeyDown();
+        tracer.frameEnd(tracer.beginFrame());
+
+        assertEquals(1, tracer.getHistogram(LatencyTracer.Stage.KEY_DOWN).getCount());
+        assertEquals(0, tracer.getHistogram(LatencyTracer.Stage.DISPATCHED).getCount());
+        assertEquals(0, tracer.getHistogram(LatencyTracer.Stage.FRAME_END).getCount());
+    }
+
+    @Test
+    void unknownTimesNotTraced() {
+        tracer.beginKeyDown(Piano.UNKNOWN_TIME);
+        tracer.stamp(LatencyTracer.Stage.PLAY_NOTE);
+        tracer.keyDrawn();
+        tracer.endKeyDown();
+        tracer.frameEnd(tracer.beginFrame());
+
+        for (LatencyTracer.Stage stage : LatencyTracer.Stage.values()) {
+            assertEquals(0, tracer.getHistogram(stage).getCount(), stage.name());
+        }
+    }
+
+    @Test
+    void stampsAfterDispatchIgnored() {
+        tracer.beginKeyDown(100);
+        tracer.endKeyDown();
+        // e.g. a key-up, which isn't traced
+        tracer.stamp(LatencyTracer.Stage.PLAY_NOTE);
+        assertEquals(0, tracer.getHistogram(LatencyTracer.Stage.PLAY_NOTE).getCount());
+    }
+
+    @Test
+    void frameCountsOldestKeyOnly() {
+        nowMillis = 100;
+        tracer.beginKeyDown(100);
+        tracer.keyDrawn();
+        tracer.endKeyDown();
+        tracer.beginKeyDown(108);
+        tracer.keyDrawn();
+        tracer.endKeyDown();
+
+        long shown = tracer.beginFrame();
+        nowMillis = 116;
+        tracer.frameEnd(shown);
+        assertEquals(1, tracer.getHistogram(LatencyTracer.Stage.FRAME_END).getCount());
+        assertMedianMillis(16, LatencyTracer.Stage.FRAME_END);
+
+        // Nothing new to show: the next frame isn't a key's.
+        tracer.frameEnd(tracer.beginFrame());
+        assertEquals(1, tracer.getHistogram(LatencyTracer.Stage.FRAME_END).getCount());
+    }
+
+    @Test
+    void dumpResets() {
+        tracer.beginKeyDown(100);
+        tracer.endKeyDown();
+        assertTrue(tracer.toString().contains("dispatched"), tracer.toString());
+
+        tracer.dump();
+        assertEquals(0, tracer.getHistogram(LatencyTracer.Stage.DISPATCHED).getCount());
+    }
+
+    @Test
+    void newLabelDumpsOldMeasurements() {
+        tracer.setLabel("buffered input");
+        tracer.beginKeyDown(100);
+        tracer.endKeyDown();
+        assertTrue(tracer.toString().contains("(buffered input)"), tracer.toString());
+
+        tracer.setLabel("buffered input");
+        assertEquals(1, tracer.getHistogram(LatencyTracer.Stage.DISPATCHED).getCount(), "same label, same run");
+
+        tracer.setLabel("unbuffered input");
+        assertEquals(0, tracer.getHistogram(LatencyTracer.Stage.DISPATCHED).getCount());
+        assertTrue(tracer.toString().contains("(unbuffered input)"), tracer.toString());
+    }
+}
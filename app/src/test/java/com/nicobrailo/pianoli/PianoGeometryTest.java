@@ -0,0 +1,109 @@
+package com.nicobrailo.pianoli;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks {@link Piano}'s precomputed geometry table against the original, computed-per-call geometry.
+ *
+ * <p>
+ * Covers the screen sizes of {@link PianoTest} and {@link PianoUndersizedScreensizeTest}, plus a few real ones.
+ * </p>
+ */
+class PianoGeometryTest {
+
+    /**
+     * The geometry as {@link Piano} computed it before the table existed: a new {@link Key} for every call.
+     */
+    private static class ReferenceGeometry {
+        final int keys_width;
+        final int keys_flat_width;
+        final int keys_height;
+        final int keys_flats_height;
+
+        ReferenceGeometry(int screen_size_x, int screen_size_y) {
+            keys_height = screen_size_y;
+            keys_flats_height = (int) (screen_size_y * Key.FLAT_HEIGHT_RATIO);
+            keys_width = Math.min(screen_size_x / Piano.MIN_NUMBER_OF_KEYS, Piano.KEY_PREFERRED_WIDTH);
+            keys_flat_width = (int) (keys_width * Key.FLAT_WIDTH_RATIO);
+        }
+
+        int pos_to_key_idx(float pos_x, float pos_y) {
+            final int big_key_idx = 2 * ((int) pos_x / keys_width);
+            if (pos_y > keys_flats_height) return big_key_idx;
+
+            Key flat = getAreaForSmallKey(big_key_idx + 1);
+            if (flat.contains(pos_x, pos_y)) return big_key_idx + 1;
+
+            if (big_key_idx > 0) {
+                Key prev_flat = getAreaForSmallKey(big_key_idx - 1);
+                if (prev_flat.contains(pos_x, pos_y)) return big_key_idx - 1;
+            }
+            return big_key_idx;
+        }
+
+        Key getAreaForKey(int keyIdx) {
+            if ((keyIdx & 1) == 0) {
+                int x_i = keyIdx / 2 * keys_width;
+                return new Key(x_i, x_i + keys_width, 0, keys_height);
+            } else {
+                return getAreaForSmallKey(keyIdx);
+            }
+        }
+
+        Key getAreaForSmallKey(int keyIdx) {
+            final int octaveIdx = (keyIdx / 2) % 7;
+            if (octaveIdx == 2 || octaveIdx == 6) {
+                return Key.CANT_TOUCH_THIS;
+            }
+            final int offset = keys_width - (keys_flat_width / 2);
+            int x_i = (keyIdx / 2) * keys_width + offset;
+            return new Key(x_i, x_i + keys_flat_width, 0, keys_flats_height);
+        }
+    }
+
+    @ParameterizedTest(name = "[{index}] {0}x{1}")
+    @CsvSource({"500,80", "80,80", "74,10", "1920,1080", "2400,1080", "1280,800"})
+    void areasMatchReference(int width, int height) {
+        Piano piano = new Piano(width, height);
+        ReferenceGeometry reference = new ReferenceGeometry(width, height);
+
+        // a few keys past either end too, which aren't in the table.
+        for (int keyIdx = -3; keyIdx < piano.get_keys_count() + 3; keyIdx++) {
+            Key expected = reference.getAreaForKey(keyIdx);
+            Key actual = piano.getAreaForKey(keyIdx);
+            assertEquals(expected.x_i, actual.x_i, "x_i of key " + keyIdx);
+            assertEquals(expected.x_f, actual.x_f, "x_f of key " + keyIdx);
+            assertEquals(expected.y_i, actual.y_i, "y_i of key " + keyIdx);
+            assertEquals(expected.y_f, actual.y_f, "y_f of key " + keyIdx);
+            if (expected == Key.CANT_TOUCH_THIS) {
+                assertSame(Key.CANT_TOUCH_THIS, actual, "missing flats must stay the null-object");
+            }
+        }
+    }
+
+    @ParameterizedTest(name = "[{index}] {0}x{1}")
+    @CsvSource({"500,80", "80,80", "74,10", "1920,1080", "2400,1080", "1280,800"})
+    void hitTestMatchesReference(int width, int height) {
+        Piano piano = new Piano(width, height);
+        ReferenceGeometry reference = new ReferenceGeometry(width, height);
+
+        // Quarter-pixel steps hit every edge exactly, and the inside of every key; plus a margin off-screen.
+        for (float x = -20; x <= width + 20; x += 0.25f) {
+            for (float y = -2; y <= height + 2; y += 0.25f) {
+                assertEquals(reference.pos_to_key_idx(x, y), piano.pos_to_key_idx(x, y), "hit at " + x + "," + y);
+            }
+        }
+    }
+
+    @ParameterizedTest(name = "[{index}] {0}x{1}")
+    @CsvSource({"500,80", "74,10"})
+    void areasAreShared(int width, int height) {
+        Piano piano = new Piano(width, height);
+        for (int keyIdx = 0; keyIdx < piano.get_keys_count(); keyIdx++) {
+            assertSame(piano.getAreaForKey(keyIdx), piano.getAreaForKey(keyIdx), "key " + keyIdx + " re-allocated");
+        }
+    }
+}
@@ -1,8 +1,18 @@
 package com.nicobrailo.pianoli;
 
+import com.nicobrailo.pianoli.PianoListener.Priority;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.nicobrailo.pianoli.PianoListener.Priority.*;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
@@ -90,4 +100,98 @@ public class PianoListenerTest {
     public void nullSafeRemove() {
         assertFalse(piano.removeListener(null), "null-listener should be silently accepted, but not do anything");
     }
+
+    /**
+     * All orders in which to add an audio, a state and a visual listener.
+     */
+    static Stream<Arguments> addOrders() {
+        return Stream.of(
+                Arguments.of((Object) new Priority[] {AUDIO, STATE, VISUAL}),
+                Arguments.of((Object) new Priority[] {AUDIO, VISUAL, STATE}),
+                Arguments.of((Object) new Priority[] {STATE, AUDIO, VISUAL}),
+                Arguments.of((Object) new Priority[] {STATE, VISUAL, AUDIO}),
+                Arguments.of((Object) new Priority[] {VISUAL, AUDIO, STATE}),
+                Arguments.of((Object) new Priority[] {VISUAL, STATE, AUDIO})
+        );
+    }
+
+    /**
+     * Sound must never wait for drawing: listeners are notified by priority, whatever order they were added in.
+     */
+    @ParameterizedTest
+    @MethodSource("addOrders")
+    public void listenersNotifiedInPriorityOrder(Priority[] addOrder) {
+        List<Priority> notified = new ArrayList<>();
+        for (Priority priority : addOrder) {
+            assertTrue(piano.addListener(new OrderSpy(priority, notified)));
+        }
+
+        List<Priority> expected = Arrays.asList(Priority.values());
+
+        piano.doKeyDown(0);
+        assertEquals(expected, notified, "key down should be dispatched in priority order");
+
+        notified.clear();
+        piano.doKeyUp(0);
+        assertEquals(expected, notified, "key up should be dispatched in priority order");
+    }
+
+    /**
+     * Within a priority class, listeners keep the order in which they were added.
+     */
+    @Test
+    public void samePriorityKeepsInsertionOrder() {
+        List<Priority> notified = new ArrayList<>();
+        SpyListener first = new SpyListener();
+        OrderSpy visual = new OrderSpy(VISUAL, notified);
+        SpyListener second = new SpyListener();
+
+        piano.addListener(visual);
+        piano.addListener(first);
+        piano.addListener(new PianoListener() {
+            @Override
+            public void onKeyDown(int keyIdx) {
+                assertEquals(1, first.downCount, "earlier STATE listener should have been notified already");
+                assertEquals(0, second.downCount, "later STATE listener should not have been notified yet");
+                assertTrue(notified.isEmpty(), "VISUAL listener should not have been notified yet");
+            }
+
+            @Override
+            public void onKeyUp(int keyIdx) {
+            }
+        });
+        piano.addListener(second);
+
+        piano.doKeyDown(0);
+        assertEquals(1, second.downCount);
+        assertEquals(Arrays.asList(VISUAL), notified);
+    }
+
+    /**
+     * Records, in a list shared with other spies, the moment it was notified.
+     */
+    private static class OrderSpy implements PianoListener {
+        private final Priority priority;
+        private final List<Priority> notified;
+
+        OrderSpy(Priority priority, List<Priority> notified) {
+            this.priority = priority;
+            this.notified = notified;
+        }
+
+        @Override
+        public void onKeyDown(int keyIdx) {
+            notified.add(priority);
+        }
+
+        @Override
+        public void onKeyUp(int keyIdx) {
+            notified.add(priority);
+        }
+
+        @Override
+        public Priority getPriority() {
+            return priority;
+        }
+    }
 }
@@ -0,0 +1,81 @@
+package com.nicobrailo.pianoli;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.nicobrailo.pianoli.StartupTimings.Phase.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class StartupTimingsTest {
+    private long fakeNow;
+    private StartupTimings timings;
+
+    @BeforeEach
+    void setup() {
+        fakeNow = 0;
+        timings = new StartupTimings() {
+            @Override
+            long getNow() {
+                return fakeNow;
+            }
+        };
+    }
+
+    private void advanceMillis(long millis) {
+        fakeNow += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Test
+    void measuresPhase() {
+        timings.begin(MODEL_BUILD);
+        advanceMillis(42);
+        timings.end(MODEL_BUILD);
+
+        assertEquals(42, timings.getDurationMillis(MODEL_BUILD));
+    }
+
+    @Test
+    void unfinishedPhasesAreNotRecorded() {
+        assertEquals(StartupTimings.NOT_RECORDED, timings.getDurationMillis(SAMPLE_LOAD),
+                "never-started phase has no duration");
+
+        timings.begin(SAMPLE_LOAD);
+        advanceMillis(10);
+        assertEquals(StartupTimings.NOT_RECORDED, timings.getDurationMillis(SAMPLE_LOAD),
+                "still-running phase has no duration");
+
+        timings.end(FIRST_FRAME);
+        assertEquals(StartupTimings.NOT_RECORDED, timings.getDurationMillis(FIRST_FRAME),
+                "ending a never-started phase should be ignored");
+    }
+
+    /**
+     * Re-initialisation after the startup (e.g. returning from settings) should not overwrite the startup measurement.
+     */
+    @Test
+    void onlyFirstMeasurementCounts() {
+        timings.begin(SAMPLE_LOAD);
+        advanceMillis(100);
+        timings.end(SAMPLE_LOAD);
+
+        advanceMillis(1000);
+        timings.begin(SAMPLE_LOAD);
+        advanceMillis(5);
+        timings.end(SAMPLE_LOAD);
+
+        assertEquals(100, timings.getDurationMillis(SAMPLE_LOAD));
+    }
+
+    @Test
+    void completeWhenAllPhasesTimed() {
+        for (StartupTimings.Phase phase : StartupTimings.Phase.values()) {
+            assertFalse(timings.isComplete());
+            timings.begin(phase);
+            advanceMillis(1);
+            timings.end(phase);
+        }
+        assertTrue(timings.isComplete());
+    }
+}
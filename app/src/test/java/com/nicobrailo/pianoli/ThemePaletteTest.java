@@ -0,0 +1,119 @@
+package com.nicobrailo.pianoli;
+
+import android.graphics.Color;
+import androidx.core.graphics.ColorUtils;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the precompiled {@link Theme} palettes against the colours as they used to be computed on every draw.
+ */
+class ThemePaletteTest {
+    /** Plenty of keys, to wrap around every theme's colour slots a few times */
+    private static final int KEYS = 200;
+
+    /**
+     * Reference copy of each theme's normal colours; see {@link #referencePressed(Theme, int)} for the pressed ones.
+     */
+    private static int[] referenceNormals(Theme theme) {
+        switch (theme) {
+            case BOOMWHACKER:
+                return new int[]{Color.rgb(220, 0, 0), Color.rgb(255, 135, 0), Color.rgb(255, 255, 0),
+                        Color.rgb(80, 220, 20), Color.rgb(0, 150, 150), Color.rgb(95, 70, 165),
+                        Color.rgb(213, 43, 149)};
+            case PASTEL:
+                return new int[]{0xfffbb4ae, 0xffb3cde3, 0xffccebc5, 0xffdecbe4, 0xfffed9a6, 0xffffffcc, 0xffe5d8bd};
+            case RAINBOW:
+                return new int[]{0xff001caf, 0xff0099ff, 0xff63c624, 0xffbde53d, 0xfffcc000, 0xffff810a, 0xffff5616,
+                        0xffd51016};
+            case BLACK_AND_WHITE:
+                return new int[]{Color.rgb(240, 240, 240)};
+            default:
+                throw new AssertionError("No reference colours for " + theme);
+        }
+    }
+
+    private static int referencePressed(Theme theme, int slot) {
+        int normal = referenceNormals(theme)[slot];
+        switch (theme) {
+            case BOOMWHACKER:
+                float[] whites = {0.5f, 0.6f, 0.75f, 0.6f, 0.5f, 0.5f, 0.5f};
+                return ColorUtils.blendARGB(normal, Color.WHITE, whites[slot]);
+            case BLACK_AND_WHITE:
+                return Color.rgb(200, 200, 200);
+            default:
+                return ColorUtils.blendARGB(normal, Color.WHITE, 0.5f);
+        }
+    }
+
+    /** How the colours were computed before palettes */
+    private static int referenceFill(Theme theme, int keyIdx, boolean pressed) {
+        if ((keyIdx & 1) == 1) {
+            return pressed ? Color.GRAY : 0xFF333333;
+        }
+        int slot = (keyIdx / 2) % referenceNormals(theme).length;
+        return pressed ? referencePressed(theme, slot) : referenceNormals(theme)[slot];
+    }
+
+    @ParameterizedTest
+    @EnumSource(Theme.class)
+    public void fillsMatchReference(Theme theme) {
+        for (int key = 0; key < KEYS; key++) {
+            for (boolean pressed : new boolean[]{false, true}) {
+                assertEquals(referenceFill(theme, key, pressed), theme.getColorForKey(key, pressed),
+                        "key " + key + (pressed ? " (pressed)" : ""));
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(Theme.class)
+    public void bevelsMatchReference(Theme theme) {
+        for (int key = 0; key < KEYS; key++) {
+            for (boolean pressed : new boolean[]{false, true}) {
+                int fill = referenceFill(theme, key, pressed);
+                int entry = theme.getPaletteEntry(key, pressed);
+                String what = "key " + key + (pressed ? " (pressed)" : "");
+
+                assertEquals(fill, theme.getShade(entry, Theme.SHADE_FILL), what);
+                assertEquals(ColorUtils.blendARGB(fill, Color.BLACK, 0.3f),
+                        theme.getShade(entry, Theme.SHADE_LEFT_BEVEL), "left bevel of " + what);
+                assertEquals(ColorUtils.blendARGB(fill, Color.WHITE, 0.2f),
+                        theme.getShade(entry, Theme.SHADE_RIGHT_BEVEL), "right bevel of " + what);
+                assertEquals(ColorUtils.blendARGB(fill, Color.BLACK, 0.1f),
+                        theme.getShade(entry, Theme.SHADE_BOTTOM_BEVEL), "bottom bevel of " + what);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(Theme.class)
+    public void entriesMatchKeyKind(Theme theme) {
+        for (int key = 0; key < KEYS; key++) {
+            for (boolean pressed : new boolean[]{false, true}) {
+                int entry = theme.getPaletteEntry(key, pressed);
+                assertTrue(entry >= 0 && entry < theme.getPaletteSize(), "entry out of range: " + entry);
+                assertEquals((key & 1) == 1, Theme.isFlatEntry(entry), "flats and big keys must not share entries");
+                assertEquals(pressed, (entry & 1) == 1, "pressed entries are odd");
+            }
+        }
+    }
+
+    /**
+     * Every palette entry gets a sprite, so an unreachable one would be wasted memory.
+     */
+    @ParameterizedTest
+    @EnumSource(Theme.class)
+    public void everyEntryIsUsed(Theme theme) {
+        boolean[] used = new boolean[theme.getPaletteSize()];
+        for (int key = 0; key < KEYS; key++) {
+            used[theme.getPaletteEntry(key, false)] = true;
+            used[theme.getPaletteEntry(key, true)] = true;
+        }
+        for (int entry = 0; entry < used.length; entry++) {
+            assertTrue(used[entry], "no key uses palette entry " + entry);
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package com.nicobrailo.pianoli;
+
+import com.nicobrailo.pianoli.melodies.Melody;
+import com.nicobrailo.pianoli.melodies.MultipleSongsMelodyPlayer;
+import com.nicobrailo.pianoli.sound.MelodicKeySoundMaker;
+import com.nicobrailo.pianoli.sound.SoundSet;
+import com.nicobrailo.pianoli.sound.StraightKeySoundMaker;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Stress harness: seeded, random "toddler mash" storms of multi-touch input, through the real event pipeline.
+ *
+ * <p>
+ * Ten fingers land, slide (and jump) across the keyboard, and lift, at hundreds of samples per second each. The storm
+ * goes through the {@link TouchTracker} into the {@link Piano}, to its real listeners: the {@link AppConfigTrigger},
+ * and the {@link AudioDispatcher}, whose audio thread drives a real sound maker, playing into a {@link TimingSoundSet}.
+ * </p>
+ * <p>
+ * Reports throughput, the latency from the piano dispatching a key-down to its note being played on the audio
+ * thread, the time the UI thread spends per touch sample, and how much either thread allocates. Fails when any of
+ * those is worse than the baseline in <code>toddler-mash-baseline.properties</code>. Allocation baselines are tight,
+ * and always checked, since allocations don't depend on the machine. Timing baselines only hold on a quiet one, not
+ * on a shared CI runner: they're only checked when the <code>pianoli.checkTiming</code> system property is set, e.g.
+ * by <code>./gradlew test -PcheckTiming</code>.
+ * </p>
+ * <p>
+ * A storm's {@link KeyEventJournal} is also replayed, through a {@link JournalReplayer}, as the app's exported
+ * journals would be: it must reproduce the same key events.
+ * </p>
+ */
+class ToddlerMashStressTest {
+    /** Whether to check the timing baselines too, see the class docs */
+    private static final boolean CHECK_TIMING = Boolean.getBoolean("pianoli.checkTiming");
+
+    private static final int POINTERS = 10;
+    private static final int STEPS = 20_000;
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+
+    private static final int DOWN = 0;
+    private static final int MOVE = 1;
+    private static final int UP = 2;
+
+    private static Properties baseline;
+
+    @BeforeAll
+    static void loadBaseline() throws IOException {
+        baseline = new Properties();
+        try (InputStream in = ToddlerMashStressTest.class.getResourceAsStream("toddler-mash-baseline.properties")) {
+            assertNotNull(in, "baseline missing from test resources");
+            baseline.load(in);
+        }
+    }
+
+    private static double baseline(String key) {
+        String value = baseline.getProperty(key);
+        assertNotNull(value, "baseline has no " + key);
+        return Double.parseDouble(value);
+    }
+
+    /**
+     * A pre-generated sequence of touch samples, so generating them isn't part of what we measure.
+     */
+    private static class Storm {
+        final int[] actions;
+        final int[] pointers;
+        final float[] xs;
+        final float[] ys;
+        final long[] times;
+        int size;
+
+        Storm(int capacity) {
+            actions = new int[capacity];
+            pointers = new int[capacity];
+            xs = new float[capacity];
+            ys = new float[capacity];
+            times = new long[capacity];
+        }
+
+        void add(int action, int pointer, float x, float y, long time) {
+            actions[size] = action;
+            pointers[size] = pointer;
+            xs[size] = x;
+            ys[size] = y;
+            times[size] = time;
+            size++;
+        }
+
+        /**
+         * Fingers land at random; mostly slide around a bit (crossing keys all the time), sometimes jump (a fast
+         * swipe, which the tracker interpolates), and lift now and then. All of them lift at the end.
+         */
+        static Storm generate(long seed) {
+            Random random = new Random(seed);
+            Storm storm = new Storm(STEPS * POINTERS + POINTERS);
+            boolean[] down = new boolean[POINTERS];
+            float[] x = new float[POINTERS];
+            float[] y = new float[POINTERS];
+
+            long time = 0;
+            for (int step = 0; step < STEPS; step++) {
+                time += 1 + random.nextInt(4); // 250-1000 samples per second, per finger
+                for (int p = 0; p < POINTERS; p++) {
+                    if (!down[p]) {
+                        if (random.nextInt(4) == 0) {
+                            down[p] = true;
+                            x[p] = random.nextFloat() * WIDTH;
+                            y[p] = random.nextFloat() * HEIGHT;
+                            storm.add(DOWN, p, x[p], y[p], time);
+                        }
+                        continue;
+                    }
+
+                    final int roll = random.nextInt(20);
+                    if (roll == 0) {
+                        down[p] = false;
+                        storm.add(UP, p, x[p], y[p], time);
+                    } else if (roll < 3) {
+                        x[p] = random.nextFloat() * WIDTH;
+                        y[p] = random.nextFloat() * HEIGHT;
+                        storm.add(MOVE, p, x[p], y[p], time);
+                    } else {
+                        x[p] = clamp(x[p] + (float) random.nextGaussian() * 40, WIDTH);
+                        y[p] = clamp(y[p] + (float) random.nextGaussian() * 20, HEIGHT);
+                        storm.add(MOVE, p, x[p], y[p], time);
+                    }
+                }
+            }
+            for (int p = 0; p < POINTERS; p++) {
+                if (down[p]) {
+                    storm.add(UP, p, x[p], y[p], time);
+                }
+            }
+            return storm;
+        }
+
+        private static float clamp(float value, int max) {
+            return Math.max(0, Math.min(max - 1, value));
+        }
+    }
+
+    /**
+     * Notes when the piano dispatches each key-down, on the UI thread. Added before the {@link AudioDispatcher}, with
+     * the same priority, so it's notified right before the event is handed to the audio thread.
+     */
+    private static class DispatchProbe implements PianoListener {
+        final long[] dispatchNanos;
+        int downs;
+        int ups;
+        /** If set, holds each key-down back until the audio thread keeps up, see {@link Pipeline#feed} */
+        TimingSoundSet pacedBy;
+
+        DispatchProbe(int capacity) {
+            dispatchNanos = new long[capacity];
+        }
+
+        @Override
+        public void onKeyDown(int keyIdx) {
+            if (pacedBy != null) {
+                while (downs - pacedBy.played > Pipeline.MAX_NOTES_IN_FLIGHT) {
+                    Thread.yield();
+                }
+            }
+            dispatchNanos[downs++] = System.nanoTime();
+        }
+
+        @Override
+        public void onKeyUp(int keyIdx) {
+            ups++;
+        }
+
+        @Override
+        public Priority getPriority() {
+            return Priority.AUDIO;
+        }
+    }
+
+    /**
+     * Times each note from its key-down's dispatch, on the audio thread. Every sound maker plays exactly one note per
+     * key-down, in order, so the n-th note belongs to the n-th key-down.
+     */
+    private static class TimingSoundSet implements SoundSet {
+        final DispatchProbe probe;
+        final LatencyHistogram latency = new LatencyHistogram();
+        volatile int played;
+        volatile int released;
+        volatile Thread audioThread;
+
+        TimingSoundSet(DispatchProbe probe) {
+            this.probe = probe;
+        }
+
+        @Override
+        public void playNote(int keyIdx) {
+            // The ring hand-over publishes the probe's write to us.
+            latency.record((System.nanoTime() - probe.dispatchNanos[played]) / 1_000);
+            audioThread = Thread.currentThread();
+            played++;
+        }
+
+        @Override
+        public void releaseNote(int keyIdx) {
+            released++;
+        }
+
+        @Override
+        public void close() {
+            // nothing to release
+        }
+    }
+
+    /**
+     * The pipeline under test, as {@link PianoCanvas} wires it.
+     */
+    private static class Pipeline {
+        final Piano piano = new Piano(WIDTH, HEIGHT);
+        final TouchTracker tracker = new TouchTracker(piano);
+        final AppConfigTrigger configTrigger = new AppConfigTrigger();
+        final SpyCallback configCallback = new SpyCallback();
+        final DispatchProbe probe;
+        final AudioDispatcher dispatcher = new AudioDispatcher(piano);
+        final TimingSoundSet soundSet;
+        final LatencyHistogram uiNanosPerSample = new LatencyHistogram();
+        /** Well below the ring's capacity, even counting the key-ups, and the events of the next sample */
+        static final int MAX_NOTES_IN_FLIGHT = AudioDispatcher.CAPACITY / 8;
+
+        Pipeline(String soundMaker, int maxEvents) {
+            probe = new DispatchProbe(maxEvents);
+            soundSet = new TimingSoundSet(probe);
+            configTrigger.setConfigRequestCallback(configCallback);
+            piano.addListener(configTrigger);
+            piano.addListener(probe);
+            piano.addListener(dispatcher);
+            if (soundMaker.equals("melodic")) {
+                dispatcher.addListener(new MelodicKeySoundMaker(soundSet,
+                        new MultipleSongsMelodyPlayer(Arrays.asList(Melody.all))));
+            } else {
+                dispatcher.addListener(new StraightKeySoundMaker(soundSet));
+            }
+            dispatcher.start();
+        }
+
+        /**
+         * Feeds the storm, as fast as the audio thread keeps up, timing each sample; the histogram holds nanoseconds,
+         * not micros.
+         *
+         * <p>
+         * The dispatcher drops events rather than block the UI thread, should the audio thread fall a whole ring
+         * behind. No toddler comes anywhere near that, but this storm would, so we wait for the audio thread outside
+         * the timed part, and nothing's dropped.
+         * </p>
+         */
+        void feed(Storm storm) {
+            for (int i = 0; i < storm.size; i++) {
+                while (probe.downs - soundSet.played > MAX_NOTES_IN_FLIGHT) {
+                    Thread.yield();
+                }
+                final long start = System.nanoTime();
+                final boolean inSync;
+                switch (storm.actions[i]) {
+                    case DOWN:
+                        inSync = tracker.pointerDown(storm.pointers[i], storm.xs[i], storm.ys[i], storm.times[i]);
+                        break;
+                    case MOVE:
+                        inSync = tracker.pointerMove(storm.pointers[i], storm.xs[i], storm.ys[i], storm.times[i]);
+                        break;
+                    default:
+                        inSync = tracker.pointerUp(storm.pointers[i], storm.times[i]);
+                }
+                uiNanosPerSample.record(System.nanoTime() - start);
+                if (!inSync) {
+                    throw new AssertionError("storm got out of sync at sample " + i);
+                }
+            }
+        }
+
+        void awaitAudio() throws InterruptedException {
+            while (soundSet.played < probe.downs) {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    @ParameterizedTest(name = "[{index}] seed {0}, {1}")
+    @CsvSource({"1, straight", "42, straight", "2024, melodic"})
+    @Timeout(value = 120, unit = TimeUnit.SECONDS)
+    void mash(long seed, String soundMaker) throws InterruptedException {
+        final Storm storm = Storm.generate(seed);
+        // Interpolated swipes press several keys per sample, but never more than this.
+        final int maxEvents = storm.size * (2 + 2 * TouchTracker.MAX_INTERPOLATION_STEPS);
+
+        // Warm up the JIT on a separate pipeline, so we measure steady state, like a device after a few seconds.
+        Pipeline warmUp = new Pipeline(soundMaker, maxEvents);
+        warmUp.feed(storm);
+        warmUp.awaitAudio();
+        warmUp.dispatcher.quit();
+
+        Pipeline pipeline = new Pipeline(soundMaker, maxEvents);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assertTrue(threads.isThreadAllocatedMemorySupported(), "JVM can't count allocations");
+        threads.setThreadAllocatedMemoryEnabled(true);
+        final long uiThread = Thread.currentThread().getId();
+
+        final long uiBytesBefore = threads.getThreadAllocatedBytes(uiThread);
+        final long start = System.nanoTime();
+        pipeline.feed(storm);
+        final long fed = System.nanoTime();
+        final long uiBytes = threads.getThreadAllocatedBytes(uiThread) - uiBytesBefore;
+        pipeline.awaitAudio();
+
+        // The audio thread allocated nothing before its first note, so its total is what the storm cost it.
+        final long audioBytes = threads.getThreadAllocatedBytes(pipeline.soundSet.audioThread.getId());
+        pipeline.dispatcher.quit();
+
+        // Correctness first: nothing lost, nothing stuck.
+        final int keyEvents = pipeline.probe.downs + pipeline.probe.ups;
+        assertEquals(0, pipeline.dispatcher.getDroppedEvents(), "paced to the audio thread, nothing's dropped");
+        assertEquals(pipeline.probe.downs, pipeline.soundSet.played, "every key-down played a note");
+        assertEquals(pipeline.probe.downs, pipeline.probe.ups, "every finger lifted, so every key was released");
+        for (int key = 0; key < pipeline.piano.get_keys_count(); key++) {
+            assertFalse(pipeline.piano.is_key_pressed(key), "key " + key + " stuck");
+        }
+
+        final double seconds = (fed - start) / 1e9;
+        final double samplesPerSecond = storm.size / seconds;
+        final double eventsPerSecond = keyEvents / seconds;
+        final double uiBytesPerSample = (double) uiBytes / storm.size;
+        final double audioBytesPerEvent = (double) audioBytes / keyEvents;
+        final LatencyHistogram audio = pipeline.soundSet.latency;
+        final LatencyHistogram ui = pipeline.uiNanosPerSample;
+
+        System.out.println(String.format(Locale.ROOT, "Toddler mash, seed %d, %s: %d touch samples, %d key events"
+                        + " (%d config triggers)%n"
+                        + "  throughput: %.0f samples/s, %.0f key events/s%n"
+                        + "  UI thread per sample: p50 %dns, p99 %dns; %.1f bytes allocated%n"
+                        + "  dispatch-to-note: p50 %dus, p95 %dus, p99 %dus; audio thread %.1f bytes allocated per event",
+                seed, soundMaker, storm.size, keyEvents, pipeline.configCallback.triggerCount,
+                samplesPerSecond, eventsPerSecond,
+                ui.getPercentileMicros(50), ui.getPercentileMicros(99), uiBytesPerSample,
+                audio.getPercentileMicros(50), audio.getPercentileMicros(95), audio.getPercentileMicros(99),
+                audioBytesPerEvent));
+
+        assertTrue(uiBytesPerSample <= baseline("maxUiBytesPerSample"),
+                "UI thread allocations regressed: " + uiBytesPerSample + " bytes per sample");
+        assertTrue(audioBytesPerEvent <= baseline("maxAudioBytesPerEvent"),
+                "audio thread allocations regressed: " + audioBytesPerEvent + " bytes per event");
+
+        if (CHECK_TIMING) {
+            assertTrue(samplesPerSecond >= baseline("minSamplesPerSecond"),
+                    "throughput regressed: " + samplesPerSecond + " samples/s");
+            assertTrue(ui.getPercentileMicros(99) <= baseline("maxUiP99Nanos"),
+                    "UI thread time per sample regressed: p99 " + ui.getPercentileMicros(99) + "ns");
+            assertTrue(audio.getPercentileMicros(99) <= baseline("maxDispatchToNoteP99Micros"),
+                    "dispatch-to-note latency regressed: p99 " + audio.getPercentileMicros(99) + "us");
+        }
+    }
+
+    /**
+     * Records a storm's key events in a journal, exports it, and replays it into a fresh pipeline, as fast as the
+     * audio thread keeps up: the replay must press and release the same keys, and play the same notes.
+     */
+    @Test
+    @Timeout(value = 120, unit = TimeUnit.SECONDS)
+    void replayedJournal() throws InterruptedException, IOException {
+        final Storm storm = Storm.generate(7);
+        final int maxEvents = storm.size * (2 + 2 * TouchTracker.MAX_INTERPOLATION_STEPS);
+
+        Pipeline live = new Pipeline("straight", maxEvents);
+        KeyEventJournal journal = new KeyEventJournal(live.piano, maxEvents);
+        live.piano.addListener(journal);
+        live.feed(storm);
+        live.awaitAudio();
+        live.dispatcher.quit();
+
+        ByteArrayOutputStream exported = new ByteArrayOutputStream();
+        journal.writeTo(exported);
+        JournalReplayer replayer = KeyEventJournal.read(new ByteArrayInputStream(exported.toByteArray()));
+        assertEquals(live.probe.downs + live.probe.ups, replayer.size(), "journal must hold the whole storm");
+
+        Pipeline replay = new Pipeline("straight", maxEvents);
+        // The replay can't wait between touch samples, like feed() does: the probe waits before each key-down.
+        replay.probe.pacedBy = replay.soundSet;
+        replayer.replay(replay.piano, false); // this thread owns the piano, as the UI thread does in the app
+        replay.awaitAudio();
+        replay.dispatcher.quit();
+
+        assertEquals(0, replay.dispatcher.getDroppedEvents());
+        assertEquals(live.probe.downs, replay.probe.downs);
+        assertEquals(live.probe.ups, replay.probe.ups);
+        assertEquals(live.soundSet.played, replay.soundSet.played);
+        for (int key = 0; key < replay.piano.get_keys_count(); key++) {
+            assertFalse(replay.piano.is_key_pressed(key), "key " + key + " stuck");
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.nicobrailo.pianoli;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TouchTrackerTest {
+    private Piano piano;
+    private SpyListener listener;
+    private TouchTracker tracker;
+
+    /** Centre of big key 0 */
+    private float x0;
+    /** Centre of big key 2 */
+    private float x2;
+    /** Low on the keys, below the flats */
+    private float yLow;
+
+    @BeforeEach
+    void setup() {
+        piano = new Piano(1920, 1080);
+        listener = new SpyListener();
+        piano.addListener(listener);
+        tracker = new TouchTracker(piano);
+
+        x0 = piano.get_keys_width() * 0.5f;
+        x2 = piano.get_keys_width() * 1.5f;
+        yLow = 1000;
+    }
+
+    @Test
+    void downMoveUp() {
+        assertTrue(tracker.pointerDown(0, x0, yLow, 0));
+        assertTrue(piano.is_key_pressed(0));
+        assertEquals(0, tracker.getKeyForPointer(0));
+
+        assertTrue(tracker.pointerMove(0, x2, yLow, 0));
+        assertFalse(piano.is_key_pressed(0), "sliding off a key releases it");
+        assertTrue(piano.is_key_pressed(2));
+        assertEquals(2, tracker.getKeyForPointer(0));
+
+        assertTrue(tracker.pointerUp(0, 0));
+        assertFalse(piano.is_key_pressed(2));
+        assertEquals(-1, tracker.getKeyForPointer(0));
+        assertEquals(2, listener.downCount);
+        assertEquals(2, listener.upCount);
+    }
+
+    @Test
+    void moveWithinKeyChangesNothing() {
+        tracker.pointerDown(0, x0, yLow, 0);
+        assertTrue(tracker.pointerMove(0, x0 + 1, yLow - 1, 0));
+        assertEquals(1, listener.downCount);
+        assertEquals(0, listener.upCount);
+    }
+
+    @Test
+    void upReleasesTrackedKey() {
+        tracker.pointerDown(3, x0, yLow, 0);
+        // no move event in between: still release what was pressed, not what's under the final position.
+        assertTrue(tracker.pointerUp(3, 0));
+        assertEquals(0, listener.lastUpIdx);
+        assertFalse(piano.is_key_pressed(0));
+    }
+
+    @Test
+    void pointersAreIndependent() {
+        tracker.pointerDown(0, x0, yLow, 0);
+        tracker.pointerDown(1, x2, yLow, 0);
+        tracker.pointerUp(0, 0);
+
+        assertFalse(piano.is_key_pressed(0));
+        assertTrue(piano.is_key_pressed(2));
+        assertEquals(2, tracker.getKeyForPointer(1));
+    }
+
+    @Test
+    void repeatedDownIsOutOfSync() {
+        tracker.pointerDown(0, x0, yLow, 0);
+        assertFalse(tracker.pointerDown(0, x2, yLow, 0));
+        assertEquals(1, listener.downCount, "out-of-sync events mustn't press anything");
+    }
+
+    @Test
+    void unknownPointerIsOutOfSync() {
+        assertFalse(tracker.pointerMove(0, x0, yLow, 0));
+        assertFalse(tracker.pointerUp(0, 0));
+        assertEquals(0, listener.downCount);
+        assertEquals(0, listener.upCount);
+    }
+
+    @Test
+    void resetForgetsPointers() {
+        tracker.pointerDown(0, x0, yLow, 0);
+        tracker.reset();
+        assertEquals(-1, tracker.getKeyForPointer(0));
+        assertFalse(tracker.pointerUp(0, 0));
+        assertTrue(tracker.pointerDown(0, x0, yLow, 0), "pointer may go down again after a reset");
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {-1, TouchTracker.MAX_POINTER_ID + 1, Integer.MAX_VALUE, Integer.MIN_VALUE})
+    void invalidPointerIdsRejected(int pointerId) {
+        assertFalse(tracker.pointerDown(pointerId, x0, yLow, 0));
+        assertFalse(tracker.pointerMove(pointerId, x0, yLow, 0));
+        assertFalse(tracker.pointerUp(pointerId, 0));
+        assertEquals(-1, tracker.getKeyForPointer(pointerId));
+    }
+
+    @Test
+    void highestPointerIdTracked() {
+        assertTrue(tracker.pointerDown(TouchTracker.MAX_POINTER_ID, x0, yLow, 0));
+        assertTrue(tracker.pointerUp(TouchTracker.MAX_POINTER_ID, 0));
+    }
+
+    /**
+     * Records key events, with their time.
+     */
+    private static class EventLog implements PianoListener {
+        final Piano piano;
+        final List<String> events = new ArrayList<>();
+
+        EventLog(Piano piano) {
+            this.piano = piano;
+        }
+
+        @Override
+        public void onKeyDown(int keyIdx) {
+            events.add("down " + keyIdx + " @" + piano.getEventTime());
+        }
+
+        @Override
+        public void onKeyUp(int keyIdx) {
+            events.add("up " + keyIdx + " @" + piano.getEventTime());
+        }
+    }
+
+    @Test
+    void eventTimesPassedOn() {
+        EventLog log = new EventLog(piano);
+        piano.addListener(log);
+
+        tracker.pointerDown(0, x0, yLow, 100);
+        tracker.pointerUp(0, 150);
+        assertEquals(Arrays.asList("down 0 @100", "up 0 @150"), log.events);
+    }
+
+    /**
+     * A swipe from key 0 to key 8 within a single sample must still sound every key in between.
+     */
+    @Test
+    void glissandoHitsEveryKey() {
+        EventLog log = new EventLog(piano);
+        piano.addListener(log);
+
+        float x8 = piano.get_keys_width() * 4.5f;
+        tracker.pointerDown(0, x0, yLow, 1000);
+        tracker.pointerMove(0, x8, yLow, 1080);
+
+        // Low on the keyboard, so only big keys.
+        assertEquals(9, log.events.size(), "every key crossed: " + log.events);
+        assertEquals("down 0 @1000", log.events.get(0));
+        for (int key = 2; key <= 8; key += 2) {
+            String up = log.events.get(key - 1);
+            String down = log.events.get(key);
+            assertTrue(up.startsWith("up " + (key - 2) + " @"), "release before press: " + log.events);
+            assertTrue(down.startsWith("down " + key + " @"), "keys in order: " + log.events);
+
+            // Times are interpolated: the swipe crosses into key n at 1000 + 80 * (n-1)/8 ms,
+            // detected at most one interpolation step (under 6ms here) later.
+            long crossedAt = 1000 + 80 * (key - 1) / 8;
+            long time = Long.parseLong(down.substring(down.indexOf('@') + 1));
+            assertTrue(time >= crossedAt && time <= crossedAt + 6, "key " + key + " pressed at " + time);
+            assertEquals(up.substring(up.indexOf('@')), down.substring(down.indexOf('@')), "release and press together");
+        }
+    }
+
+    @Test
+    void glissandoAcrossFlats() {
+        EventLog log = new EventLog(piano);
+        piano.addListener(log);
+
+        // Along the flats' height: C, C#, D, D#, E, (no flat), F
+        float yHigh = 10;
+        tracker.pointerDown(0, 1, yHigh, 0);
+        tracker.pointerMove(0, piano.get_keys_width() * 3.5f, yHigh, 100);
+
+        int[] expected = {0, 1, 2, 3, 4, 6};
+        int down = 0;
+        for (String event : log.events) {
+            if (event.startsWith("down ")) {
+                assertEquals(expected[down++], Integer.parseInt(event.split(" ")[1]), "keys in order: " + log.events);
+            }
+        }
+        assertEquals(expected.length, down, "every key crossed: " + log.events);
+    }
+
+    @Test
+    void interpolationIsCapped() {
+        // An absurd jump, e.g. from a glitching panel, mustn't cost more than the cap.
+        Piano wide = new Piano(1920, 1080);
+        SpyListener spy = new SpyListener();
+        wide.addListener(spy);
+        TouchTracker wideTracker = new TouchTracker(wide);
+
+        wideTracker.pointerDown(0, 0, 1000, 0);
+        wideTracker.pointerMove(0, 1e9f, 1000, 1);
+        assertTrue(spy.downCount <= 1 + TouchTracker.MAX_INTERPOLATION_STEPS, "pressed " + spy.downCount);
+
+        wideTracker.pointerMove(0, Float.NaN, Float.NaN, 2); // mustn't hang, or throw
+    }
+
+    private static final int DOWN = 0;
+    private static final int MOVE = 1;
+    private static final int UP = 2;
+
+    /**
+     * Replays a three-finger gesture: fingers land on different keys, flats included, slide across the keyboard
+     * (changing keys many times), and lift one by one.
+     */
+    private void replayGesture() {
+        final int fingers = 3;
+        final float width = 1920;
+        for (int f = 0; f < fingers; f++) {
+            feed(DOWN, f, 100 + f * 300, f == 1 ? 200 : 900);
+        }
+        for (int step = 0; step < 200; step++) {
+            for (int f = 0; f < fingers; f++) {
+                // mostly small moves, but some big jumps too, which are interpolated.
+                float x = (100 + f * 300 + step * 17 + (step % 50 == 0 ? 900 : 0)) % width;
+                float y = (step + f) % 2 == 0 ? 300 : 900; // alternate between flats' and big keys' height
+                feed(MOVE, f, x, y);
+            }
+        }
+        for (int f = 0; f < fingers; f++) {
+            feed(UP, f, 0, 0);
+        }
+    }
+
+    private void feed(int action, int pointerId, float x, float y) {
+        boolean inSync;
+        switch (action) {
+            case DOWN:
+                inSync = tracker.pointerDown(pointerId, x, y, 0);
+                break;
+            case MOVE:
+                inSync = tracker.pointerMove(pointerId, x, y, 0);
+                break;
+            default:
+                inSync = tracker.pointerUp(pointerId, 0);
+        }
+        if (!inSync) {
+            throw new AssertionError("gesture got out of sync at pointer " + pointerId);
+        }
+    }
+
+    /**
+     * Holds the config keys, as an adult opening the settings would: successfully, and, letting go too early, not.
+     */
+    private void unlockAttempts(AppConfigTrigger trigger) {
+        for (int attempt = 0; attempt < 10; attempt++) {
+            final int first = trigger.getNextExpectedKey();
+            piano.doKeyDown(first);
+            if (attempt % 2 == 0) {
+                final int second = trigger.getNextExpectedKey();
+                piano.doKeyDown(second);
+                piano.doKeyUp(second);
+            }
+            piano.doKeyUp(first);
+        }
+    }
+
+    /**
+     * Touch tracking runs for every touch sample, so it must not give the garbage collector any work; neither must
+     * the listeners that {@link PianoCanvas} puts behind it on the UI thread, like the config trigger.
+     */
+    @Test
+    void gestureDoesNotAllocate() {
+        AppConfigTrigger trigger = new AppConfigTrigger();
+        SpyCallback callback = new SpyCallback();
+        trigger.setConfigRequestCallback(callback);
+        piano.addListener(trigger);
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assertTrue(threads.isThreadAllocatedMemorySupported(), "JVM can't count allocations");
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        // Warm up: class loading, and the JIT, may allocate the first few times.
+        for (int i = 0; i < 20; i++) {
+            replayGesture();
+            unlockAttempts(trigger);
+        }
+
+        // Measuring itself can allocate a little; measure that too, so we can subtract it.
+        long before = threads.getThreadAllocatedBytes(threadId);
+        long overhead = threads.getThreadAllocatedBytes(threadId) - before;
+
+        final int unlocksBefore = callback.triggerCount;
+        before = threads.getThreadAllocatedBytes(threadId);
+        replayGesture();
+        unlockAttempts(trigger);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before - overhead;
+
+        assertTrue(listener.downCount > 200, "gesture should change keys a lot, but only pressed " + listener.downCount);
+        assertEquals(5, callback.triggerCount - unlocksBefore, "half the unlock attempts should succeed");
+        assertEquals(0, allocated, "bytes allocated while replaying the gesture");
+    }
+}
@@ -0,0 +1,105 @@
+package com.nicobrailo.pianoli.sound;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Observable, controllable dummy {@link SamplePool}, for test purposes.
+ *
+ * <p>
+ * Loads never complete by themselves: tests decide when (and if) they do, via {@link #complete(int, boolean)}.
+ * </p>
+ */
+class FakeSamplePool implements SamplePool {
+    /** Bytes each loaded sample "file" takes up */
+    static final long FILE_BYTES = 100;
+
+    /** note numbers passed to {@link #loadNote(String, int)}, in call order; 0 for {@link #loadNoNote()} */
+    final List<Integer> loadedNotes = new ArrayList<>();
+    /** sample ids passed to {@link #play(int, float)}, in call order */
+    final List<Integer> played = new ArrayList<>();
+    /** playback rates passed to {@link #play(int, float)}, in call order */
+    final List<Float> rates = new ArrayList<>();
+    /** stream ids passed to {@link #stop(int)}, in call order */
+    final List<Integer> stopped = new ArrayList<>();
+    /** last volume passed to {@link #setVolume(int, float)}, per stream id */
+    final Map<Integer, Float> volumes = new HashMap<>();
+    /** if <code>true</code>, {@link #play(int, float)} fails, like a mixer without resources */
+    boolean failPlays = false;
+    boolean released = false;
+
+    private OnLoadedListener listener;
+    private int nextId = 1;
+
+    @Override
+    public void setOnLoadedListener(OnLoadedListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public int loadNote(String soundSetName, int noteNum) {
+        loadedNotes.add(noteNum);
+        return nextId++;
+    }
+
+    @Override
+    public int loadNoNote() {
+        loadedNotes.add(0);
+        return nextId++;
+    }
+
+    /**
+     * Simulates the (asynchronous) completion of loading a sample.
+     */
+    void complete(int sampleId, boolean success) {
+        listener.onLoaded(sampleId, success);
+    }
+
+    /**
+     * Completes all loads successfully.
+     */
+    void completeAll() {
+        for (int id = 1; id < nextId; id++) {
+            complete(id, true);
+        }
+    }
+
+    /**
+     * @return the sample id that was assigned to the <code>n</code>-th load call (0-based).
+     */
+    int idOfLoad(int n) {
+        return n + 1;
+    }
+
+    /**
+     * @return stream ids are 1-based play-call counters: the first play is stream 1, the second stream 2, etc.
+     */
+    @Override
+    public int play(int sampleId, float rate) {
+        played.add(sampleId);
+        rates.add(rate);
+        return failPlays ? 0 : played.size();
+    }
+
+    @Override
+    public void stop(int streamId) {
+        stopped.add(streamId);
+    }
+
+    @Override
+    public void setVolume(int streamId, float volume) {
+        volumes.put(streamId, volume);
+    }
+
+    @Override
+    public long getLoadedFileBytes() {
+        return (nextId - 1) * FILE_BYTES;
+    }
+
+    @Override
+    public void release() {
+        released = true;
+    }
+}
@@ -1,10 +1,12 @@
 package com.nicobrailo.pianoli.sound;
 
+import com.nicobrailo.pianoli.PianoListener;
 import com.nicobrailo.pianoli.melodies.Melody;
 import com.nicobrailo.pianoli.melodies.SingleSongMelodyPlayer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
@@ -76,10 +78,45 @@ class MelodicKeySoundMakerTest {
     }
 
     @Test
-    void onKeyUpDoesNothing() {
+    void onKeyUpWithoutKeyDownDoesNothing() {
         for (int i = 0; i <= SampledSoundSet.SOUNDSET_SAMPLES_SIZE; i++) {
             soundMaker.onKeyUp(i);
             assertEquals(SpySoundSet.NONE, spySoundSet.lastPlayed);
+            assertEquals(SpySoundSet.NONE, spySoundSet.lastReleased);
         }
     }
+
+    @Test
+    void onKeyUpReleasesMelodyNote() {
+        soundMaker.onKeyDown(20); // C
+        soundMaker.onKeyDown(10); // D
+
+        soundMaker.onKeyUp(20);
+        assertEquals(0, spySoundSet.lastReleased, "key-up should release the note its key-down played: C");
+        soundMaker.onKeyUp(10);
+        assertEquals(2, spySoundSet.lastReleased, "key-up should release the note its key-down played: D");
+
+        spySoundSet.lastReleased = SpySoundSet.NONE;
+        soundMaker.onKeyUp(10);
+        assertEquals(SpySoundSet.NONE, spySoundSet.lastReleased, "note should only be released once");
+    }
+
+    @Test
+    void heldKeysBeyondLimitAreNotReleased() {
+        for (int key = 0; key <= MelodicKeySoundMaker.MAX_HELD_KEYS; key++) {
+            int keyIdx = ABSURD_NOTE - key;
+            assertDoesNotThrow(() -> soundMaker.onKeyDown(keyIdx));
+        }
+
+        soundMaker.onKeyUp(ABSURD_NOTE - MelodicKeySoundMaker.MAX_HELD_KEYS);
+        assertEquals(SpySoundSet.NONE, spySoundSet.lastReleased, "extra key wasn't tracked, so can't be released");
+        soundMaker.onKeyUp(ABSURD_NOTE);
+        assertEquals(0, spySoundSet.lastReleased, "first key should still release its note, C");
+    }
+
+    @Test
+    void audioPriority() {
+        assertEquals(PianoListener.Priority.AUDIO, soundMaker.getPriority(),
+                "sound makers should be notified before anything slower, like drawing");
+    }
 }
@@ -0,0 +1,86 @@
+package com.nicobrailo.pianoli.sound;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NoteTableTest {
+    /** Tolerance for comparing rates */
+    private static final float EPSILON = 1e-5f;
+
+    /** Slot of the no-note sample in test tables */
+    private static final int NO_NOTE_SLOT = 5;
+
+    @Test
+    void semitones() {
+        assertEquals(0, NoteTable.semitoneOf(0));
+        assertEquals(1, NoteTable.semitoneOf(1));
+        assertEquals(4, NoteTable.semitoneOf(4));
+        assertEquals(NoteTable.NO_NOTE, NoteTable.semitoneOf(5), "no flat between E and F");
+        assertEquals(5, NoteTable.semitoneOf(6));
+        assertEquals(11, NoteTable.semitoneOf(12));
+        assertEquals(NoteTable.NO_NOTE, NoteTable.semitoneOf(13), "no flat between B and C");
+        assertEquals(12, NoteTable.semitoneOf(14));
+    }
+
+    @Test
+    void sampledKeysPlayThemselves() {
+        NoteTable table = SampledSoundSet.NOTES;
+        for (int keyIdx = 0; keyIdx < SampledSoundSet.SOUNDSET_SAMPLES_SIZE; keyIdx++) {
+            if (NoteTable.semitoneOf(keyIdx) != NoteTable.NO_NOTE) {
+                assertEquals(keyIdx, table.getSlot(keyIdx), "key " + keyIdx + " has its own sample");
+                assertEquals(1f, table.getRate(keyIdx), "key " + keyIdx + " has its own sample");
+            }
+        }
+    }
+
+    @Test
+    void allKeysCoveredWithinSoundPoolRange() {
+        NoteTable table = SampledSoundSet.NOTES;
+        assertEquals(NoteTable.SIZE, table.size());
+        for (int keyIdx = 0; keyIdx < table.size(); keyIdx++) {
+            float rate = table.getRate(keyIdx);
+            assertTrue(rate >= NoteTable.MIN_RATE && rate <= NoteTable.MAX_RATE, "rate " + rate + " for key " + keyIdx);
+            assertTrue(table.getSlot(keyIdx) >= 0 && table.getSlot(keyIdx) < SampledSoundSet.SOUNDSET_SAMPLES_SIZE);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {5, 13, 19, 27, 33, 41, 125})
+    void missingFlatsPlayNoNote(int keyIdx) {
+        NoteTable table = new NoteTable(NoteTable.SIZE, new int[]{0, 14}, NO_NOTE_SLOT);
+        assertEquals(NO_NOTE_SLOT, table.getSlot(keyIdx));
+        assertEquals(1f, table.getRate(keyIdx));
+    }
+
+    @Test
+    void sparseSamplesShiftNearest() {
+        // only the C's of two octaves
+        NoteTable table = new NoteTable(NoteTable.SIZE, new int[]{0, 14}, NO_NOTE_SLOT);
+
+        assertEquals(0, table.getSlot(2), "D is nearest to the low C");
+        assertEquals((float) Math.pow(2, 2 / 12.0), table.getRate(2), EPSILON);
+
+        assertEquals(14, table.getSlot(12), "B is nearest to the high C");
+        assertEquals((float) Math.pow(2, -1 / 12.0), table.getRate(12), EPSILON);
+
+        assertEquals(14, table.getSlot(7), "F# is a tritone from both C's, so prefers pitching down");
+        assertEquals((float) Math.pow(2, -6 / 12.0), table.getRate(7), EPSILON);
+    }
+
+    @Test
+    void farKeysFoldByOctaves() {
+        NoteTable table = new NoteTable(NoteTable.SIZE, new int[]{0}, NO_NOTE_SLOT);
+
+        assertEquals(2f, table.getRate(14), EPSILON, "one octave up is still reachable");
+        assertEquals((float) Math.pow(2, 2 / 12.0), table.getRate(28 + 2), EPSILON,
+                "D, two octaves up: beyond SoundPool's range, so folded down to the nearest reachable D");
+    }
+
+    @Test
+    void needsSamples() {
+        assertThrows(IllegalArgumentException.class, () -> new NoteTable(NoteTable.SIZE, new int[0], NO_NOTE_SLOT));
+    }
+}
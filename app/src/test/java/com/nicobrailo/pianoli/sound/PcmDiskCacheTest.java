@@ -0,0 +1,178 @@
+package com.nicobrailo.pianoli.sound;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PcmDiskCacheTest {
+    private static final PcmSample SAMPLE = new PcmSample(new short[]{0, 1, -1, Short.MAX_VALUE, Short.MIN_VALUE}, 44100);
+    private static final PcmSample STEREO = new PcmSample(new short[]{1, 2, -3, 4, Short.MAX_VALUE, Short.MIN_VALUE}, 2, 48000);
+
+    @TempDir
+    File root;
+
+    private PcmDiskCache cache;
+    private int decodes;
+
+    @BeforeEach
+    void setUp() {
+        cache = new PcmDiskCache(root, 26);
+        decodes = 0;
+    }
+
+    private PcmSample decode() {
+        decodes++;
+        return SAMPLE;
+    }
+
+    @Test
+    void filesAreVersioned() {
+        assertEquals(new File(root, "pcm-v26/soundset_piano/n07.wav"), cache.noteFile("piano", 7));
+        assertEquals(new File(root, "pcm-v26/no_note.wav"), cache.noNoteFile());
+    }
+
+    @Test
+    void writeReadRoundtrip() throws IOException {
+        File file = cache.noteFile("piano", 1);
+        cache.write(file, SAMPLE);
+
+        assertEquals(PcmDiskCache.WAV_HEADER_BYTES + SAMPLE.pcm.length * 2, file.length());
+        PcmSample read = cache.read(file);
+        assertNotNull(read);
+        assertArrayEquals(SAMPLE.pcm, read.pcm);
+        assertEquals(1, read.channels);
+        assertEquals(SAMPLE.sampleRate, read.sampleRate);
+        assertFalse(new File(file.getPath() + ".tmp").exists(), "temp file must be renamed");
+    }
+
+    @Test
+    void stereoIsKept() throws IOException {
+        File file = cache.noteFile("piano", 1);
+        cache.write(file, STEREO);
+
+        PcmSample read = cache.read(file);
+        assertNotNull(read);
+        assertArrayEquals(STEREO.pcm, read.pcm);
+        assertEquals(2, read.channels);
+        assertEquals(STEREO.sampleRate, read.sampleRate);
+    }
+
+    @Test
+    void tooManyChannelsAreNotCached() {
+        File file = cache.noteFile("piano", 1);
+        assertThrows(IOException.class, () -> cache.write(file, new PcmSample(new short[]{1, 2, 3}, 3, 48000)));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    void missingFileIsNotRead() {
+        File file = cache.noteFile("piano", 1);
+        assertNull(cache.read(file));
+    }
+
+    @Test
+    void decodesOnlyOnce() throws IOException {
+        File file = cache.noteFile("piano", 1);
+        assertArrayEquals(SAMPLE.pcm, cache.getOrDecode(file, this::decode).pcm);
+        assertArrayEquals(SAMPLE.pcm, cache.getOrDecode(file, this::decode).pcm);
+
+        assertEquals(1, decodes);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void ensureCachedDecodesOnlyOnce() throws IOException {
+        File file = cache.noteFile("piano", 1);
+        assertEquals(file, cache.ensureCached(file, this::decode));
+        assertEquals(file, cache.ensureCached(file, this::decode));
+
+        assertEquals(1, decodes);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertArrayEquals(SAMPLE.pcm, cache.read(file).pcm);
+    }
+
+    @Test
+    void ensureCachedReplacesTruncatedFile() throws IOException {
+        File file = cache.noteFile("piano", 1);
+        cache.write(file, SAMPLE);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(file.length() - 1);
+        }
+
+        cache.ensureCached(file, this::decode);
+
+        assertEquals(1, decodes);
+        assertEquals(PcmDiskCache.WAV_HEADER_BYTES + SAMPLE.pcm.length * 2, file.length());
+    }
+
+    @Test
+    void truncatedFileIsDecodedAgain() throws IOException {
+        File file = cache.noteFile("piano", 1);
+        cache.write(file, SAMPLE);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(file.length() - 1);
+        }
+
+        assertNull(cache.read(file));
+        assertFalse(file.exists(), "damaged file must be deleted");
+
+        cache.getOrDecode(file, this::decode);
+        assertEquals(1, decodes);
+        assertNotNull(cache.read(file));
+    }
+
+    @Test
+    void garbageIsRejected() throws IOException {
+        File file = cache.noNoteFile();
+        assertTrue(file.getParentFile().mkdirs());
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[PcmDiskCache.WAV_HEADER_BYTES * 2]);
+        }
+
+        assertNull(cache.read(file));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    void failingDecodeIsReported() {
+        File file = cache.noteFile("piano", 1);
+        assertThrows(IOException.class, () -> cache.getOrDecode(file, () -> {
+            throw new IOException("broken mp3");
+        }));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    void staleVersionsDeleted() throws IOException {
+        PcmDiskCache old = new PcmDiskCache(root, 25);
+        old.write(old.noteFile("piano", 1), SAMPLE);
+        cache.write(cache.noteFile("piano", 1), SAMPLE);
+        File unrelated = new File(root, "something-else");
+        assertTrue(unrelated.mkdir());
+
+        cache.deleteStaleVersions();
+
+        assertFalse(new File(root, "pcm-v25").exists());
+        assertNotNull(cache.read(cache.noteFile("piano", 1)));
+        assertTrue(unrelated.exists(), "only our own cache directories may be deleted");
+    }
+
+    @Test
+    void firstUseDeletesStaleVersions() throws IOException {
+        PcmDiskCache old = new PcmDiskCache(root, 25);
+        old.write(old.noteFile("piano", 1), SAMPLE);
+
+        cache.getOrDecode(cache.noteFile("piano", 1), this::decode);
+
+        assertFalse(new File(root, "pcm-v25").exists());
+    }
+}
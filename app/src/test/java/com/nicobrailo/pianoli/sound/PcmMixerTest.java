@@ -0,0 +1,155 @@
+package com.nicobrailo.pianoli.sound;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PcmMixerTest {
+    private static final int RATE = 48000;
+    private static final int VOICES = 4;
+
+    private PcmMixer mixer;
+    private short[] out;
+
+    @BeforeEach
+    void setup() {
+        mixer = new PcmMixer(RATE, VOICES);
+        out = new short[PcmMixer.BLOCK_FRAMES * 2 + 10]; // multiple blocks, plus a partial one
+    }
+
+    /** Constant-valued sample, so mixing results are easy to predict */
+    private static short[] constant(int frames, int value) {
+        short[] pcm = new short[frames];
+        Arrays.fill(pcm, (short) value);
+        return pcm;
+    }
+
+    /** Sample counting up 0, 1, 2, ... so positions are visible in the output */
+    private static short[] ramp(int frames) {
+        short[] pcm = new short[frames];
+        for (int i = 0; i < frames; i++) {
+            pcm[i] = (short) i;
+        }
+        return pcm;
+    }
+
+    @Test
+    void silentWhenIdle() {
+        Arrays.fill(out, (short) 123);
+        assertTrue(mixer.isIdle());
+        assertEquals(0, mixer.render(out, out.length));
+        for (short sample : out) {
+            assertEquals(0, sample, "should overwrite the buffer with silence");
+        }
+    }
+
+    @Test
+    void playsSampleThenEnds() {
+        int id = mixer.addSample(ramp(100), RATE);
+        int stream = mixer.play(id, 1f);
+        assertNotEquals(PcmMixer.NO_STREAM, stream);
+        assertFalse(mixer.isIdle());
+
+        assertEquals(0, mixer.render(out, out.length), "100 frames should be done within one render");
+        assertEquals(0, out[0]);
+        assertEquals(50, out[50]);
+        assertEquals(0, out[150], "silence after the sample ended");
+        assertTrue(mixer.isIdle());
+    }
+
+    @Test
+    void voicesAreSummed() {
+        int a = mixer.addSample(constant(out.length * 2, 1000), RATE);
+        int b = mixer.addSample(constant(out.length * 2, 234), RATE);
+        mixer.play(a, 1f);
+        mixer.play(b, 1f);
+
+        assertEquals(2, mixer.render(out, out.length));
+        assertEquals(1234, out[0]);
+        assertEquals(1234, out[out.length - 1], "also in later blocks");
+    }
+
+    @Test
+    void mixClipsInsteadOfWrapping() {
+        int id = mixer.addSample(constant(1000, Short.MAX_VALUE), RATE);
+        mixer.play(id, 1f);
+        mixer.play(id, 1f);
+
+        mixer.render(out, 10);
+        assertTrue(out[0] >= Short.MAX_VALUE - 2, "should clip at the maximum, but got " + out[0]);
+    }
+
+    @Test
+    void rateAndResampling() {
+        // sample at half our output rate, played an octave up: net step of exactly one frame.
+        int id = mixer.addSample(ramp(1000), RATE / 2);
+        mixer.play(id, 2f);
+        mixer.render(out, 10);
+        assertEquals(9, out[9]);
+
+        mixer.stop(1);
+        int slow = mixer.addSample(ramp(1000), RATE);
+        mixer.play(slow, 0.5f);
+        mixer.render(out, 10);
+        assertEquals(4, out[9], "half speed, interpolated between 4 and 5");
+    }
+
+    @Test
+    void volumeAndStop() {
+        int id = mixer.addSample(constant(10_000, 1000), RATE);
+        int stream = mixer.play(id, 1f);
+
+        mixer.setVolume(stream, 0.5f);
+        mixer.render(out, 10);
+        assertEquals(500, out[0], 1);
+
+        mixer.stop(stream);
+        assertTrue(mixer.isIdle());
+        mixer.setVolume(stream, 1f); // harmless on ended streams
+        mixer.stop(stream);
+    }
+
+    @Test
+    void voicesAreLimited() {
+        int id = mixer.addSample(constant(10_000, 1), RATE);
+        for (int i = 0; i < VOICES; i++) {
+            assertNotEquals(PcmMixer.NO_STREAM, mixer.play(id, 1f));
+        }
+        assertEquals(PcmMixer.NO_STREAM, mixer.play(id, 1f), "no free voice left");
+    }
+
+    @Test
+    void invalidPlaysIgnored() {
+        assertEquals(PcmMixer.NO_STREAM, mixer.play(1, 1f), "no such sample");
+        int id = mixer.addSample(constant(10, 1), RATE);
+        assertEquals(PcmMixer.NO_STREAM, mixer.play(id, 0f), "rate must be positive");
+        assertEquals(PcmMixer.NO_STREAM, mixer.play(id + 1, 1f));
+    }
+
+    @Test
+    void streamIdsAreUnique() {
+        int id = mixer.addSample(constant(10_000, 1), RATE);
+        int first = mixer.play(id, 1f);
+        mixer.stop(first);
+        int second = mixer.play(id, 1f);
+        assertNotEquals(first, second, "stopping an old stream id must not stop a new voice in the same slot");
+
+        mixer.stop(first);
+        assertFalse(mixer.isIdle());
+    }
+
+    @Test
+    void clearForgetsEverything() {
+        int id = mixer.addSample(constant(10_000, 1), RATE);
+        mixer.play(id, 1f);
+        assertEquals(20_000, mixer.getSampleBytes());
+
+        mixer.clear();
+        assertTrue(mixer.isIdle());
+        assertEquals(0, mixer.getSampleBytes());
+        assertEquals(PcmMixer.NO_STREAM, mixer.play(id, 1f));
+    }
+}
@@ -0,0 +1,45 @@
+package com.nicobrailo.pianoli.sound;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PcmSampleTest {
+    @Test
+    void monoIsCopied() {
+        PcmSample sample = PcmSample.fromInterleaved(new short[]{1, 2, 3, 99}, 3, 1, 44100);
+        assertArrayEquals(new short[]{1, 2, 3}, sample.pcm);
+        assertEquals(1, sample.channels);
+        assertEquals(44100, sample.sampleRate);
+        assertSame(sample, sample.toMono());
+    }
+
+    @Test
+    void stereoIsKept() {
+        PcmSample sample = PcmSample.fromInterleaved(new short[]{10, 20, -4, 4, 99}, 4, 2, 48000);
+        assertArrayEquals(new short[]{10, 20, -4, 4}, sample.pcm);
+        assertEquals(2, sample.channels);
+        assertEquals(2, sample.frames());
+    }
+
+    @Test
+    void stereoIsAveraged() {
+        short max = Short.MAX_VALUE;
+        PcmSample sample = PcmSample.fromInterleaved(new short[]{10, 20, -4, 4, max, max}, 6, 2, 48000).toMono();
+        assertArrayEquals(new short[]{15, 0, max}, sample.pcm, "averaging must not overflow");
+        assertEquals(1, sample.channels);
+        assertEquals(48000, sample.sampleRate);
+    }
+
+    @Test
+    void partialFrameDropped() {
+        PcmSample sample = PcmSample.fromInterleaved(new short[]{10, 20, 30}, 3, 2, 48000);
+        assertArrayEquals(new short[]{10, 20}, sample.pcm);
+        assertArrayEquals(new short[]{15}, sample.toMono().pcm);
+    }
+
+    @Test
+    void needsChannels() {
+        assertThrows(IllegalArgumentException.class, () -> PcmSample.fromInterleaved(new short[0], 0, 0, 48000));
+    }
+}
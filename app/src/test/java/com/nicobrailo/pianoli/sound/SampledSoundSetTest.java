@@ -0,0 +1,335 @@
+package com.nicobrailo.pianoli.sound;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SampledSoundSetTest {
+    /** Key index in the middle of the soundset, which is loaded first */
+    private static final int CENTRAL_KEY = SampledSoundSet.SOUNDSET_SAMPLES_SIZE / 2;
+
+    private FakeSamplePool pool;
+    private ManualTicker ticker;
+    private long fakeNow;
+
+    /** Ticks only when the test says so */
+    private static class ManualTicker extends ReleaseTicker {
+        @Override
+        void startTimer() {
+            // manual ticking only
+        }
+
+        @Override
+        void stopTimer() {
+            // manual ticking only
+        }
+    }
+
+    @BeforeEach
+    void setup() {
+        pool = new FakeSamplePool();
+        ticker = new ManualTicker();
+        fakeNow = 1;
+    }
+
+    /**
+     * @param loader where to run the background loading.
+     */
+    private SampledSoundSet createSoundSet(Executor loader) {
+        return new SampledSoundSet(pool, "test", loader, ticker) {
+            @Override
+            long getNow() {
+                return fakeNow;
+            }
+        };
+    }
+
+    /**
+     * Loads everything synchronously (but completion is still up to the test).
+     */
+    private SampledSoundSet createSoundSet() {
+        return createSoundSet(Runnable::run);
+    }
+
+    @Test
+    void notesOnScreenLoadFirst() {
+        new SampledSoundSet(pool, "test", Runnable::run, ticker, 10);
+
+        // keys 5, 4, 6, 3 -> notes no-note, 5, 6, 4: the middle of the screen, not of the soundset
+        assertEquals(Arrays.asList(0, 5, 6, 4), pool.loadedNotes.subList(0, 4));
+        List<Integer> onScreen = new ArrayList<>(pool.loadedNotes.subList(0, 10));
+        Collections.sort(onScreen);
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), onScreen, "all notes on screen come first");
+    }
+
+    @Test
+    void loadOrderCoversEverySlotOnce() {
+        for (int visibleKeys : new int[]{0, 1, 7, 28, 200}) {
+            int[] order = SampledSoundSet.loadOrder(visibleKeys);
+            int[] sorted = order.clone();
+            Arrays.sort(sorted);
+            for (int slot = 0; slot < SampledSoundSet.SOUNDSET_SAMPLES_SIZE; slot++) {
+                assertEquals(slot, sorted[slot], visibleKeys + " visible keys");
+            }
+        }
+    }
+
+    @Test
+    void centralNotesLoadFirst() {
+        createSoundSet();
+
+        // keys 14, 13, 15, 12 -> notes 13, no-note, 14, 12
+        assertEquals(Arrays.asList(13, 0, 14, 12), pool.loadedNotes.subList(0, 4));
+    }
+
+    @Test
+    void noNoteLoadedOnlyOnce() {
+        createSoundSet();
+
+        assertEquals(1, Collections.frequency(pool.loadedNotes, 0), "shared no-note sample should only load once");
+        assertEquals(25, pool.loadedNotes.size(), "24 notes, plus the shared no-note");
+    }
+
+    @Test
+    void notReadyUntilLoaded() {
+        SampledSoundSet soundSet = createSoundSet();
+        assertFalse(soundSet.isNoteReady(CENTRAL_KEY));
+
+        pool.complete(pool.idOfLoad(0), true);
+
+        assertTrue(soundSet.isNoteReady(CENTRAL_KEY));
+        assertFalse(soundSet.isNoteReady(0), "other notes should still be loading");
+        assertFalse(soundSet.isFullyLoaded());
+    }
+
+    @Test
+    void noNoteReadyForAllFlatlessKeys() {
+        SampledSoundSet soundSet = createSoundSet();
+        pool.complete(pool.idOfLoad(1), true); // the no-note sample
+
+        for (int keyIdx : new int[] {5, 13, 19, 27}) {
+            assertTrue(soundSet.isNoteReady(keyIdx), "no-note should be ready for key " + keyIdx);
+        }
+    }
+
+    @Test
+    void playBeforeReadyIsDeferred() {
+        SampledSoundSet soundSet = createSoundSet();
+
+        soundSet.playNote(CENTRAL_KEY);
+        assertTrue(pool.played.isEmpty(), "can't play what isn't loaded yet");
+
+        fakeNow += TimeUnit.MILLISECONDS.toNanos(SampledSoundSet.PENDING_PLAY_TIMEOUT_MS);
+        pool.complete(pool.idOfLoad(0), true);
+        assertEquals(Collections.singletonList(pool.idOfLoad(0)), pool.played,
+                "note played while loading should sound as soon as it is loaded");
+
+        pool.complete(pool.idOfLoad(0), true);
+        assertEquals(1, pool.played.size(), "deferred note should only play once");
+    }
+
+    @Test
+    void stalePendingPlayIsDropped() {
+        SampledSoundSet soundSet = createSoundSet();
+
+        soundSet.playNote(CENTRAL_KEY);
+        fakeNow += TimeUnit.MILLISECONDS.toNanos(SampledSoundSet.PENDING_PLAY_TIMEOUT_MS + 1);
+        pool.complete(pool.idOfLoad(0), true);
+
+        assertTrue(pool.played.isEmpty(), "note should not play when its sample loads too late");
+        assertEquals(1, soundSet.getNotesDropped());
+    }
+
+    @Test
+    void retriggeredKeyChokesItself() {
+        SampledSoundSet soundSet = createSoundSet();
+        pool.completeAll();
+
+        soundSet.playNote(CENTRAL_KEY);
+        soundSet.playNote(CENTRAL_KEY);
+
+        assertEquals(2, pool.played.size());
+        assertEquals(Collections.singletonList(1), pool.stopped, "first note should be cut off by the second");
+        assertEquals(1, soundSet.getVoicesChoked());
+    }
+
+    @Test
+    void playWhenReady() {
+        SampledSoundSet soundSet = createSoundSet();
+        pool.completeAll();
+
+        soundSet.playNote(0);
+        assertEquals(Collections.singletonList(pool.loadedNotes.indexOf(1) + 1), pool.played);
+    }
+
+    @Test
+    void keyBeyondSamplesPlaysShiftedSample() {
+        SampledSoundSet soundSet = createSoundSet();
+        pool.completeAll();
+
+        // one octave above our highest sample: plays that sample (note 24), an octave up.
+        int keyIdx = SampledSoundSet.SOUNDSET_SAMPLES_SIZE + 12;
+        assertTrue(soundSet.isNoteReady(keyIdx));
+        soundSet.playNote(keyIdx);
+
+        assertEquals(Collections.singletonList(pool.loadedNotes.indexOf(24) + 1), pool.played);
+        assertEquals(Collections.singletonList(2f), pool.rates);
+    }
+
+    @Test
+    void deferredShiftedPlayKeepsRate() {
+        SampledSoundSet soundSet = createSoundSet();
+
+        // C# just past our samples, which borrows the highest sample (note 24, a B)
+        soundSet.playNote(SampledSoundSet.SOUNDSET_SAMPLES_SIZE + 1);
+        pool.complete(pool.idOfLoad(pool.loadedNotes.indexOf(24)), true);
+
+        assertEquals(1, pool.rates.size(), "deferred note should play once loaded");
+        assertEquals(Math.pow(2, 2 / 12.0), pool.rates.get(0), 1e-6, "two semitones above B: C#");
+    }
+
+    @Test
+    void playedNoteLoadsFirst() {
+        Queue<Runnable> jobs = new ArrayDeque<>();
+        SampledSoundSet soundSet = createSoundSet(jobs::add);
+
+        soundSet.playNote(0); // far from the centre, so would normally be loaded last
+        jobs.remove().run();
+
+        assertEquals(1, pool.loadedNotes.get(0), "already-played note should be loaded first");
+        assertEquals(13, pool.loadedNotes.get(1), "after that, loading should continue from the centre");
+    }
+
+    @Test
+    void releaseDisabledByDefault() {
+        SampledSoundSet soundSet = createSoundSet();
+        pool.completeAll();
+
+        soundSet.playNote(CENTRAL_KEY);
+        soundSet.releaseNote(CENTRAL_KEY);
+
+        assertFalse(ticker.isRunning(), "without release time, notes should ring to their end");
+        assertTrue(pool.volumes.isEmpty());
+    }
+
+    @Test
+    void releaseFadesThenStops() {
+        SampledSoundSet soundSet = createSoundSet();
+        soundSet.setReleaseMillis(100);
+        pool.completeAll();
+
+        soundSet.playNote(CENTRAL_KEY);
+        soundSet.releaseNote(CENTRAL_KEY);
+        assertTrue(ticker.isRunning());
+
+        fakeNow += TimeUnit.MILLISECONDS.toNanos(50);
+        ticker.tick();
+        float halfway = pool.volumes.get(1);
+        assertTrue(halfway > 0 && halfway < 1, "note should be fading, but volume is " + halfway);
+        assertTrue(pool.stopped.isEmpty());
+
+        fakeNow += TimeUnit.MILLISECONDS.toNanos(50);
+        ticker.tick();
+        assertEquals(Collections.singletonList(1), pool.stopped, "faded note should be stopped");
+        assertEquals(1, soundSet.getVoicesReleased());
+        assertFalse(ticker.isRunning(), "timer should stop when nothing is fading anymore");
+    }
+
+    @Test
+    void closedSoundSetStopsFading() {
+        SampledSoundSet soundSet = createSoundSet();
+        soundSet.setReleaseMillis(100);
+        pool.completeAll();
+
+        soundSet.playNote(CENTRAL_KEY);
+        soundSet.releaseNote(CENTRAL_KEY);
+        soundSet.close();
+        ticker.tick();
+
+        assertFalse(ticker.isRunning());
+        assertTrue(pool.volumes.isEmpty(), "released pool should not be touched anymore");
+    }
+
+    @Test
+    void failedLoadIsNeverPlayed() {
+        SampledSoundSet soundSet = createSoundSet();
+        pool.complete(pool.idOfLoad(0), false);
+
+        soundSet.playNote(CENTRAL_KEY);
+        assertFalse(soundSet.isNoteReady(CENTRAL_KEY));
+        assertTrue(pool.played.isEmpty());
+    }
+
+    @Test
+    void loadTimeAndReadyCallback() {
+        SampledSoundSet soundSet = createSoundSet();
+        int[] callbacks = {0};
+        soundSet.whenReady(() -> callbacks[0]++);
+
+        assertEquals(-1, soundSet.getLoadTimeMillis(), "no load time while still loading");
+        assertEquals(0, callbacks[0]);
+
+        fakeNow += TimeUnit.MILLISECONDS.toNanos(123);
+        pool.completeAll();
+
+        assertTrue(soundSet.isFullyLoaded());
+        assertEquals(123, soundSet.getLoadTimeMillis());
+        assertEquals(1, callbacks[0], "ready-callback should fire once loading is done");
+
+        soundSet.whenReady(() -> callbacks[0]++);
+        assertEquals(2, callbacks[0], "ready-callback should fire immediately when already loaded");
+    }
+
+    @Test
+    void memoryEstimateGrowsWithLoading() {
+        SampledSoundSet soundSet = createSoundSet();
+
+        assertEquals(25 * FakeSamplePool.FILE_BYTES * SampledSoundSet.DECODED_SIZE_FACTOR,
+                soundSet.getEstimatedMemoryBytes());
+    }
+
+    @Test
+    void closeReleasesPool() {
+        SampledSoundSet soundSet = createSoundSet();
+        soundSet.close();
+
+        assertTrue(pool.released);
+    }
+
+    @Test
+    void closeStopsLoading() {
+        Queue<Runnable> jobs = new ArrayDeque<>();
+        SampledSoundSet soundSet = createSoundSet(jobs::add);
+
+        soundSet.close();
+        while (!jobs.isEmpty()) {
+            jobs.remove().run();
+        }
+
+        assertTrue(pool.loadedNotes.isEmpty(), "closed soundset should not bother loading anymore");
+        assertTrue(pool.released);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {-1, NoteTable.SIZE, Integer.MIN_VALUE, Integer.MAX_VALUE})
+    void outOfRangeIgnored(int keyIdx) {
+        SampledSoundSet soundSet = createSoundSet();
+        pool.completeAll();
+
+        assertDoesNotThrow(() -> soundSet.playNote(keyIdx));
+        assertFalse(soundSet.isNoteReady(keyIdx));
+        assertTrue(pool.played.isEmpty());
+    }
+}
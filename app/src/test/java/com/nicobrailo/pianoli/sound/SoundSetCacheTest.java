@@ -0,0 +1,203 @@
+package com.nicobrailo.pianoli.sound;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SoundSetCacheTest {
+    private static final long SIZE = 1000;
+
+    private List<SizedSoundSet> loaded;
+    private SoundSetCache cache;
+
+    @BeforeEach
+    void setup() {
+        loaded = new ArrayList<>();
+        cache = new SoundSetCache(name -> {
+            SizedSoundSet s = new SizedSoundSet(name, SIZE);
+            loaded.add(s);
+            return s;
+        }, Runnable::run, 2, 10 * SIZE);
+    }
+
+    @Test
+    void repeatedGetIsHit() {
+        SoundSet first = cache.get("piano");
+        SoundSet second = cache.get("piano");
+
+        assertSame(first, second, "cached soundset should be reused");
+        assertEquals(1, loaded.size(), "soundset should only be loaded once");
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(SIZE, cache.getCachedBytes());
+    }
+
+    @Test
+    void flippingBetweenTwoIsFree() {
+        cache.get("piano");
+        cache.get("guitar");
+        cache.get("piano");
+        cache.get("guitar");
+
+        assertEquals(2, loaded.size());
+        assertEquals(2, cache.getHits());
+        assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        SizedSoundSet piano = (SizedSoundSet) cache.get("piano");
+        SizedSoundSet guitar = (SizedSoundSet) cache.get("guitar");
+        cache.get("piano"); // guitar is now least recently used
+        cache.get("sine");
+
+        assertTrue(guitar.closed, "least recently used should be evicted and closed");
+        assertFalse(piano.closed, "recently used should survive");
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2 * SIZE, cache.getCachedBytes(), "evicted soundset should no longer be accounted for");
+    }
+
+    @Test
+    void evictsWhenOverMemoryBudget() {
+        cache = new SoundSetCache(name -> new SizedSoundSet(name, SIZE), Runnable::run, 10, SIZE + SIZE / 2);
+
+        SizedSoundSet piano = (SizedSoundSet) cache.get("piano");
+        cache.get("guitar");
+
+        assertTrue(piano.closed, "memory budget only fits one soundset");
+        assertEquals(1, cache.size());
+        assertEquals(SIZE, cache.getCachedBytes());
+    }
+
+    @Test
+    void keepsCurrentEvenIfOverBudget() {
+        cache = new SoundSetCache(name -> new SizedSoundSet(name, 2 * SIZE), Runnable::run, 10, SIZE);
+
+        SizedSoundSet huge = (SizedSoundSet) cache.get("huge");
+        assertFalse(huge.closed, "soundset that was just requested is in use, and should never be evicted");
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void evictsOnceBackgroundLoadingPutsUsOverBudget() {
+        List<Runnable> uiQueue = new ArrayList<>();
+        cache = new SoundSetCache(name -> new LoadingSoundSet(name, SIZE), uiQueue::add, 10, SIZE + SIZE / 2);
+
+        SizedSoundSet piano = (SizedSoundSet) cache.get("piano");
+        ((LoadingSoundSet) piano).finishLoading();
+        LoadingSoundSet guitar = (LoadingSoundSet) cache.get("guitar");
+        assertFalse(piano.closed, "still loading guitar barely takes any memory yet, so piano fits");
+
+        guitar.finishLoading();
+        assertFalse(piano.closed, "budget is only re-checked on the UI thread");
+        for (Runnable task : uiQueue) {
+            task.run();
+        }
+
+        assertTrue(piano.closed, "memory budget only fits one loaded soundset");
+        assertFalse(guitar.closed);
+        assertEquals(SIZE, cache.getCachedBytes());
+    }
+
+    @Test
+    void trimToCurrent() {
+        SizedSoundSet piano = (SizedSoundSet) cache.get("piano");
+        SizedSoundSet guitar = (SizedSoundSet) cache.get("guitar");
+
+        cache.trimToCurrent();
+
+        assertTrue(piano.closed);
+        assertFalse(guitar.closed, "most recently used soundset is in use, and should survive trimming");
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void clearReleasesEverything() {
+        SizedSoundSet piano = (SizedSoundSet) cache.get("piano");
+        SizedSoundSet guitar = (SizedSoundSet) cache.get("guitar");
+
+        cache.clear();
+
+        assertTrue(piano.closed);
+        assertTrue(guitar.closed);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getCachedBytes());
+
+        assertNotSame(guitar, cache.get("guitar"), "after clearing, soundsets should be reloaded");
+    }
+
+    @Test
+    void constructorEnsuresLoaderNotNull() {
+        assertThrows(NullPointerException.class, () -> new SoundSetCache(null, Runnable::run));
+    }
+
+    @Test
+    void constructorEnsuresUiThreadNotNull() {
+        assertThrows(NullPointerException.class, () -> new SoundSetCache(name -> new SpySoundSet(), null));
+    }
+
+    /**
+     * Dummy {@link SoundSet} with a fixed memory size, that remembers if it was closed.
+     */
+    private static class SizedSoundSet extends SpySoundSet {
+        final String name;
+        final long size;
+        boolean closed = false;
+
+        SizedSoundSet(String name, long size) {
+            this.name = name;
+            this.size = size;
+        }
+
+        @Override
+        public long getEstimatedMemoryBytes() {
+            return size;
+        }
+
+        @Override
+        public void close() {
+            assertFalse(closed, "soundset " + name + " should only be closed once");
+            closed = true;
+        }
+    }
+
+    /**
+     * {@link SizedSoundSet} that takes up (almost) no memory until {@link #finishLoading()}, like a real one loading in
+     * the background.
+     */
+    private static class LoadingSoundSet extends SizedSoundSet {
+        private final List<Runnable> whenReady = new ArrayList<>();
+        private boolean ready = false;
+
+        LoadingSoundSet(String name, long size) {
+            super(name, size);
+        }
+
+        void finishLoading() {
+            ready = true;
+            for (Runnable callback : whenReady) {
+                callback.run();
+            }
+            whenReady.clear();
+        }
+
+        @Override
+        public long getEstimatedMemoryBytes() {
+            return ready ? size : 0;
+        }
+
+        @Override
+        public void whenReady(Runnable callback) {
+            if (ready) {
+                callback.run();
+            } else {
+                whenReady.add(callback);
+            }
+        }
+    }
+}
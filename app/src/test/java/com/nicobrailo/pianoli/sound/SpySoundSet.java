@@ -6,12 +6,18 @@ package com.nicobrailo.pianoli.sound;
 public class SpySoundSet implements SoundSet {
     public static final int NONE = Integer.MIN_VALUE;
     public int lastPlayed = NONE;
+    public int lastReleased = NONE;
 
     @Override
     public void playNote(int keyIdx) {
         lastPlayed = keyIdx;
     }
 
+    @Override
+    public void releaseNote(int keyIdx) {
+        lastReleased = keyIdx;
+    }
+
     @Override
     public void close() {
         // dummy implementation, do nothing
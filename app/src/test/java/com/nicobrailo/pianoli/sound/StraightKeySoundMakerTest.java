@@ -1,5 +1,6 @@
 package com.nicobrailo.pianoli.sound;
 
+import com.nicobrailo.pianoli.PianoListener;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -33,10 +34,18 @@ class StraightKeySoundMakerTest {
     }
 
     @Test
-    void onKeyUpDoesNothing() {
+    void onKeyUpReleases() {
         for (int i = 0; i <= SampledSoundSet.SOUNDSET_SAMPLES_SIZE; i++) {
             soundMaker.onKeyUp(i);
-            assertEquals(SpySoundSet.NONE, spySoundSet.lastPlayed);
+            assertEquals(SpySoundSet.NONE, spySoundSet.lastPlayed, "key-up should never play anything");
+            assertEquals(i, spySoundSet.lastReleased,
+                    "Straight key-sound-maker should release the lifted key's own note.");
         }
     }
+
+    @Test
+    void audioPriority() {
+        assertEquals(PianoListener.Priority.AUDIO, soundMaker.getPriority(),
+                "sound makers should be notified before anything slower, like drawing");
+    }
 }
@@ -0,0 +1,143 @@
+package com.nicobrailo.pianoli.sound;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VoiceAllocatorTest {
+    private static final int MAX_VOICES = 3;
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private FakeSamplePool pool;
+    private VoiceAllocator voices;
+
+    @BeforeEach
+    void setup() {
+        pool = new FakeSamplePool();
+        voices = new VoiceAllocator(pool, MAX_VOICES);
+    }
+
+    @Test
+    void differentKeysPlayTogether() {
+        voices.noteOn(1, 11, 1f, 0);
+        voices.noteOn(2, 12, 1f, MS);
+        voices.noteOn(3, 13, 1f, 2 * MS);
+
+        assertEquals(Arrays.asList(11, 12, 13), pool.played);
+        assertTrue(pool.stopped.isEmpty(), "nothing should be cut off while there are free voices");
+        assertEquals(MAX_VOICES, voices.activeVoices(2 * MS));
+    }
+
+    @Test
+    void retriggerChokesOwnVoice() {
+        voices.noteOn(1, 11, 1f, 0);
+        voices.noteOn(2, 12, 1f, MS);
+        voices.noteOn(1, 11, 1f, 2 * MS);
+
+        assertEquals(Collections.singletonList(1), pool.stopped, "first stream, of key 1, should be choked");
+        assertEquals(1, voices.getVoicesChoked());
+        assertEquals(0, voices.getVoicesStolen());
+        assertEquals(2, voices.activeVoices(2 * MS));
+    }
+
+    @Test
+    void fullStealsOldest() {
+        voices.noteOn(1, 11, 1f, 5 * MS);
+        voices.noteOn(2, 12, 1f, 3 * MS); // out of order, so "oldest" isn't simply "first slot"
+        voices.noteOn(3, 13, 1f, 7 * MS);
+        voices.noteOn(4, 14, 1f, 9 * MS);
+
+        assertEquals(Collections.singletonList(2), pool.stopped, "stream of key 2 is oldest, and should be stolen");
+        assertEquals(1, voices.getVoicesStolen());
+        assertEquals(0, voices.getVoicesChoked());
+        assertEquals(MAX_VOICES, voices.activeVoices(9 * MS));
+    }
+
+    @Test
+    void chokeBeatsSteal() {
+        voices.noteOn(1, 11, 1f, 0);
+        voices.noteOn(2, 12, 1f, MS);
+        voices.noteOn(3, 13, 1f, 2 * MS);
+        voices.noteOn(3, 13, 1f, 3 * MS);
+
+        assertEquals(Collections.singletonList(3), pool.stopped,
+                "when full, a re-triggered key should replace its own voice, not the oldest");
+        assertEquals(1, voices.getVoicesChoked());
+        assertEquals(0, voices.getVoicesStolen());
+    }
+
+    @Test
+    void oldVoicesExpire() {
+        voices.noteOn(1, 11, 1f, 0);
+        voices.noteOn(2, 12, 1f, 0);
+        voices.noteOn(3, 13, 1f, 0);
+
+        long later = (VoiceAllocator.VOICE_LIFETIME_MS + 1) * MS;
+        assertEquals(0, voices.activeVoices(later));
+
+        voices.noteOn(4, 14, 1f, later);
+        voices.noteOn(1, 11, 1f, later);
+        assertTrue(pool.stopped.isEmpty(), "expired voices should be reused without stopping them");
+        assertEquals(0, voices.getVoicesStolen());
+        assertEquals(0, voices.getVoicesChoked());
+    }
+
+    @Test
+    void releasedVoiceFadesThenFrees() {
+        long release = 100 * MS;
+        voices.noteOn(1, 11, 1f, 0);
+
+        assertFalse(voices.noteOff(2, 0), "key 2 doesn't play, so can't be released");
+        assertTrue(voices.noteOff(1, 0));
+        assertFalse(voices.noteOff(1, 0), "already releasing");
+
+        assertTrue(voices.tickReleases(25 * MS, release));
+        float early = pool.volumes.get(1);
+        assertTrue(voices.tickReleases(75 * MS, release));
+        float late = pool.volumes.get(1);
+        assertTrue(0 < late && late < early && early < 1, "volume should drop: " + early + ", then " + late);
+
+        assertFalse(voices.tickReleases(release, release), "fade should be done");
+        assertEquals(Collections.singletonList(1), pool.stopped);
+        assertEquals(1, voices.getVoicesReleased());
+        assertEquals(0, voices.activeVoices(release));
+    }
+
+    @Test
+    void releasingVoiceStolenFirst() {
+        voices.noteOn(1, 11, 1f, 0);
+        voices.noteOn(2, 12, 1f, MS);
+        voices.noteOn(3, 13, 1f, 2 * MS);
+        voices.noteOff(3, 3 * MS);
+
+        voices.noteOn(4, 14, 1f, 4 * MS);
+        assertEquals(Collections.singletonList(3), pool.stopped,
+                "fading voice of key 3 should go before the oldest one");
+    }
+
+    @Test
+    void retriggerEndsRelease() {
+        long release = 100 * MS;
+        voices.noteOn(1, 11, 1f, 0);
+        voices.noteOff(1, 0);
+        voices.noteOn(1, 11, 1f, MS); // chokes the fading voice, starts a fresh one
+
+        assertFalse(voices.tickReleases(2 * MS, release), "fresh voice should not fade");
+        assertEquals(Collections.singletonList(1), pool.stopped);
+    }
+
+    @Test
+    void failedPlayCountsAsDropped() {
+        pool.failPlays = true;
+        voices.noteOn(1, 11, 1f, 0);
+        voices.noteDropped();
+
+        assertEquals(2, voices.getNotesDropped());
+        assertEquals(0, voices.activeVoices(0), "a failed play doesn't occupy a voice");
+    }
+}
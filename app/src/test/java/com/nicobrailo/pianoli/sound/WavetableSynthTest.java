@@ -0,0 +1,142 @@
+package com.nicobrailo.pianoli.sound;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WavetableSynthTest {
+    private static final int SAMPLE_RATE = 48000;
+
+    private WavetableSynth synth;
+    private short[] buffer;
+
+    @BeforeEach
+    void setup() {
+        synth = new WavetableSynth(SAMPLE_RATE);
+        buffer = new short[SAMPLE_RATE / 10]; // 100ms
+    }
+
+    private static int peak(short[] samples) {
+        int peak = 0;
+        for (short sample : samples) {
+            peak = Math.max(peak, Math.abs(sample));
+        }
+        return peak;
+    }
+
+    /** Counts upward zero-crossings, i.e. full periods */
+    private static int periods(short[] samples) {
+        int periods = 0;
+        for (int i = 1; i < samples.length; i++) {
+            if (samples[i - 1] < 0 && samples[i] >= 0) {
+                periods++;
+            }
+        }
+        return periods;
+    }
+
+    @Test
+    void silentWhenIdle() {
+        assertTrue(synth.isIdle());
+        assertEquals(0, synth.render(buffer, buffer.length));
+        assertEquals(0, peak(buffer));
+    }
+
+    @Test
+    void noteHasRightPitch() {
+        synth.noteOn(0, 440, 10_000);
+        assertFalse(synth.isIdle());
+
+        assertEquals(1, synth.render(buffer, buffer.length));
+        // 440Hz, for 100ms
+        assertEquals(44, periods(buffer), 1);
+        assertTrue(peak(buffer) > 0.9 * WavetableSynth.VOICE_GAIN * Short.MAX_VALUE, "peak: " + peak(buffer));
+    }
+
+    @Test
+    void noClickOnAttack() {
+        synth.noteOn(0, 440, 10_000);
+        synth.render(buffer, buffer.length);
+
+        assertTrue(Math.abs(buffer[0]) < 100, "first sample should be nearly silent, but is " + buffer[0]);
+    }
+
+    @Test
+    void noteDecaysToSilence() {
+        synth.noteOn(0, 440, 50);
+        for (int i = 0; i < 10 && !synth.isIdle(); i++) {
+            synth.render(buffer, buffer.length);
+        }
+
+        assertTrue(synth.isIdle(), "note should end by itself");
+        assertEquals(0, synth.render(buffer, buffer.length));
+        assertEquals(0, peak(buffer));
+    }
+
+    @Test
+    void noteOffReleasesFaster() {
+        synth.noteOn(0, 440, 10_000);
+        synth.render(buffer, buffer.length);
+        synth.noteOff(0, 20);
+        synth.render(buffer, buffer.length);
+
+        assertTrue(synth.isIdle(), "released note should be gone after 100ms");
+    }
+
+    @Test
+    void noteOffOfOtherKeyIgnored() {
+        synth.noteOn(0, 440, 10_000);
+        synth.noteOff(1, 20);
+        synth.render(buffer, buffer.length);
+        synth.render(buffer, buffer.length);
+
+        assertFalse(synth.isIdle());
+    }
+
+    @Test
+    void voicesAreLimited() {
+        for (int key = 0; key < WavetableSynth.MAX_VOICES + 3; key++) {
+            synth.noteOn(key, 220 + 10 * key, 10_000);
+        }
+        assertEquals(WavetableSynth.MAX_VOICES, synth.render(buffer, buffer.length));
+    }
+
+    @Test
+    void retriggerReusesVoice() {
+        synth.noteOn(0, 440, 10_000);
+        synth.noteOn(0, 440, 10_000);
+        assertEquals(1, synth.render(buffer, buffer.length));
+    }
+
+    @Test
+    void loudChordClips() {
+        for (int key = 0; key < WavetableSynth.MAX_VOICES; key++) {
+            synth.noteOn(key, 440, 10_000); // all in phase: worst case
+        }
+        assertDoesNotThrow(() -> synth.render(buffer, buffer.length));
+        assertTrue(peak(buffer) >= Short.MAX_VALUE, "should clip, rather than wrap around");
+    }
+
+    @Test
+    void awaitActiveReturnsWhenPlaying() throws InterruptedException {
+        synth.noteOn(0, 440, 10_000);
+        synth.awaitActive(); // would hang if broken
+    }
+
+    @Test
+    void invalidSampleRate() {
+        assertThrows(IllegalArgumentException.class, () -> new WavetableSynth(0));
+    }
+
+    @Test
+    void keyFrequencies() {
+        assertEquals(SynthSoundSet.BASE_FREQUENCY_HZ, SynthSoundSet.frequencyOf(0), 0.01);
+        assertEquals(440, SynthSoundSet.frequencyOf(10), 0.01, "A above middle C");
+        assertEquals(2 * SynthSoundSet.BASE_FREQUENCY_HZ, SynthSoundSet.frequencyOf(14), 0.01);
+        assertEquals(0, SynthSoundSet.frequencyOf(5), "no flat between E and F");
+        for (int keyIdx = 0; keyIdx < NoteTable.SIZE; keyIdx++) {
+            assertTrue(SynthSoundSet.frequencyOf(keyIdx) <= SynthSoundSet.MAX_FREQUENCY_HZ);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.nicobrailo.pianoli;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * The config trigger listens to every key event; a toddler mostly presses the wrong keys, so mostly resets it.
+ */
+@State(Scope.Thread)
+public class AppConfigTriggerBenchmark {
+    /** Power of two, so we can cycle through keys with a mask */
+    private static final int PRESSES = 1024;
+
+    private AppConfigTrigger trigger;
+    private final int[] keys = new int[PRESSES];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        trigger = new AppConfigTrigger();
+        trigger.setConfigRequestCallback(new AppConfigTrigger.AppConfigCallback() {
+            @Override
+            public void requestConfig() {
+            }
+
+            @Override
+            public void showConfigTooltip() {
+            }
+        });
+
+        final int keysCount = new Piano(1920, 1080).get_keys_count();
+        Random random = new Random(42);
+        for (int i = 0; i < PRESSES; i++) {
+            keys[i] = random.nextInt(keysCount);
+        }
+    }
+
+    @Benchmark
+    public void onKeyDownUp() {
+        final int keyIdx = keys[next++ & (PRESSES - 1)];
+        trigger.onKeyDown(keyIdx);
+        trigger.onKeyUp(keyIdx);
+    }
+}
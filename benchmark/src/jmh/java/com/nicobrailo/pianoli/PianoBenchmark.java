@@ -0,0 +1,48 @@
+package com.nicobrailo.pianoli;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Key geometry lookups: {@link Piano#pos_to_key_idx(float, float)} runs for every touch sample, and
+ * {@link Piano#getAreaForKey(int)} for every key drawn.
+ */
+@State(Scope.Thread)
+public class PianoBenchmark {
+    /** Power of two, so we can cycle through positions with a mask */
+    private static final int POSITIONS = 1024;
+
+    private Piano piano;
+    private final float[] xs = new float[POSITIONS];
+    private final float[] ys = new float[POSITIONS];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        piano = new Piano(1920, 1080);
+        // Seeded, so every run hits the same mix of big keys and flats.
+        Random random = new Random(42);
+        for (int i = 0; i < POSITIONS; i++) {
+            xs[i] = random.nextFloat() * 1920;
+            ys[i] = random.nextFloat() * 1080;
+        }
+    }
+
+    @Benchmark
+    public int posToKeyIdx() {
+        final int i = next++ & (POSITIONS - 1);
+        return piano.pos_to_key_idx(xs[i], ys[i]);
+    }
+
+    @Benchmark
+    public Key getAreaForKey() {
+        // Wrapped, rather than left to overflow: out-of-range keys take a slower, allocating path.
+        final int keyIdx = next;
+        next = keyIdx + 1 == piano.get_keys_count() ? 0 : keyIdx + 1;
+        return piano.getAreaForKey(keyIdx);
+    }
+}
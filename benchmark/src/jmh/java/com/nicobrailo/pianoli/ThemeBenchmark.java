@@ -0,0 +1,28 @@
+package com.nicobrailo.pianoli;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Key colour lookups, as done for every key when (re-)rendering the keyboard.
+ */
+@State(Scope.Thread)
+public class ThemeBenchmark {
+    /** More keys than any screen shows */
+    private static final int KEYS = 64;
+
+    @Param({"BOOMWHACKER", "PASTEL", "RAINBOW", "BLACK_AND_WHITE"})
+    public Theme theme;
+
+    private int next;
+
+    @Benchmark
+    public int getColorForKey() {
+        // Wrapped, rather than left to overflow: negative keys aren't what we measure (and throw).
+        final int i = next;
+        next = i + 1 == 2 * KEYS ? 0 : i + 1;
+        return theme.getColorForKey(i % KEYS, i >= KEYS);
+    }
+}
@@ -0,0 +1,25 @@
+package com.nicobrailo.pianoli.melodies;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Parsing a whole song, as every song does when its class loads.
+ */
+@State(Scope.Thread)
+public class MelodyBenchmark {
+    /** Twinkle Twinkle Little Star, as a typical song: one octave, 42 notes */
+    private static final String SONG = " " +
+            "C C G G A A G " +
+            "F F E E D D C " +
+            "G G F F E E D " +
+            "G G F F E E D " +
+            "C C G G A A G " +
+            "F F E E D D C ";
+
+    @Benchmark
+    public Melody fromString() {
+        return Melody.fromString("benchmark", SONG);
+    }
+}
@@ -0,0 +1,29 @@
+package com.nicobrailo.pianoli.melodies;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+
+/**
+ * Picking the next note, as the melodic sound maker does for every key-down; cycles through all songs.
+ */
+@State(Scope.Thread)
+public class MultipleSongsMelodyPlayerBenchmark {
+    private MultipleSongsMelodyPlayer player;
+
+    @Setup
+    public void setUp() {
+        player = new MultipleSongsMelodyPlayer(Arrays.asList(Melody.all));
+    }
+
+    @Benchmark
+    public int nextNote() {
+        if (!player.hasNextNote()) {
+            player.reset();
+        }
+        return player.nextNote();
+    }
+}
@@ -0,0 +1,22 @@
+package com.nicobrailo.pianoli.melodies;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Note name parsing, over every notation we accept: implicit and explicit octaves, sharps, flats, and junk.
+ */
+@State(Scope.Thread)
+public class NoteMapperBenchmark {
+    private static final String[] NOTES = {"C", "C1", "C#1", "Db1", "D♭1", "E", "F2", "G#2", "Ab2", "B3", "X", ""};
+
+    private int next;
+
+    @Benchmark
+    public int getKeyIdxFromNote() {
+        final int i = next;
+        next = i + 1 == NOTES.length ? 0 : i + 1; // wrapped, so it can't overflow into negative indices
+        return NoteMapper.get_key_idx_from_note(NOTES[i]);
+    }
+}
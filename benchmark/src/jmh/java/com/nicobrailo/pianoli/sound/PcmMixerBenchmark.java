@@ -0,0 +1,63 @@
+package com.nicobrailo.pianoli.sound;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Mixing one output buffer, as the low-latency audio thread does for every write: {@link PcmMixer#render(short[], int)}
+ * must keep up with the device's mixer, and not allocate.
+ *
+ * <p>
+ * From a single note, up to every voice a soundset can play at once ({@link SampledSoundSet#MAX_VOICES}), each at
+ * its own pitch, resampled from the samples' 44.1kHz to a 48kHz output.
+ * </p>
+ */
+@State(Scope.Thread)
+public class PcmMixerBenchmark {
+    private static final int SAMPLE_RATE = 44100;
+    private static final int OUTPUT_RATE = 48000;
+    /** {@link AudioOutput}'s buffer size, for devices that don't tell theirs */
+    private static final int FRAMES = 256;
+
+    @Param({"1", "4", "7"})
+    public int voices;
+
+    private PcmMixer mixer;
+    private int sampleId;
+    private int[] streamIds;
+    private final short[] buffer = new short[FRAMES];
+
+    @Setup
+    public void setUp() {
+        mixer = new PcmMixer(OUTPUT_RATE, SampledSoundSet.MAX_VOICES);
+        // Long enough that restarting the notes hardly counts: ten seconds of A4.
+        final short[] pcm = new short[10 * SAMPLE_RATE];
+        for (int i = 0; i < pcm.length; i++) {
+            pcm[i] = (short) (8000 * Math.sin(2 * Math.PI * 440 * i / SAMPLE_RATE));
+        }
+        sampleId = mixer.addSample(pcm, SAMPLE_RATE);
+        streamIds = new int[voices];
+        restart();
+    }
+
+    /**
+     * (Re-)starts every voice, a semitone apart.
+     */
+    private void restart() {
+        for (int voice = 0; voice < voices; voice++) {
+            mixer.stop(streamIds[voice]);
+            streamIds[voice] = mixer.play(sampleId, (float) Math.pow(2, voice / 12.0));
+        }
+    }
+
+    @Benchmark
+    public short[] render() {
+        if (mixer.render(buffer, FRAMES) < voices) {
+            restart(); // the highest note reached the end of the sample
+        }
+        return buffer;
+    }
+}
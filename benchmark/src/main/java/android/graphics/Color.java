@@ -0,0 +1,43 @@
+package android.graphics;
+
+/**
+ * Stand-in for android's colour handling, so {@link com.nicobrailo.pianoli.Theme} links on a plain JVM.
+ *
+ * <p>
+ * The packing and unpacking are the same plain bit-twiddling as android's, so themes get their real colours.
+ * </p>
+ *
+ * @noinspection unused
+ */
+public final class Color {
+    public static final int BLACK = 0xFF000000;
+    public static final int GRAY = 0xFF888888;
+    public static final int WHITE = 0xFFFFFFFF;
+
+    private Color() {
+    }
+
+    public static int rgb(int red, int green, int blue) {
+        return argb(0xFF, red, green, blue);
+    }
+
+    public static int argb(int alpha, int red, int green, int blue) {
+        return (alpha << 24) | (red << 16) | (green << 8) | blue;
+    }
+
+    public static int alpha(int color) {
+        return color >>> 24;
+    }
+
+    public static int red(int color) {
+        return (color >> 16) & 0xFF;
+    }
+
+    public static int green(int color) {
+        return (color >> 8) & 0xFF;
+    }
+
+    public static int blue(int color) {
+        return color & 0xFF;
+    }
+}
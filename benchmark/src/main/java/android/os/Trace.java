@@ -0,0 +1,22 @@
+package android.os;
+
+/**
+ * No-op stand-in for android's tracing, so {@link com.nicobrailo.pianoli.PianoLog} links on a plain JVM.
+ *
+ * <p>
+ * We benchmark the app's release classes, which don't trace unless the <code>TRACING</code> build config field is set
+ * (see <code>app/build.gradle</code>).
+ * </p>
+ *
+ * @noinspection unused
+ */
+public final class Trace {
+    private Trace() {
+    }
+
+    public static void beginSection(String sectionName) {
+    }
+
+    public static void endSection() {
+    }
+}
@@ -0,0 +1,48 @@
+package android.util;
+
+/**
+ * No-op stand-in for android's logging, so the app classes link on a plain JVM.
+ *
+ * <p>
+ * Unlike the app's test double, this one doesn't print: some measured paths log (e.g. the config trigger, on a
+ * wrong key), and console output would dominate what we measure.
+ * </p>
+ *
+ * @noinspection unused
+ */
+public final class Log {
+    private Log() {
+    }
+
+    public static int v(String tag, String msg) {
+        return 0;
+    }
+
+    public static int d(String tag, String msg) {
+        return 0;
+    }
+
+    public static int i(String tag, String msg) {
+        return 0;
+    }
+
+    public static int w(String tag, String msg) {
+        return 0;
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        return 0;
+    }
+
+    public static int e(String tag, String msg) {
+        return 0;
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return 0;
+    }
+
+    public static int wtf(String tag, String msg) {
+        return 0;
+    }
+}
@@ -0,0 +1,27 @@
+package androidx.core.graphics;
+
+import android.graphics.Color;
+
+/**
+ * Stand-in for the one method of androidx' colour utilities that {@link com.nicobrailo.pianoli.Theme} uses.
+ *
+ * <p>
+ * androidx-core only ships as an android library (aar), which a plain JVM module can't depend on. This is the same
+ * arithmetic, so themes get their real colours.
+ * </p>
+ *
+ * @noinspection unused
+ */
+public final class ColorUtils {
+    private ColorUtils() {
+    }
+
+    public static int blendARGB(int color1, int color2, float ratio) {
+        final float inverseRatio = 1 - ratio;
+        float a = Color.alpha(color1) * inverseRatio + Color.alpha(color2) * ratio;
+        float r = Color.red(color1) * inverseRatio + Color.red(color2) * ratio;
+        float g = Color.green(color1) * inverseRatio + Color.green(color2) * ratio;
+        float b = Color.blue(color1) * inverseRatio + Color.blue(color2) * ratio;
+        return Color.argb((int) a, (int) r, (int) g, (int) b);
+    }
+}